@@ -0,0 +1,35 @@
+package com.anjia.unidbgserver.benchmark;
+
+import com.anjia.unidbgserver.config.UnidbgProperties;
+
+/**
+ * 基准测试公共数据：与线上请求长度相近的 URL 与请求头
+ */
+final class BenchmarkSupport {
+
+    static final String URL = "https://api5-normal-sinfonlineb.fqnovel.com/reading/reader/batch_full/v"
+        + "?item_ids=7276384138653862966,7276384138653863990,7276384138653864502"
+        + "&req_type=1&aggregation=1&book_id=7276384138653862912"
+        + "&iid=1234567890123456789&device_id=9876543210987654321&ac=wifi&channel=googleplay"
+        + "&aid=1967&app_name=novelapp&version_code=68132&version_name=6.8.1.32"
+        + "&device_platform=android&os=android&ssmix=a&update_version_code=68132"
+        + "&device_type=Pixel+5&device_brand=google&language=zh&os_api=30&os_version=11"
+        + "&manifest_version_code=68132&resolution=1080*2340&dpi=440&rom_version=RQ3A.211001.001"
+        + "&host_abi=arm64-v8a&_rticket=1700000000000&cdid=0a1b2c3d-4e5f-6789-abcd-ef0123456789";
+
+    static final String HEADERS = "accept\r\napplication/json; charset=utf-8,application/x-protobuf\r\n"
+        + "x-reading-request\r\n1700000000000-1234567890\r\n"
+        + "sdk-version\r\n2\r\n"
+        + "lc\r\n101\r\n"
+        + "user-agent\r\ncom.dragon.read.oversea.gp/68132 (Linux; U; Android 11; zh_CN; Pixel 5; Build/RQ3A.211001.001; Cronet/TTNetVersion:3c2a4a4d 2023-05-19 QuicVersion:47946d2a 2020-10-14)";
+
+    private BenchmarkSupport() {
+    }
+
+    static UnidbgProperties properties(String backend) {
+        UnidbgProperties properties = new UnidbgProperties();
+        properties.setBackend(backend);
+        properties.setVerbose(false);
+        return properties;
+    }
+}
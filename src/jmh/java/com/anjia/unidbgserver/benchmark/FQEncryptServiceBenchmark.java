@@ -0,0 +1,54 @@
+package com.anjia.unidbgserver.benchmark;
+
+import com.anjia.unidbgserver.service.FQEncryptService;
+import com.anjia.unidbgserver.unidbg.EmulatorBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FQEncryptService 签名耗时（含请求头清洗与 parseSignatureResult 解析），按后端分别统计
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(1)
+public class FQEncryptServiceBenchmark {
+
+    @Param({"unicorn2", "dynarmic"})
+    public String backend;
+
+    private FQEncryptService service;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        service = new FQEncryptService(BenchmarkSupport.properties(backend), EmulatorBackend.fromConfig(backend, false));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        service.destroyEmulator();
+    }
+
+    @Benchmark
+    public Map<String, String> generateSignatureHeaders() {
+        return service.generateSignatureHeaders(BenchmarkSupport.URL, BenchmarkSupport.HEADERS);
+    }
+}
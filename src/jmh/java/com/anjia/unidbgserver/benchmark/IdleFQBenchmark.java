@@ -0,0 +1,59 @@
+package com.anjia.unidbgserver.benchmark;
+
+import com.anjia.unidbgserver.unidbg.EmulatorBackend;
+import com.anjia.unidbgserver.unidbg.IdleFQ;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单个 IdleFQ 的原始签名耗时（不含结果解析），按后端与 libc 拦截模式分别统计吞吐与延迟分位数。
+ * libcMode=replace 与 off 的对比用于判断宿主实现省下的指令模拟是否抵得过每次拦截的往返开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(1)
+public class IdleFQBenchmark {
+
+    @Param({"unicorn2", "dynarmic"})
+    public String backend;
+
+    @Param({"off", "replace"})
+    public String libcMode;
+
+    private IdleFQ idleFQ;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        IdleFQ.setLibcInterception(libcMode, null);
+        idleFQ = new IdleFQ(false, null, null, EmulatorBackend.fromConfig(backend, false));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        idleFQ.destroy();
+        IdleFQ.setLibcInterception(null, null);
+    }
+
+    @Benchmark
+    public String generateSignature() {
+        return idleFQ.generateSignature(BenchmarkSupport.URL, BenchmarkSupport.HEADERS);
+    }
+}
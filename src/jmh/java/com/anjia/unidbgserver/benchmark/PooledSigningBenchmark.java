@@ -0,0 +1,98 @@
+package com.anjia.unidbgserver.benchmark;
+
+import com.anjia.unidbgserver.config.UnidbgProperties;
+import com.anjia.unidbgserver.service.FQEncryptServiceWorker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 经 FQEncryptServiceWorker 的池化签名（队列 + 签名车道 + 弹性池），
+ * 按后端、池大小与调用线程数统计吞吐与延迟分位数。
+ * <p>
+ * 池固定为 poolSize 个实例（min = max），测量前全部预热完成，结果不含扩容耗时。
+ * 调用线程数可用 {@code -t} 覆盖，例如 {@code -Djmh.args="PooledSigningBenchmark -t 16"}。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class PooledSigningBenchmark {
+
+    @Param({"unicorn2", "dynarmic"})
+    public String backend;
+
+    @Param({"1", "2", "4", "8"})
+    public int poolSize;
+
+    private FQEncryptServiceWorker worker;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        UnidbgProperties properties = BenchmarkSupport.properties(backend);
+        properties.setAsync(true);
+        properties.getPool().setMinSize(poolSize);
+        properties.getPool().setMaxSize(poolSize);
+        properties.getPool().setIdleTimeoutMs(0);
+        properties.getQueue().setCapacity(1024);
+        worker = new FQEncryptServiceWorker(properties, poolSize);
+
+        // 预热：等池内实例全部就绪
+        long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(5);
+        while (System.currentTimeMillis() < deadline) {
+            Map<String, Object> pool = poolStats();
+            if (pool != null && ((Number) pool.get("created")).intValue() >= poolSize) {
+                break;
+            }
+            worker.generateSignatureHeaders(BenchmarkSupport.URL, BenchmarkSupport.HEADERS).get();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> poolStats() {
+        return (Map<String, Object>) worker.getPoolStats().get("pool");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        worker.destroy();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Map<String, String> threads1() throws Exception {
+        return sign();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Map<String, String> threads4() throws Exception {
+        return sign();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Map<String, String> threads16() throws Exception {
+        return sign();
+    }
+
+    private Map<String, String> sign() throws Exception {
+        return worker.generateSignatureHeaders(BenchmarkSupport.URL, BenchmarkSupport.HEADERS).get();
+    }
+}
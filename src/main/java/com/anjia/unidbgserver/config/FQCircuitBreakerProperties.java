@@ -0,0 +1,47 @@
+package com.anjia.unidbgserver.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 上游熔断配置：按上游主机统计最近请求的失败率，超过阈值后熔断一段时间
+ */
+@Data
+@ConfigurationProperties(prefix = "fq.circuit-breaker")
+public class FQCircuitBreakerProperties {
+
+    /**
+     * 是否启用熔断
+     */
+    private boolean enabled = true;
+
+    /**
+     * 统计失败率的滑动窗口大小（最近 N 次请求）
+     */
+    private int windowSize = 20;
+
+    /**
+     * 窗口内至少有多少次请求才计算失败率
+     */
+    private int minimumCalls = 10;
+
+    /**
+     * 失败率阈值（0~1），达到后熔断
+     */
+    private double failureRateThreshold = 0.5;
+
+    /**
+     * 熔断持续时间（ms），到期后进入半开状态放行探测请求
+     */
+    private long openMs = 30000;
+
+    /**
+     * 半开状态放行的探测请求数；全部成功后恢复，任一失败重新熔断
+     */
+    private int halfOpenProbes = 3;
+
+    /**
+     * 熔断期间可返回的过期缓存最长保留时间（ms），从缓存过期时刻算起
+     */
+    private long staleServeMs = 2 * 60 * 60 * 1000L;
+}
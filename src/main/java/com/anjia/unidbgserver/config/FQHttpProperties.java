@@ -0,0 +1,70 @@
+package com.anjia.unidbgserver.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 上游 HTTP 客户端配置（连接池、keep-alive 与超时）
+ */
+@Data
+@ConfigurationProperties(prefix = "fq.http")
+public class FQHttpProperties {
+
+    /**
+     * 连接池最大连接数
+     */
+    private int maxTotal = 64;
+
+    /**
+     * 每个上游主机的最大连接数
+     */
+    private int maxPerRoute = 32;
+
+    /**
+     * 建立连接超时（ms），含 TLS 握手前的 TCP 连接
+     */
+    private int connectTimeoutMs = 3000;
+
+    /**
+     * 读取超时（ms），两次数据包之间的最长间隔
+     */
+    private int readTimeoutMs = 15000;
+
+    /**
+     * 单个请求的总超时（ms），超时后中止请求；0 表示不限
+     */
+    private long totalTimeoutMs = 30000;
+
+    /**
+     * 从连接池获取连接的最长等待时间（ms）
+     */
+    private int poolWaitTimeoutMs = 2000;
+
+    /**
+     * 空闲连接保活时间（ms）；服务端返回的 Keep-Alive 更短时以服务端为准
+     */
+    private long keepAliveMs = 60000;
+
+    /**
+     * 启动时是否预先建立到上游主机的连接（完成 TLS 握手后放回连接池）
+     */
+    private boolean preconnect = true;
+
+    /**
+     * 每个主机预建的连接数
+     */
+    private int preconnectConnections = 2;
+
+    /**
+     * 预建连接的地址；为空时使用 fq.api.base-url 及其 sinfonlinec 主机
+     */
+    private List<String> preconnectUrls = new ArrayList<>();
+
+    /**
+     * 异步客户端的 I/O 线程数；0 表示与 CPU 核数相同
+     */
+    private int asyncIoThreads = 0;
+}
@@ -0,0 +1,45 @@
+package com.anjia.unidbgserver.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * 上游请求重试配置（退避与全局重试预算）
+ * <p>
+ * batch_full 的重试次数与退避沿用 fq.download 配置，其余上游调用使用这里的默认值。
+ */
+@Data
+@ConfigurationProperties(prefix = "fq.retry")
+public class FQRetryProperties {
+
+    /**
+     * 默认最大尝试次数（含首次请求）
+     */
+    private int maxAttempts = 2;
+
+    /**
+     * 默认初始退避（ms），按尝试次数指数增长
+     */
+    private long baseDelayMs = 500;
+
+    /**
+     * 默认最大退避（ms）
+     */
+    private long maxDelayMs = 5000;
+
+    /**
+     * 退避附加的随机抖动上限（ms）
+     */
+    private long jitterMs = 250;
+
+    /**
+     * 重试预算：每个首次请求存入的令牌数，每次重试消耗 1 个；
+     * 0.2 表示持续故障时重试量不超过正常请求量的 20%
+     */
+    private double budgetRatio = 0.2;
+
+    /**
+     * 重试预算令牌上限（也是启动时的初始令牌数），允许低流量时的少量突发重试
+     */
+    private int budgetCapacity = 20;
+}
@@ -3,6 +3,9 @@ package com.anjia.unidbgserver.config;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * unidbg配置类
  *
@@ -13,9 +16,20 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 @ConfigurationProperties(prefix = "application.unidbg")
 public class UnidbgProperties {
     /**
-     * 是否使用 DynarmicFactory
+     * 是否使用 DynarmicFactory（未配置 backend 时生效）
      */
     boolean dynarmic;
+
+    /**
+     * 模拟器后端：unicorn2 / dynarmic / auto。
+     * auto 会在启动时分别试跑签名，校验结果一致后选用较快的后端；为空时按 dynarmic 开关选择。
+     */
+    String backend;
+
+    /**
+     * auto 模式下每个后端的校准签名次数（不含预热）
+     */
+    int calibrationRounds = 20;
     /**
      * 是否打印调用信息
      */
@@ -26,6 +40,19 @@ public class UnidbgProperties {
      */
     boolean async = true;
 
+    /**
+     * 异步模式下是否使用模板克隆：先冷启动一个 IdleFQ 到 JNI_OnLoad 之后的状态，
+     * 其余 worker 通过复制其内存映射、寄存器与 DVM 状态创建，跳过 so 初始化。
+     * 克隆探测失败时自动退回冷启动。
+     */
+    boolean templateClone;
+
+    /**
+     * 模拟器状态快照文件路径。配置后首次完整初始化会把 JNI_OnLoad 之后的状态写入该文件，
+     * 下次启动时若 APK/so/证书哈希一致则直接从快照恢复；为空表示不启用。
+     */
+    String snapshotPath;
+
     /**
      * 番茄小说 APK 文件路径（建议使用 base.apk 的绝对路径）
      * 优先级高于 apkClasspath；适合本地或容器运行时挂载文件。
@@ -37,4 +64,238 @@ public class UnidbgProperties {
      * 当 apkPath 未配置时使用；未配置时默认读取 classpath: com/dragon/read/oversea/gp/apk/base.apk
      */
     String apkClasspath;
+
+    /**
+     * classpath 资源（APK/so/证书）提取缓存目录，按内容哈希命名，跨重启与 worker 复用；
+     * 为空时使用 ${java.io.tmpdir}/unidbg-extract-cache
+     */
+    String extractCacheDir;
+
+    /**
+     * 异步模式下的弹性签名池配置
+     */
+    Pool pool = new Pool();
+
+    /**
+     * 签名请求队列配置
+     */
+    Queue queue = new Queue();
+
+    /**
+     * 进程外签名配置
+     */
+    Sidecar sidecar = new Sidecar();
+
+    /**
+     * 远程签名配置
+     */
+    Remote remote = new Remote();
+
+    /**
+     * 启动预热配置
+     */
+    Warmup warmup = new Warmup();
+
+    /**
+     * 单次签名的执行预算（看门狗）
+     */
+    Watchdog watchdog = new Watchdog();
+
+    /**
+     * libc 热点函数拦截
+     */
+    Libc libc = new Libc();
+
+    @Data
+    public static class Pool {
+        /**
+         * 最小实例数（常驻，不会被空闲回收）
+         */
+        int minSize = 1;
+
+        /**
+         * 最大实例数；0 表示取 spring.task.execution.pool.core-size（至少 4）
+         */
+        int maxSize = 0;
+
+        /**
+         * 借用等待超过该时长（毫秒）时扩容
+         */
+        long scaleUpWaitMs = 50;
+
+        /**
+         * 排队借用的请求数达到该值时扩容
+         */
+        int scaleUpQueueDepth = 2;
+
+        /**
+         * 空闲超过该时长（毫秒）的实例被回收；0 表示不回收
+         */
+        long idleTimeoutMs = 300000;
+
+        /**
+         * 单个实例签名次数达到该值后后台预热替换；0 表示不限
+         */
+        long recycleMaxCalls = 50000;
+
+        /**
+         * 模拟器映射内存相对创建时增长超过该值（MB）后后台预热替换；0 表示不限
+         */
+        long recycleMaxHeapGrowthMb = 256;
+
+        /**
+         * 连续签名失败达到该次数后丢弃并重建；0 表示不限
+         */
+        int recycleMaxFailures = 3;
+    }
+
+    @Data
+    public static class Queue {
+        /**
+         * 排队中的签名请求上限，队列已满时立即拒绝
+         */
+        int capacity = 256;
+
+        /**
+         * 单个签名请求的最长等待时间（毫秒，含排队与执行）；0 表示不限
+         */
+        long timeoutMs = 10000;
+
+        /**
+         * 签名车道（持有模拟器的执行线程）数量；0 表示与签名池最大实例数一致
+         */
+        int lanes = 0;
+
+        /**
+         * 执行模式：shared（签名车道从池中借还实例）或 pinned（每个载体线程常驻一个实例，空闲时窃取其他载体的任务，仅异步模式生效）
+         */
+        String mode = "shared";
+    }
+
+    @Data
+    public static class Sidecar {
+        /**
+         * 是否在独立子进程中运行模拟器（与 Web JVM 的 GC 与崩溃隔离）
+         */
+        boolean enabled;
+
+        /**
+         * 子进程数量
+         */
+        int processes = 2;
+
+        /**
+         * 每个子进程内的签名实例数
+         */
+        int instancesPerProcess = 2;
+
+        /**
+         * 子进程 JVM 参数，空格分隔
+         */
+        String jvmOptions = "-Xmx512m -XX:+UseParallelGC";
+
+        /**
+         * 等待子进程就绪的最长时间（毫秒）
+         */
+        long startTimeoutMs = 120000;
+
+        /**
+         * 子进程连续响应超时（超过 queue.timeout-ms 仍未返回）达到该次数后强制结束并重启；0 表示不重启
+         */
+        int restartAfterTimeouts = 3;
+    }
+
+    @Data
+    public static class Warmup {
+        /**
+         * 同时初始化的模拟器数量上限（启动预热、扩容与回收重建共用）；0 表示取 CPU 核数
+         */
+        int parallelism = 0;
+
+        /**
+         * 启动时预热的实例数；0 表示与签名池最小实例数一致，不超过最大实例数
+         */
+        int workers = 0;
+
+        /**
+         * 启动时等待首个实例就绪的最长时间（毫秒），超时后继续启动，请求排队等待
+         */
+        long firstWorkerTimeoutMs = 180000;
+    }
+
+    @Data
+    public static class Watchdog {
+        /**
+         * 单次签名的指令数上限，超出即中止并隔离重建该实例；0 表示不限。仅 unicorn2 后端支持指令计数
+         */
+        long maxInstructions = 0;
+
+        /**
+         * 单次签名的墙钟时间上限（毫秒），超出即中止并隔离重建该实例；0 表示不限
+         */
+        long maxWallClockMs = 5000;
+
+        /**
+         * 未设置指令上限时是否仍统计每次签名的指令数直方图（按基本块计数，有一定开销）
+         */
+        boolean instructionHistogram = false;
+    }
+
+    @Data
+    public static class Libc {
+        /**
+         * off：不拦截；replace：memcpy 等函数由宿主 Java 实现直接完成；verify：同时执行原函数并比对结果（用于验证）。
+         * 启用后不使用模板克隆与磁盘快照（导入表指向各实例自己的拦截跳板）。
+         * 每次拦截都要在模拟器与宿主之间往返一次，对短调用未必比原函数快，默认关闭；开启前用 IdleFQBenchmark 的 libcMode 参数对比。
+         */
+        String mode = "off";
+
+        /**
+         * 拦截的函数，支持 memcpy、memmove、memset、strlen、memcmp；为空表示全部
+         */
+        List<String> functions = new ArrayList<>();
+    }
+
+    @Data
+    public static class Remote {
+        /**
+         * 是否把签名请求转发给远程签名节点（本节点不启动模拟器）
+         */
+        boolean enabled;
+
+        /**
+         * 远程签名节点地址，例如 http://10.0.0.2:9999
+         */
+        List<String> endpoints = new ArrayList<>();
+
+        /**
+         * 健康检查间隔（毫秒）
+         */
+        long healthCheckIntervalMs = 5000;
+
+        /**
+         * 连接超时（毫秒）
+         */
+        long connectTimeoutMs = 1000;
+
+        /**
+         * 读取超时（毫秒）
+         */
+        long readTimeoutMs = 10000;
+
+        /**
+         * 同时在途的远程签名请求上限
+         */
+        int maxConcurrency = 64;
+
+        /**
+         * 单个请求最多尝试的节点数（失败后换节点重试）
+         */
+        int maxAttempts = 2;
+
+        /**
+         * 连续失败达到该次数后节点被摘除，健康检查通过后恢复
+         */
+        int failureThreshold = 3;
+    }
 }
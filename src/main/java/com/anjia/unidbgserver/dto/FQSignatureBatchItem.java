@@ -0,0 +1,27 @@
+package com.anjia.unidbgserver.dto;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * FQ批量签名请求项DTO
+ */
+@Data
+public class FQSignatureBatchItem {
+
+    /**
+     * 请求的URL
+     */
+    private String url;
+
+    /**
+     * 请求头，格式为key\r\nvalue\r\n的字符串（与 headerMap 二选一）
+     */
+    private String headers;
+
+    /**
+     * 请求头的Map（优先于 headers）
+     */
+    private Map<String, String> headerMap;
+}
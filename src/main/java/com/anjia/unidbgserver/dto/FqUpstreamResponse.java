@@ -0,0 +1,27 @@
+package com.anjia.unidbgserver.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.Data;
+
+/**
+ * 上游接口通用响应外层（code / message / data），用于把 data 直接流式解析为目标类型
+ */
+@Data
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class FqUpstreamResponse<T> {
+
+    /**
+     * 响应码，0 表示成功
+     */
+    private long code;
+
+    /**
+     * 响应消息
+     */
+    private String message;
+
+    /**
+     * 响应数据
+     */
+    private T data;
+}
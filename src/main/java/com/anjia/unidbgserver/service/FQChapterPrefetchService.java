@@ -1,8 +1,10 @@
 package com.anjia.unidbgserver.service;
 
+import com.anjia.unidbgserver.config.FQCircuitBreakerProperties;
 import com.anjia.unidbgserver.config.FQDownloadProperties;
 import com.anjia.unidbgserver.dto.*;
 import com.anjia.unidbgserver.service.FqCrypto;
+import com.anjia.unidbgserver.utils.FQApiUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -20,6 +22,7 @@ import java.util.regex.Pattern;
  * 单章接口的抗风控优化：
  * - 根据目录预取一段章节（批量调用上游 batch_full）
  * - 将结果缓存，后续单章请求直接命中缓存，显著减少上游调用次数
+ * - 上游主机熔断期间不再请求上游，返回过期缓存；没有缓存时快速失败
  */
 @Slf4j
 @Service
@@ -30,6 +33,9 @@ public class FQChapterPrefetchService {
     private final FQNovelService fqNovelService;
     private final FQSearchService fqSearchService;
     private final FQRegisterKeyService registerKeyService;
+    private final FQCircuitBreakerProperties circuitBreakerProperties;
+    private final UpstreamCircuitBreaker upstreamCircuitBreaker;
+    private final FQApiUtils fqApiUtils;
 
     @javax.annotation.Resource(name = "applicationTaskExecutor")
     private Executor executor;
@@ -46,8 +52,10 @@ public class FQChapterPrefetchService {
         int dirMax = Math.max(64, chapterMax / 10);
         long dirTtl = downloadProperties.getDirectoryCacheTtlMs();
 
-        this.chapterCache = new TimedLruCache<>(chapterMax, chapterTtl);
-        this.directoryCache = new TimedLruCache<>(dirMax, dirTtl);
+        long staleMs = circuitBreakerProperties.getStaleServeMs();
+
+        this.chapterCache = new TimedLruCache<>(chapterMax, chapterTtl, staleMs);
+        this.directoryCache = new TimedLruCache<>(dirMax, dirTtl, staleMs);
     }
 
     public CompletableFuture<FQNovelResponse<FQNovelChapterInfo>> getChapterContent(FQNovelRequest request) {
@@ -62,6 +70,11 @@ public class FQChapterPrefetchService {
                     return FQNovelResponse.success(cached);
                 }
 
+                // 内容主机熔断中：不再签名与请求上游
+                if (!upstreamCircuitBreaker.allowsRequests(fqApiUtils.getBaseUrl())) {
+                    return staleOrUnavailable(cacheKey, "获取章节内容失败: 上游熔断中，请稍后重试");
+                }
+
                 // 预取：优先在目录中定位章节顺序，批量拉取后缓存
                 prefetchAndCacheDedup(bookId, chapterId).join();
 
@@ -73,6 +86,9 @@ public class FQChapterPrefetchService {
                 // 兜底：仍未命中则只取单章
                 FQNovelResponse<FqIBatchFullResponse> single = fqNovelService.batchFull(chapterId, bookId, true).get();
                 if (single.getCode() != 0 || single.getData() == null) {
+                    if (!upstreamCircuitBreaker.allowsRequests(fqApiUtils.getBaseUrl())) {
+                        return staleOrUnavailable(cacheKey, "获取章节内容失败: " + single.getMessage());
+                    }
                     return FQNovelResponse.error("获取章节内容失败: " + single.getMessage());
                 }
 
@@ -93,6 +109,18 @@ public class FQChapterPrefetchService {
         }, executor != null ? executor : ForkJoinPool.commonPool());
     }
 
+    /**
+     * 熔断期间返回过期缓存；没有缓存时以 503 快速失败
+     */
+    private FQNovelResponse<FQNovelChapterInfo> staleOrUnavailable(String cacheKey, String message) {
+        FQNovelChapterInfo stale = chapterCache.getStale(cacheKey);
+        if (stale != null) {
+            log.debug("上游熔断中，返回过期章节缓存 - {}", cacheKey);
+            return FQNovelResponse.success(stale);
+        }
+        return FQNovelResponse.error(503, message);
+    }
+
     private CompletableFuture<Void> prefetchAndCacheDedup(String bookId, String chapterId) {
         String computedKey;
         try {
@@ -186,6 +214,12 @@ public class FQChapterPrefetchService {
             return cached;
         }
 
+        // 目录主机熔断中：返回过期目录，没有则按无目录处理
+        if (!upstreamCircuitBreaker.allowsRequests(fqApiUtils.getSearchBaseUrl())) {
+            List<String> stale = directoryCache.getStale(bookId);
+            return stale != null ? stale : Collections.emptyList();
+        }
+
         CompletableFuture<List<String>> inFlight = inflightDirectory.get(bookId);
         if (inFlight != null) {
             try {
@@ -309,15 +343,18 @@ public class FQChapterPrefetchService {
 
     /**
      * 轻量 LRU + TTL 缓存（无额外依赖）。
+     * 过期条目再保留 staleMs，期间只能通过 {@link #getStale} 取到。
      */
     static class TimedLruCache<K, V> {
         private final Map<K, Entry<V>> map;
         private final int maxEntries;
         private final long ttlMs;
+        private final long staleMs;
 
-        TimedLruCache(int maxEntries, long ttlMs) {
+        TimedLruCache(int maxEntries, long ttlMs, long staleMs) {
             this.maxEntries = Math.max(1, maxEntries);
             this.ttlMs = ttlMs;
+            this.staleMs = Math.max(0L, staleMs);
             this.map = Collections.synchronizedMap(new LinkedHashMap<K, Entry<V>>(64, 0.75f, true) {
                 @Override
                 protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
@@ -331,7 +368,25 @@ public class FQChapterPrefetchService {
             if (entry == null) {
                 return null;
             }
-            if (ttlMs > 0 && entry.expiresAtMs < System.currentTimeMillis()) {
+            long now = System.currentTimeMillis();
+            if (ttlMs > 0 && entry.expiresAtMs < now) {
+                if (entry.expiresAtMs + staleMs < now) {
+                    map.remove(key);
+                }
+                return null;
+            }
+            return entry.value;
+        }
+
+        /**
+         * 取未超出过期保留期的值（含已过期条目）
+         */
+        V getStale(K key) {
+            Entry<V> entry = map.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (ttlMs > 0 && entry.expiresAtMs + staleMs < System.currentTimeMillis()) {
                 map.remove(key);
                 return null;
             }
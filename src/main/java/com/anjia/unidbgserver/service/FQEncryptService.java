@@ -1,7 +1,10 @@
 package com.anjia.unidbgserver.service;
 
 import com.anjia.unidbgserver.config.UnidbgProperties;
+import com.anjia.unidbgserver.unidbg.EmulationBudgetExceededException;
+import com.anjia.unidbgserver.unidbg.EmulatorBackend;
 import com.anjia.unidbgserver.unidbg.IdleFQ;
+import com.anjia.unidbgserver.unidbg.IdleFQState;
 import com.anjia.unidbgserver.utils.TempFileUtils;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -13,19 +16,114 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 
 @Slf4j
 public class FQEncryptService {
 
     private final IdleFQ idleFQ;
+    private final AtomicBoolean destroyed = new AtomicBoolean();
     private final ObjectMapper objectMapper = new ObjectMapper();
     private static final Pattern HEADER_COLON_PAIR = Pattern.compile("^[A-Za-z0-9-]{1,64}:\\s*.+$");
 
     public FQEncryptService(UnidbgProperties properties) {
+        this(properties, resolveBackend(properties));
+    }
+
+    /**
+     * @param backend 模拟器执行后端（UNICORN2 或 DYNARMIC）
+     */
+    public FQEncryptService(UnidbgProperties properties, EmulatorBackend backend) {
         // 根据配置设置是否显示日志
-        this.idleFQ = new IdleFQ(properties.isVerbose(), properties.getApkPath(), properties.getApkClasspath());
-        log.info("FQ签名服务初始化完成");
+        this.idleFQ = new IdleFQ(properties.isVerbose(), properties.getApkPath(), properties.getApkClasspath(), backend);
+        log.info("FQ签名服务初始化完成，后端:{}({})", backend.configName(), idleFQ.getBackendImplementation());
+    }
+
+    private static EmulatorBackend resolveBackend(UnidbgProperties properties) {
+        EmulatorBackend backend = EmulatorBackend.fromConfig(properties.getBackend(), properties.isDynarmic());
+        // AUTO 由 FQEncryptServiceWorker 启动校准决定，单独创建时使用 Unicorn2
+        return backend == EmulatorBackend.AUTO ? EmulatorBackend.UNICORN2 : backend;
+    }
+
+    /**
+     * 从模板状态克隆签名服务（跳过 so 初始化与 JNI_OnLoad）
+     *
+     * @param template 模板 IdleFQ 采集的状态
+     */
+    public FQEncryptService(IdleFQState template) {
+        this.idleFQ = new IdleFQ(template);
+        log.info("FQ签名服务克隆完成");
+    }
+
+    /**
+     * 采集底层模拟器状态，用于克隆更多签名服务实例
+     */
+    public IdleFQState captureState() {
+        return idleFQ.captureState();
+    }
+
+    /**
+     * 模拟器构造各阶段耗时（毫秒）
+     */
+    public Map<String, Long> getInitPhases() {
+        return idleFQ.getInitPhases();
+    }
+
+    /**
+     * 模拟器已映射的内存总字节数
+     */
+    public long getMappedBytes() {
+        return idleFQ.getMappedBytes();
+    }
+
+    /**
+     * 模拟器内存按权限分类统计
+     */
+    public Map<String, Long> getMemoryBreakdown() {
+        return idleFQ.getMemoryBreakdown();
+    }
+
+    /**
+     * JNI 回调统计
+     */
+    public Map<String, Object> getJniCallbackStats() {
+        return idleFQ.getJniCallbackStats();
+    }
+
+    /**
+     * 签名执行预算与耗时/指令数直方图（进程级）
+     */
+    public static Map<String, Object> getExecutionStats() {
+        return IdleFQ.getExecutionStats();
+    }
+
+    /**
+     * 系统调用次数与内存文件系统命中统计（进程级）
+     */
+    public static Map<String, Object> getSyscallStats() {
+        return IdleFQ.getSyscallStats();
+    }
+
+    /**
+     * 固定当前线程上模拟器的时钟；传入 null 恢复真实时钟
+     */
+    public static void pinClock(Long epochMillis) {
+        IdleFQ.pinClock(epochMillis);
+    }
+
+    /**
+     * libc 热点函数拦截统计（进程级）
+     */
+    public static Map<String, Object> getLibcInterceptionStats() {
+        return IdleFQ.getLibcInterceptionStats();
+    }
+
+    /**
+     * 实际生效的 unidbg 后端实现
+     */
+    public String getBackendImplementation() {
+        return idleFQ.getBackendImplementation();
     }
 
     /**
@@ -56,6 +154,9 @@ public class FQEncryptService {
             log.debug("FQ签名生成成功: {}", result);
             return result;
 
+        } catch (EmulationBudgetExceededException e) {
+            // 模拟器状态已不可信，交由签名池隔离重建
+            throw e;
         } catch (Exception e) {
             log.error("生成FQ签名失败", e);
             return Collections.emptyMap();
@@ -70,11 +171,17 @@ public class FQEncryptService {
      * @return 包含各种签名header的Map
      */
     public Map<String, String> generateSignatureHeaders(String url, Map<String, String> headerMap) {
+        return generateSignatureHeaders(url, formatHeaders(headerMap));
+    }
+
+    /**
+     * 将Map格式的headers转换为\r\n分隔的字符串格式
+     */
+    public static String formatHeaders(Map<String, String> headerMap) {
         if (headerMap == null || headerMap.isEmpty()) {
-            return generateSignatureHeaders(url, "");
+            return "";
         }
 
-        // 将Map转换为\r\n分隔的字符串格式
         StringBuilder headerBuilder = new StringBuilder();
         for (Map.Entry<String, String> entry : headerMap.entrySet()) {
             headerBuilder.append(entry.getKey()).append("\r\n")
@@ -86,8 +193,7 @@ public class FQEncryptService {
         if (headers.endsWith("\r\n")) {
             headers = headers.substring(0, headers.length() - 2);
         }
-
-        return generateSignatureHeaders(url, headers);
+        return headers;
     }
 
     /**
@@ -186,14 +292,21 @@ public class FQEncryptService {
         toRemove.forEach(headers::remove);
     }
 
+    /**
+     * 仅释放模拟器资源，保留其他实例共享的临时文件（用于丢弃池中的单个实例）
+     */
+    public void destroyEmulator() {
+        if (idleFQ != null && destroyed.compareAndSet(false, true)) {
+            idleFQ.destroy();
+        }
+    }
+
     /**
      * 清理资源
      */
     public void destroy() {
         // 清理IdleFQ资源
-        if (idleFQ != null) {
-            idleFQ.destroy();
-        }
+        destroyEmulator();
 
         // 清理临时文件
         TempFileUtils.cleanup();
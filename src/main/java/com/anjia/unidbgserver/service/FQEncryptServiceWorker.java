@@ -1,56 +1,169 @@
 package com.anjia.unidbgserver.service;
 
 import com.anjia.unidbgserver.config.UnidbgProperties;
-import com.github.unidbg.worker.Worker;
-import com.github.unidbg.worker.WorkerPool;
-import com.github.unidbg.worker.WorkerPoolFactory;
+import com.anjia.unidbgserver.dto.FQSignatureBatchItem;
+import com.anjia.unidbgserver.sidecar.SidecarSignerPool;
+import com.anjia.unidbgserver.unidbg.EmulatorBackend;
+import com.anjia.unidbgserver.unidbg.IdleFQ;
+import com.anjia.unidbgserver.unidbg.IdleFQSnapshot;
+import com.anjia.unidbgserver.unidbg.IdleFQState;
+import com.anjia.unidbgserver.utils.TempFileUtils;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 @Slf4j
 @Service("fqEncryptWorker")
-public class FQEncryptServiceWorker extends Worker {
+public class FQEncryptServiceWorker {
 
     private UnidbgProperties unidbgProperties;
-    private WorkerPool pool;
+    private FQSignerPool signerPool;
+    private FQSigningExecutor dispatcher;
+    private SidecarSignerPool sidecarPool;
+    private FQRemoteSignerClient remoteClient;
     private FQEncryptService fqEncryptService;
+    private FQSignerWarmup warmup;
+
+    // 模板克隆：模板状态与尚未交给池的模板实例
+    private static final String PROBE_URL = "https://api5-normal-sinfonlineb.fqnovel.com/reading/user/info/v?aid=1967";
+    // 后端校准比较签名输出时使用的固定时钟
+    private static final long CALIBRATION_CLOCK_MS = 1700000000000L;
+    private volatile IdleFQState templateState;
+    private final AtomicReference<FQEncryptService> templateService = new AtomicReference<>();
+
+    // 启动与扩容耗时统计
+    private volatile long templateBootMs;
+    private final AtomicLong clonedWorkers = new AtomicLong();
+    private final AtomicLong cloneTotalNanos = new AtomicLong();
+    private final AtomicLong cloneFallbacks = new AtomicLong();
+    private final AtomicLong coldWorkers = new AtomicLong();
+    private final AtomicLong coldTotalNanos = new AtomicLong();
+    private volatile Map<String, Long> lastClonePhases = Collections.emptyMap();
+    private volatile Map<String, Long> lastColdPhases = Collections.emptyMap();
+
+    // 磁盘快照：状态与恢复/完整初始化耗时
+    private volatile String snapshotStatus = "DISABLED";
+    private volatile boolean snapshotSaved;
+    private volatile long snapshotRestoreMs;
+    private volatile long snapshotLoadMs;
+    private volatile Map<String, Long> snapshotRestorePhases = Collections.emptyMap();
+    private volatile long fullInitMs;
+
+    // 模拟器后端：生效后端与 auto 模式的校准结果（胜出的实例直接作为第一个签名服务）
+    private volatile EmulatorBackend backend = EmulatorBackend.UNICORN2;
+    private final AtomicReference<FQEncryptService> calibratedService = new AtomicReference<>();
+    private volatile IdleFQState calibratedState;
+    private final Map<String, Object> backendCalibration = new LinkedHashMap<>();
 
     @Autowired
     public void init(UnidbgProperties unidbgProperties) {
         this.unidbgProperties = unidbgProperties;
     }
 
-    public FQEncryptServiceWorker() {
-        super(WorkerPoolFactory.create(FQEncryptServiceWorker::new, Runtime.getRuntime().availableProcessors()));
-    }
-
-    public FQEncryptServiceWorker(WorkerPool pool) {
-        super(pool);
-    }
-
+    /**
+     * 启动流程：确定后端后创建签名池，由 {@link FQSignerWarmup} 按并发上限并行预热实例，
+     * 首个实例就绪即返回（应用开始对外服务），其余实例在后台继续预热。
+     */
     @Autowired
     public FQEncryptServiceWorker(UnidbgProperties unidbgProperties,
                                     @Value("${spring.task.execution.pool.core-size:4}") int poolSize) {
-        super(WorkerPoolFactory.create(FQEncryptServiceWorker::new, Runtime.getRuntime().availableProcessors()));
         this.unidbgProperties = unidbgProperties;
+        TempFileUtils.setCacheDir(unidbgProperties.getExtractCacheDir());
+        UnidbgProperties.Watchdog watchdogProps = unidbgProperties.getWatchdog();
+        IdleFQ.setExecutionBudget(watchdogProps.getMaxInstructions(), watchdogProps.getMaxWallClockMs(),
+            watchdogProps.isInstructionHistogram());
+        IdleFQ.setLibcInterception(unidbgProperties.getLibc().getMode(), unidbgProperties.getLibc().getFunctions());
+        if (unidbgProperties.getRemote().isEnabled()) {
+            // 远程签名：本节点只转发请求，不创建任何模拟器
+            this.remoteClient = new FQRemoteSignerClient(unidbgProperties.getRemote());
+            return;
+        }
+        if (unidbgProperties.getSidecar().isEnabled()) {
+            // 进程外签名：本进程不创建模拟器；auto 校准需要本地模拟器，子进程中按 unicorn2 处理
+            EmulatorBackend configured = EmulatorBackend.fromConfig(unidbgProperties.getBackend(), unidbgProperties.isDynarmic());
+            this.backend = configured == EmulatorBackend.AUTO ? EmulatorBackend.UNICORN2 : configured;
+            this.sidecarPool = new SidecarSignerPool(unidbgProperties, backend.configName());
+            return;
+        }
+        UnidbgProperties.Warmup warmupProps = unidbgProperties.getWarmup();
+        int parallelism = warmupProps.getParallelism() > 0 ? warmupProps.getParallelism() : Runtime.getRuntime().availableProcessors();
+        this.warmup = new FQSignerWarmup(parallelism);
+        this.backend = selectBackend(unidbgProperties);
+        UnidbgProperties.Pool poolProps = unidbgProperties.getPool();
+        int totalWorkers;
         if (this.unidbgProperties.isAsync()) {
-            pool = WorkerPoolFactory.create(pool -> new FQEncryptServiceWorker(unidbgProperties.isDynarmic(),
-                unidbgProperties.isVerbose(), unidbgProperties.getApkPath(), unidbgProperties.getApkClasspath(), pool), Math.max(poolSize, 4));
-            log.info("FQ签名服务线程池大小为:{}", Math.max(poolSize, 4));
+            boolean cloneable = !isLibcIntercepted(unidbgProperties);
+            if (cloneable && (unidbgProperties.isTemplateClone() || snapshotFile(unidbgProperties) != null)) {
+                initTemplate(unidbgProperties);
+            }
+            int maxSize = poolMaxSize(unidbgProperties, poolSize);
+            // 线程绑定模式下每个载体线程常驻一个实例，池固定为载体数且不做空闲收缩
+            boolean pinned = isPinnedMode(unidbgProperties);
+            int minSize = pinned ? maxSize : poolProps.getMinSize();
+            long idleTimeoutMs = pinned ? 0 : poolProps.getIdleTimeoutMs();
+            totalWorkers = Math.min(maxSize, Math.max(minSize, warmupProps.getWorkers()));
+            signerPool = new FQSignerPool(() -> createPooledService(unidbgProperties), minSize, maxSize,
+                poolProps.getScaleUpWaitMs(), poolProps.getScaleUpQueueDepth(), idleTimeoutMs,
+                parallelism, warmup::onReady);
+            log.info("FQ签名服务弹性池大小为:{}-{}, 预热:{}, 并发初始化:{}, 模板克隆:{}", minSize, maxSize,
+                totalWorkers, parallelism, templateState != null);
         } else {
-            this.fqEncryptService = new FQEncryptService(unidbgProperties);
+            this.fqEncryptService = bootService(unidbgProperties, false);
+            // 同步模式：单个实例由唯一的签名车道独占；回收重建时冷启动替换实例
+            AtomicReference<FQEncryptService> initial = new AtomicReference<>(this.fqEncryptService);
+            totalWorkers = 1;
+            signerPool = new FQSignerPool(() -> {
+                FQEncryptService service = initial.getAndSet(null);
+                return service != null ? service : createPooledService(unidbgProperties);
+            }, 1, 1, 50, 1, 0, 1, warmup::onReady);
         }
+        signerPool.setRecyclePolicy(poolProps.getRecycleMaxCalls(), poolProps.getRecycleMaxHeapGrowthMb() << 20,
+            poolProps.getRecycleMaxFailures());
+        initDispatcher(unidbgProperties, unidbgProperties.isAsync() ? poolMaxSize(unidbgProperties, poolSize) : 1);
+        warmup.start(signerPool, totalWorkers, warmupProps.getFirstWorkerTimeoutMs());
+    }
+
+    private static int poolMaxSize(UnidbgProperties unidbgProperties, int poolSize) {
+        int maxSize = unidbgProperties.getPool().getMaxSize();
+        return maxSize > 0 ? maxSize : Math.max(poolSize, 4);
     }
 
-    public FQEncryptServiceWorker(boolean dynarmic, boolean verbose, String apkPath, String apkClasspath, WorkerPool pool) {
-        super(pool);
+    private void initDispatcher(UnidbgProperties unidbgProperties, int defaultLanes) {
+        UnidbgProperties.Queue queueProps = unidbgProperties.getQueue();
+        if (unidbgProperties.isAsync() && isPinnedMode(unidbgProperties)) {
+            // 载体数与池实例数一致，每个载体独占一个实例
+            dispatcher = new FQPinnedSigningExecutor(signerPool, defaultLanes, queueProps.getCapacity(), queueProps.getTimeoutMs());
+            return;
+        }
+        int lanes = queueProps.getLanes() > 0 ? Math.min(queueProps.getLanes(), defaultLanes) : defaultLanes;
+        dispatcher = new FQSigningDispatcher(signerPool, lanes, queueProps.getCapacity(), queueProps.getTimeoutMs());
+    }
+
+    private static boolean isPinnedMode(UnidbgProperties unidbgProperties) {
+        return "pinned".equalsIgnoreCase(unidbgProperties.getQueue().getMode());
+    }
+
+    public FQEncryptServiceWorker(boolean dynarmic, boolean verbose, String apkPath, String apkClasspath) {
         this.unidbgProperties = new UnidbgProperties();
         unidbgProperties.setDynarmic(dynarmic);
         unidbgProperties.setVerbose(verbose);
@@ -61,35 +174,497 @@ public class FQEncryptServiceWorker extends Worker {
     }
 
     /**
-     * 异步生成FQ签名headers
+     * 确定模拟器后端。auto 模式下依次在 unicorn2 与 dynarmic 上完整初始化并试跑签名，
+     * 两者在固定时钟下的签名输出一致时（见 {@link #compareOutputs}）选用平均耗时更短的后端，否则使用 unicorn2。
+     */
+    private EmulatorBackend selectBackend(UnidbgProperties unidbgProperties) {
+        EmulatorBackend configured = EmulatorBackend.fromConfig(unidbgProperties.getBackend(), unidbgProperties.isDynarmic());
+        if (configured != EmulatorBackend.AUTO) {
+            log.info("FQ签名模拟器后端: {}", configured.configName());
+            return configured;
+        }
+
+        int rounds = Math.max(1, unidbgProperties.getCalibrationRounds());
+        BackendCalibration unicorn = new BackendCalibration(EmulatorBackend.UNICORN2);
+        BackendCalibration dynarmic = new BackendCalibration(EmulatorBackend.DYNARMIC);
+        // 两个后端的模拟器并行初始化，计时签名依次进行以免互相干扰
+        List<Callable<Void>> boots = new ArrayList<>(2);
+        boots.add(() -> bootCandidate(unidbgProperties, unicorn));
+        boots.add(() -> bootCandidate(unidbgProperties, dynarmic));
+        warmup.buildAll(boots);
+        measure(unicorn, rounds);
+        measure(dynarmic, rounds);
+
+        boolean equivalent = false;
+        if (unicorn.isUsable() && dynarmic.isUsable()) {
+            String mismatch = compareOutputs(unicorn.service, dynarmic.service);
+            equivalent = mismatch == null;
+            if (mismatch != null) {
+                backendCalibration.put("mismatch", mismatch);
+                log.warn("FQ签名后端校准 - dynarmic 输出与 unicorn2 不一致，不选用: {}", mismatch);
+            }
+        }
+        BackendCalibration winner;
+        if (equivalent) {
+            winner = dynarmic.avgMicros < unicorn.avgMicros ? dynarmic : unicorn;
+        } else {
+            winner = unicorn.isUsable() ? unicorn : dynarmic;
+        }
+        BackendCalibration loser = winner == unicorn ? dynarmic : unicorn;
+        if (loser.service != null) {
+            loser.service.destroyEmulator();
+        }
+        if (winner.service == null) {
+            log.error("FQ签名后端校准均失败，使用 unicorn2");
+            backendCalibration.put("selected", EmulatorBackend.UNICORN2.configName());
+            return EmulatorBackend.UNICORN2;
+        }
+
+        calibratedState = winner.state;
+        calibratedService.set(winner.service);
+        fullInitMs = winner.bootMs;
+        backendCalibration.put("equivalent", equivalent);
+        backendCalibration.put("selected", winner.backend.configName());
+        log.info("FQ签名后端校准完成 - 选用:{}, unicorn2:{}us, dynarmic:{}us, 结果一致:{}",
+            winner.backend.configName(), unicorn.avgMicros, dynarmic.avgMicros, equivalent);
+        return winner.backend;
+    }
+
+    /**
+     * 在指定后端上完整初始化模拟器。需要克隆模板或磁盘快照时，在试跑签名之前采集状态，
+     * 保证模板停在 JNI_OnLoad 之后、未处理任何签名的时刻（校准签名会推进模拟器状态且使用固定时钟）。
+     */
+    private Void bootCandidate(UnidbgProperties unidbgProperties, BackendCalibration result) {
+        EmulatorBackend candidate = result.backend;
+        Map<String, Object> detail = result.detail;
+        try {
+            long bootStart = System.nanoTime();
+            FQEncryptService service = new FQEncryptService(unidbgProperties, candidate);
+            result.service = service;
+            result.bootMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - bootStart);
+            if (unidbgProperties.isTemplateClone() || snapshotFile(unidbgProperties) != null) {
+                result.state = service.captureState();
+            }
+            String implementation = service.getBackendImplementation();
+            detail.put("implementation", implementation);
+            detail.put("bootMs", result.bootMs);
+            if (candidate == EmulatorBackend.DYNARMIC && !implementation.toLowerCase(Locale.ROOT).contains("dynarmic")) {
+                // 原生库不可用，unidbg 已退回 Unicorn，无需比较
+                result.error = "dynarmic 不可用，已退回 " + implementation;
+                detail.put("error", result.error);
+                log.warn("FQ签名后端校准 - {}", result.error);
+            }
+        } catch (Throwable t) {
+            result.error = t.getClass().getSimpleName() + ": " + t.getMessage();
+            detail.put("error", result.error);
+            log.warn("FQ签名后端初始化失败 - {}: {}", candidate.configName(), result.error);
+        }
+        return null;
+    }
+
+    /**
+     * 试跑签名：预热 2 次后计时 rounds 次
+     */
+    private void measure(BackendCalibration result, int rounds) {
+        EmulatorBackend candidate = result.backend;
+        Map<String, Object> detail = result.detail;
+        FQEncryptService service = result.service;
+        if (service == null || result.error != null) {
+            return;
+        }
+        try {
+            for (int i = 0; i < 2; i++) {
+                service.generateSignatureHeaders(PROBE_URL, "");
+            }
+            long start = System.nanoTime();
+            Map<String, String> headers = null;
+            for (int i = 0; i < rounds; i++) {
+                headers = service.generateSignatureHeaders(PROBE_URL, "");
+            }
+            result.avgMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / rounds;
+            result.headerKeys = headers == null ? Collections.<String>emptySet() : new TreeSet<>(headers.keySet());
+            detail.put("avgMicros", result.avgMicros);
+            detail.put("headerKeys", result.headerKeys);
+            log.info("FQ签名后端校准 - {}: 初始化{}ms, 平均签名{}us, header:{}", candidate.configName(),
+                result.bootMs, result.avgMicros, result.headerKeys);
+        } catch (Throwable t) {
+            result.error = t.getClass().getSimpleName() + ": " + t.getMessage();
+            detail.put("error", result.error);
+            log.warn("FQ签名后端校准失败 - {}: {}", candidate.configName(), result.error);
+        }
+    }
+
+    /**
+     * 在固定时钟下比较两个后端的签名输出：header 名必须一致；unicorn2 两次签名结果相同的字段（确定性字段）
+     * 在 dynarmic 上必须逐值相同，其余字段（含随机数或内部计数）比较长度与字符集。
      *
-     * @param url 请求的URL
-     * @param headers 请求头信息
-     * @return 包含签名信息的CompletableFuture
+     * @return 一致时返回 null，否则返回不一致的描述
      */
-    @SneakyThrows
-    public CompletableFuture<Map<String, String>> generateSignatureHeaders(String url, String headers) {
-        FQEncryptServiceWorker worker;
-        Map<String, String> result;
+    private String compareOutputs(FQEncryptService reference, FQEncryptService candidate) {
+        Map<String, String> expected;
+        Map<String, String> repeated;
+        Map<String, String> actual;
+        try {
+            expected = pinnedSignature(reference);
+            repeated = pinnedSignature(reference);
+            actual = pinnedSignature(candidate);
+        } catch (RuntimeException e) {
+            return "固定时钟签名失败: " + e.getMessage();
+        }
+        if (expected.isEmpty() || !expected.keySet().equals(actual.keySet())) {
+            return "header 不一致: " + new TreeSet<>(expected.keySet()) + " / " + new TreeSet<>(actual.keySet());
+        }
+        List<String> deterministic = new ArrayList<>();
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            String key = entry.getKey();
+            String value = entry.getValue();
+            String other = actual.get(key);
+            if (value.equals(repeated.get(key))) {
+                deterministic.add(key);
+                if (!value.equals(other)) {
+                    return key + " 值不一致";
+                }
+            } else if (value.length() != other.length() || charset(value) != charset(other)) {
+                return key + " 格式不一致: " + value.length() + "/" + charset(value)
+                    + " vs " + other.length() + "/" + charset(other);
+            }
+        }
+        backendCalibration.put("deterministicHeaders", deterministic);
+        return null;
+    }
 
-        if (this.unidbgProperties.isAsync()) {
-            // 异步模式使用工作池
-            while (true) {
-                if ((worker = pool.borrow(2, TimeUnit.SECONDS)) == null) {
-                    continue;
+    private static Map<String, String> pinnedSignature(FQEncryptService service) {
+        FQEncryptService.pinClock(CALIBRATION_CLOCK_MS);
+        try {
+            return service.generateSignatureHeaders(PROBE_URL, "");
+        } finally {
+            FQEncryptService.pinClock(null);
+        }
+    }
+
+    /**
+     * 字段值的字符集：0 纯数字，1 十六进制，2 Base64/URL-safe Base64，3 其他
+     */
+    private static int charset(String value) {
+        int charset = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                continue;
+            }
+            if ((c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F')) {
+                charset = Math.max(charset, 1);
+            } else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || c == '+' || c == '/' || c == '=' || c == '-' || c == '_') {
+                charset = Math.max(charset, 2);
+            } else {
+                return 3;
+            }
+        }
+        return charset;
+    }
+
+    /**
+     * 单个后端的校准结果
+     */
+    private final class BackendCalibration {
+        private final EmulatorBackend backend;
+        private final Map<String, Object> detail = new LinkedHashMap<>();
+        private volatile FQEncryptService service;
+        private volatile long bootMs;
+        private volatile IdleFQState state;
+        private long avgMicros = Long.MAX_VALUE;
+        private Set<String> headerKeys = Collections.emptySet();
+        private volatile String error;
+
+        private BackendCalibration(EmulatorBackend backend) {
+            this.backend = backend;
+            backendCalibration.put(backend.configName(), detail);
+        }
+
+        private boolean isUsable() {
+            return service != null && error == null && !headerKeys.isEmpty();
+        }
+    }
+
+    /**
+     * 启动模板实例并采集其 JNI_OnLoad 之后的状态；模板实例本身作为池中的第一个 worker。
+     * 失败时退回逐个冷启动。
+     */
+    private void initTemplate(UnidbgProperties unidbgProperties) {
+        long start = System.nanoTime();
+        try {
+            FQEncryptService template = bootService(unidbgProperties, true);
+            templateService.set(template);
+            templateBootMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            log.info("FQ签名模板初始化完成，耗时:{}ms，状态大小:{}KB", templateBootMs,
+                templateState != null ? templateState.getTotalBytes() / 1024 : 0);
+        } catch (Exception e) {
+            templateState = null;
+            log.error("FQ签名模板初始化失败，退回逐个冷启动", e);
+        }
+    }
+
+    /**
+     * 启动第一个签名服务：优先从磁盘快照恢复；快照缺失、哈希不匹配或恢复失败时完整初始化，并写入新快照。
+     *
+     * @param keepState 是否保留状态作为后续 worker 的克隆模板
+     */
+    private FQEncryptService bootService(UnidbgProperties unidbgProperties, boolean keepState) {
+        File snapshotFile = snapshotFile(unidbgProperties);
+        String snapshotKey = null;
+        // auto 校准胜出的实例已完成初始化，直接使用，不再从快照恢复；
+        // 它已执行过校准签名，模板与快照使用其在校准前采集的状态
+        FQEncryptService calibrated = calibratedService.getAndSet(null);
+        IdleFQState calibratedInitState = calibratedState;
+        calibratedState = null;
+        if (calibrated != null && calibratedInitState != null && snapshotFile != null) {
+            try {
+                snapshotKey = IdleFQ.computeSnapshotKey(unidbgProperties.getApkPath(), unidbgProperties.getApkClasspath());
+            } catch (IOException e) {
+                log.warn("计算FQ签名快照键失败: {}", e.getMessage());
+            }
+        }
+        if (calibrated == null && snapshotFile != null) {
+            try {
+                long start = System.nanoTime();
+                snapshotKey = IdleFQ.computeSnapshotKey(unidbgProperties.getApkPath(), unidbgProperties.getApkClasspath());
+                IdleFQState state = IdleFQSnapshot.load(snapshotFile, snapshotKey, unidbgProperties.isVerbose(),
+                    unidbgProperties.getApkPath(), unidbgProperties.getApkClasspath(), backend);
+                snapshotLoadMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                if (state == null) {
+                    snapshotStatus = "MISS";
+                } else {
+                    FQEncryptService restored = restoreService(state);
+                    if (restored != null) {
+                        snapshotRestoreMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                        snapshotRestorePhases = restored.getInitPhases();
+                        snapshotStatus = "RESTORED";
+                        if (keepState) {
+                            templateState = state;
+                        }
+                        log.info("FQ签名服务已从快照恢复，耗时:{}ms（读取快照{}ms，模拟器各阶段{}），快照:{}",
+                            snapshotRestoreMs, snapshotLoadMs, snapshotRestorePhases, snapshotFile.getAbsolutePath());
+                        return restored;
+                    }
+                    snapshotStatus = "RESTORE_FAILED";
                 }
-                result = worker.doWork(url, headers);
-                pool.release(worker);
-                break;
+            } catch (Exception e) {
+                snapshotStatus = "ERROR";
+                log.warn("读取FQ签名快照失败，执行完整初始化: {}", e.getMessage());
             }
-        } else {
-            // 同步模式直接使用当前实例
-            synchronized (this) {
-                result = this.doWork(url, headers);
+        }
+
+        FQEncryptService service = calibrated;
+        if (service == null) {
+            long start = System.nanoTime();
+            service = new FQEncryptService(unidbgProperties, backend);
+            long elapsed = System.nanoTime() - start;
+            fullInitMs = TimeUnit.NANOSECONDS.toMillis(elapsed);
+            recordColdBoot(elapsed);
+            lastColdPhases = service.getInitPhases();
+        }
+
+        if (calibrated != null && calibratedInitState == null) {
+            // 校准前未采集到状态，不能用已执行过签名的实例作为模板或快照
+            if (keepState) {
+                log.warn("FQ签名后端校准未保留初始状态，不启用模板克隆");
+            }
+        } else if (keepState || snapshotKey != null) {
+            IdleFQState state = calibrated != null ? calibratedInitState : service.captureState();
+            if (keepState) {
+                templateState = state;
+            }
+            if (snapshotKey != null) {
+                try {
+                    IdleFQSnapshot.save(state, snapshotFile, snapshotKey);
+                    snapshotSaved = true;
+                    log.info("FQ签名快照已写入: {}，大小:{}KB", snapshotFile.getAbsolutePath(), state.getTotalBytes() / 1024);
+                } catch (IOException e) {
+                    log.warn("写入FQ签名快照失败: {}", e.getMessage());
+                }
+            }
+        }
+        return service;
+    }
+
+    /**
+     * 从状态恢复签名服务，并做一次探测签名校验
+     *
+     * @return 恢复或探测失败时返回 null
+     */
+    private FQEncryptService restoreService(IdleFQState state) {
+        FQEncryptService restored = null;
+        try {
+            restored = new FQEncryptService(state);
+            if (!restored.generateSignatureHeaders(PROBE_URL, "").isEmpty()) {
+                return restored;
+            }
+            log.warn("恢复的FQ签名服务探测签名失败");
+        } catch (Exception e) {
+            log.warn("从状态恢复FQ签名服务失败: {}", e.getMessage(), e);
+        }
+        if (restored != null) {
+            restored.destroyEmulator();
+        }
+        return null;
+    }
+
+    /**
+     * 池内实例工厂：优先交出模板实例，其次从模板状态克隆（克隆后做一次探测签名校验），最后冷启动。
+     */
+    private FQEncryptService createPooledService(UnidbgProperties unidbgProperties) {
+        FQEncryptService template = templateService.getAndSet(null);
+        if (template != null) {
+            return template;
+        }
+
+        IdleFQState state = templateState;
+        if (state != null) {
+            long start = System.nanoTime();
+            FQEncryptService clone = restoreService(state);
+            if (clone != null) {
+                long elapsed = System.nanoTime() - start;
+                clonedWorkers.incrementAndGet();
+                cloneTotalNanos.addAndGet(elapsed);
+                lastClonePhases = clone.getInitPhases();
+                log.info("FQ签名worker克隆完成，耗时:{}ms", TimeUnit.NANOSECONDS.toMillis(elapsed));
+                return clone;
             }
+            log.warn("从模板克隆FQ签名worker失败，退回冷启动");
+            cloneFallbacks.incrementAndGet();
+        }
+
+        long start = System.nanoTime();
+        FQEncryptService service = new FQEncryptService(unidbgProperties, backend);
+        recordColdBoot(System.nanoTime() - start);
+        lastColdPhases = service.getInitPhases();
+        return service;
+    }
+
+    private static boolean isLibcIntercepted(UnidbgProperties unidbgProperties) {
+        String mode = unidbgProperties.getLibc().getMode();
+        return mode != null && !mode.trim().isEmpty() && !"off".equalsIgnoreCase(mode.trim());
+    }
+
+    private static File snapshotFile(UnidbgProperties unidbgProperties) {
+        if (isLibcIntercepted(unidbgProperties)) {
+            // 拦截状态无法写入快照或从快照恢复
+            return null;
+        }
+        String path = unidbgProperties.getSnapshotPath();
+        return path == null || path.trim().isEmpty() ? null : new File(path.trim());
+    }
+
+    private void recordColdBoot(long elapsedNanos) {
+        coldWorkers.incrementAndGet();
+        coldTotalNanos.addAndGet(elapsedNanos);
+    }
+
+    /**
+     * 签名池统计：模板启动耗时、克隆/冷启动次数、平均耗时与最近一次的分阶段耗时
+     */
+    public Map<String, Object> getPoolStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long cloned = clonedWorkers.get();
+        long cold = coldWorkers.get();
+        stats.put("async", unidbgProperties != null && unidbgProperties.isAsync());
+        stats.put("backend", remoteClient != null ? "remote" : backend.configName());
+        if (remoteClient != null) {
+            stats.put("remote", remoteClient.getStats());
+        }
+        if (sidecarPool != null) {
+            stats.put("sidecar", sidecarPool.getStats());
         }
+        if (!backendCalibration.isEmpty()) {
+            stats.put("backendCalibration", backendCalibration);
+        }
+        if (warmup != null) {
+            stats.put("warmup", warmup.getStatus());
+        }
+        stats.put("templateEnabled", templateState != null);
+        stats.put("templateBootMs", templateBootMs);
+        stats.put("templateStateBytes", templateState != null ? templateState.getTotalBytes() : 0L);
+        stats.put("clonedWorkers", cloned);
+        stats.put("cloneAvgMs", cloned > 0 ? TimeUnit.NANOSECONDS.toMillis(cloneTotalNanos.get() / cloned) : 0L);
+        stats.put("cloneFallbacks", cloneFallbacks.get());
+        stats.put("clonePhasesMs", lastClonePhases);
+        stats.put("coldWorkers", cold);
+        stats.put("coldAvgMs", cold > 0 ? TimeUnit.NANOSECONDS.toMillis(coldTotalNanos.get() / cold) : 0L);
+        stats.put("coldPhasesMs", lastColdPhases);
+        stats.put("snapshotStatus", snapshotStatus);
+        stats.put("snapshotSaved", snapshotSaved);
+        stats.put("snapshotRestoreMs", snapshotRestoreMs);
+        stats.put("snapshotLoadMs", snapshotLoadMs);
+        stats.put("snapshotRestorePhasesMs", snapshotRestorePhases);
+        stats.put("fullInitMs", fullInitMs);
+        if (signerPool != null) {
+            stats.put("pool", signerPool.getStats());
+        }
+        if (dispatcher != null) {
+            stats.put("queue", dispatcher.getStats());
+        }
+        if (signerPool != null) {
+            stats.put("execution", FQEncryptService.getExecutionStats());
+            stats.put("syscalls", FQEncryptService.getSyscallStats());
+            stats.put("libc", FQEncryptService.getLibcInterceptionStats());
+            stats.put("jni", signerPool.getJniCallbackStats());
+            stats.put("memory", signerPool.getMemoryStats());
+        }
+        return stats;
+    }
 
-        return CompletableFuture.completedFuture(result);
+    /**
+     * 就绪状态：本地签名时为预热进度（已就绪/目标实例数），远程与子进程模式为可用节点/进程数
+     */
+    public Map<String, Object> getReadiness() {
+        Map<String, Object> readiness;
+        int warm;
+        if (remoteClient != null) {
+            warm = remoteClient.getHealthyCount();
+            readiness = new LinkedHashMap<>();
+            readiness.put("mode", "remote");
+            readiness.put("warmWorkers", warm);
+            readiness.put("totalWorkers", remoteClient.getNodeCount());
+        } else if (sidecarPool != null) {
+            warm = sidecarPool.getAliveCount();
+            readiness = new LinkedHashMap<>();
+            readiness.put("mode", "sidecar");
+            readiness.put("warmWorkers", warm);
+            readiness.put("totalWorkers", sidecarPool.getProcessCount());
+        } else if (warmup != null) {
+            readiness = warmup.getStatus();
+            readiness.put("mode", "local");
+            warm = warmup.isReady() ? 1 : 0;
+        } else {
+            warm = fqEncryptService != null ? 1 : 0;
+            readiness = new LinkedHashMap<>();
+            readiness.put("mode", "local");
+            readiness.put("warmWorkers", warm);
+            readiness.put("totalWorkers", 1);
+        }
+        readiness.put("ready", warm > 0);
+        return readiness;
+    }
+
+    /**
+     * 异步生成FQ签名headers
+     *
+     * @param url 请求的URL
+     * @param headers 请求头信息
+     * @return 签名完成时完成的CompletableFuture；队列已满时立即以 RejectedExecutionException 失败，
+     *         超时以 TimeoutException 失败
+     */
+    public CompletableFuture<Map<String, String>> generateSignatureHeaders(String url, String headers) {
+        if (remoteClient != null) {
+            return remoteClient.sign(url, headers);
+        }
+        if (sidecarPool != null) {
+            return sidecarPool.sign(url, headers);
+        }
+        if (dispatcher == null) {
+            return CompletableFuture.completedFuture(doWork(url, headers));
+        }
+        return dispatcher.submit(url, service -> service.generateSignatureHeaders(url, headers));
     }
 
     /**
@@ -97,50 +672,91 @@ public class FQEncryptServiceWorker extends Worker {
      *
      * @param url 请求的URL
      * @param headerMap 请求头的Map
-     * @return 包含签名信息的CompletableFuture
+     * @return 签名完成时完成的CompletableFuture
      */
-    @SneakyThrows
     public CompletableFuture<Map<String, String>> generateSignatureHeaders(String url, Map<String, String> headerMap) {
-        FQEncryptServiceWorker worker;
-        Map<String, String> result;
+        if (remoteClient != null) {
+            return remoteClient.sign(url, FQEncryptService.formatHeaders(headerMap));
+        }
+        if (sidecarPool != null) {
+            return sidecarPool.sign(url, FQEncryptService.formatHeaders(headerMap));
+        }
+        if (dispatcher == null) {
+            return CompletableFuture.completedFuture(doWorkWithMap(url, headerMap));
+        }
+        return dispatcher.submit(url, service -> service.generateSignatureHeaders(url, headerMap));
+    }
 
-        if (this.unidbgProperties.isAsync()) {
-            // 异步模式使用工作池
-            while (true) {
-                if ((worker = pool.borrow(2, TimeUnit.SECONDS)) == null) {
-                    continue;
-                }
-                result = worker.doWorkWithMap(url, headerMap);
-                pool.release(worker);
-                break;
-            }
-        } else {
-            // 同步模式直接使用当前实例
-            synchronized (this) {
-                result = this.doWorkWithMap(url, headerMap);
+    /**
+     * 批量生成FQ签名headers：按块在少数几个签名实例上连续签名
+     *
+     * @param items 批量请求项
+     * @return 与输入顺序一致的 future 列表，每条签名完成即完成
+     */
+    public List<CompletableFuture<Map<String, String>>> generateSignatureHeadersBatch(List<FQSignatureBatchItem> items) {
+        if (remoteClient != null || sidecarPool != null) {
+            // 子进程连接支持流水线、远程节点各自负载均衡，逐条发送即可
+            List<CompletableFuture<Map<String, String>>> futures = new ArrayList<>(items.size());
+            for (FQSignatureBatchItem item : items) {
+                String headers = item.getHeaderMap() != null ? FQEncryptService.formatHeaders(item.getHeaderMap())
+                    : (item.getHeaders() != null ? item.getHeaders() : "");
+                futures.add(remoteClient != null ? remoteClient.sign(item.getUrl(), headers) : sidecarPool.sign(item.getUrl(), headers));
             }
+            return futures;
+        }
+        List<String> urls = new ArrayList<>(items.size());
+        List<Function<FQEncryptService, Map<String, String>>> works = new ArrayList<>(items.size());
+        for (FQSignatureBatchItem item : items) {
+            String url = item.getUrl();
+            Map<String, String> headerMap = item.getHeaderMap();
+            String headers = item.getHeaders() != null ? item.getHeaders() : "";
+            urls.add(url);
+            works.add(headerMap != null
+                ? service -> service.generateSignatureHeaders(url, headerMap)
+                : service -> service.generateSignatureHeaders(url, headers));
         }
 
-        return CompletableFuture.completedFuture(result);
+        if (dispatcher == null) {
+            List<CompletableFuture<Map<String, String>>> futures = new ArrayList<>(works.size());
+            for (Function<FQEncryptService, Map<String, String>> work : works) {
+                synchronized (this) {
+                    futures.add(CompletableFuture.completedFuture(work.apply(fqEncryptService)));
+                }
+            }
+            return futures;
+        }
+        return dispatcher.submitBatch(urls, works);
     }
 
     /**
      * 执行签名生成工作 (字符串格式headers)
      */
-    private Map<String, String> doWork(String url, String headers) {
+    private synchronized Map<String, String> doWork(String url, String headers) {
         return fqEncryptService.generateSignatureHeaders(url, headers);
     }
 
     /**
      * 执行签名生成工作 (Map格式headers)
      */
-    private Map<String, String> doWorkWithMap(String url, Map<String, String> headerMap) {
+    private synchronized Map<String, String> doWorkWithMap(String url, Map<String, String> headerMap) {
         return fqEncryptService.generateSignatureHeaders(url, headerMap);
     }
 
     @SneakyThrows
-    @Override
+    @PreDestroy
     public void destroy() {
+        if (remoteClient != null) {
+            remoteClient.close();
+        }
+        if (sidecarPool != null) {
+            sidecarPool.close();
+        }
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+        if (signerPool != null) {
+            signerPool.close();
+        }
         if (fqEncryptService != null) {
             fqEncryptService.destroy();
         }
@@ -5,29 +5,25 @@ import com.anjia.unidbgserver.config.FQDownloadProperties;
 import com.anjia.unidbgserver.dto.*;
 import com.anjia.unidbgserver.service.FqCrypto;
 import com.anjia.unidbgserver.utils.FQApiUtils;
+import com.anjia.unidbgserver.utils.UpstreamResponseDecoder;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.Resource;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.nio.charset.StandardCharsets;
-import java.util.Locale;
+import java.net.URI;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.LinkedHashMap;
 import java.util.ArrayList;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.zip.GZIPInputStream;
 
 /**
  * FQNovel 小说内容获取服务
@@ -56,7 +52,7 @@ public class FQNovelService {
     private DeviceManagementService deviceManagementService;
 
     @Resource
-    private UpstreamRateLimiter upstreamRateLimiter;
+    private UpstreamRequestPipeline upstreamRequestPipeline;
 
     @Resource
     private FQDownloadProperties downloadProperties;
@@ -64,9 +60,20 @@ public class FQNovelService {
     @Resource
     private FQDeviceRotationService deviceRotationService;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+
+    @Resource
+    private UpstreamAsyncHttpClient upstreamAsyncHttpClient;
+
+    @Resource
+    private UpstreamRetryPolicy upstreamRetryPolicy;
+
+    @Resource
+    private UpstreamCircuitBreaker upstreamCircuitBreaker;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
 
+    private final JavaType batchFullResponseType = objectMapper.constructType(FqIBatchFullResponse.class);
+
     // 默认FQ变量配置
     private FqVariable defaultFqVariable;
 
@@ -87,177 +94,90 @@ public class FQNovelService {
      * @return 批量内容响应
      */
     public CompletableFuture<FQNovelResponse<FqIBatchFullResponse>> batchFull(String itemIds, String bookId, boolean download) {
-        return CompletableFuture.supplyAsync(() -> {
-            int maxAttempts = Math.max(1, downloadProperties.getMaxRetries());
-            long baseDelayMs = Math.max(0L, downloadProperties.getRetryDelayMs());
-            long maxDelayMs = Math.max(baseDelayMs, downloadProperties.getRetryMaxDelayMs());
-
-            for (int attempt = 1; attempt <= maxAttempts; attempt++) {
-                try {
-                    FqVariable var = getDefaultFqVariable();
-
-                    // 使用工具类构建URL和参数
-                    String url = fqApiUtils.getBaseUrl() + "/reading/reader/batch_full/v";
-                    Map<String, String> params = fqApiUtils.buildBatchFullParams(var, itemIds, bookId, download);
-                    String fullUrl = fqApiUtils.buildUrlWithParams(url, params);
-
-                    // 使用工具类构建请求头
-                    Map<String, String> headers = fqApiUtils.buildCommonHeaders();
-
-                    // 使用现有的签名服务生成签名
-                    upstreamRateLimiter.acquire();
-                    Map<String, String> signedHeaders = fqEncryptServiceWorker.generateSignatureHeaders(fullUrl, headers).get();
-                    if (signedHeaders == null || signedHeaders.isEmpty()) {
-                        throw new IllegalStateException("签名生成失败");
-                    }
-
-                    // 发起API请求
-                    HttpHeaders httpHeaders = new HttpHeaders();
-                    signedHeaders.forEach(httpHeaders::set);
-                    headers.forEach(httpHeaders::set);
-
-                    HttpEntity<String> entity = new HttpEntity<>(httpHeaders);
-                    ResponseEntity<byte[]> response = restTemplate.exchange(fullUrl, HttpMethod.GET, entity, byte[].class);
-
-                    String responseBody = decodeUpstreamResponse(response);
-
-                    // 如果响应体为空，视为需要更换设备并重试
-                    String trimmedBody = responseBody.trim();
-                    if (trimmedBody.isEmpty()) {
-                        throw new RuntimeException("Empty upstream response");
-                    }
-
-                    // 上游可能返回 HTML/非 JSON（例如风控/拦截页）；这种情况也走自愈重试
-                    if (trimmedBody.startsWith("<")) {
-                        if (trimmedBody.contains("ILLEGAL_ACCESS")) {
-                            throw new IllegalStateException("ILLEGAL_ACCESS");
-                        }
-                        throw new IllegalStateException("UPSTREAM_NON_JSON");
-                    }
-                    if (!trimmedBody.startsWith("{") && !trimmedBody.startsWith("[")) {
-                        if (trimmedBody.contains("ILLEGAL_ACCESS")) {
-                            throw new IllegalStateException("ILLEGAL_ACCESS");
-                        }
-                        throw new IllegalStateException("UPSTREAM_NON_JSON");
-                    }
-
-                    // 解析响应
-                    FqIBatchFullResponse batchResponse = objectMapper.readValue(responseBody, FqIBatchFullResponse.class);
-
-                    if (batchResponse == null) {
-                        throw new RuntimeException("Upstream parse failed");
-                    }
-
-                    if (batchResponse.getCode() != 0) {
-                        String msg = batchResponse.getMessage() != null ? batchResponse.getMessage() : "";
-                        String raw = responseBody;
-                        if (isIllegalAccess(batchResponse.getCode(), msg, raw)) {
-                            throw new IllegalStateException("ILLEGAL_ACCESS");
-                        }
-                        return FQNovelResponse.error((int) batchResponse.getCode(), msg);
-                    }
-
-                    return FQNovelResponse.success(batchResponse);
-
-                } catch (Exception e) {
-                    String message = e.getMessage() != null ? e.getMessage() : "";
-                    boolean illegal = message.contains("ILLEGAL_ACCESS");
-                    boolean empty = message.contains("Empty upstream response") || message.contains("No content to map due to end-of-input");
-                    boolean gzipErr = message.contains("Not in GZIP format");
-                    boolean nonJson = message.contains("UPSTREAM_NON_JSON");
-
-                    boolean retryable = illegal || empty || gzipErr || nonJson;
-                    if (!retryable || attempt >= maxAttempts) {
-                        if (retryable && illegal) {
-                            return FQNovelResponse.error("批量获取章节内容失败: ILLEGAL_ACCESS（已重试仍失败，建议更换设备/降低频率）");
-                        }
-                        if (retryable && gzipErr) {
-                            return FQNovelResponse.error("批量获取章节内容失败: 响应格式异常（已重试仍失败）");
-                        }
-                        if (retryable && nonJson) {
-                            return FQNovelResponse.error("批量获取章节内容失败: 上游返回非JSON（已重试仍失败）");
-                        }
-                        if (retryable && empty) {
-                            return FQNovelResponse.error("批量获取章节内容失败: 空响应（已重试仍失败）");
-                        }
-                        log.error("批量获取章节内容失败 - itemIds: {}", itemIds, e);
-                        return FQNovelResponse.error("批量获取章节内容失败: " + message);
-                    }
-
-                    if (retryable) {
-                        if (illegal) {
-                            deviceRotationService.rotateIfNeeded("ILLEGAL_ACCESS");
-                        } else if (gzipErr || empty || nonJson) {
-                            deviceRotationService.rotateIfNeeded("UPSTREAM_EMPTY_OR_FORMAT");
-                        }
-                    }
-
-                    // 指数退避 + 轻微抖动，避免并发重试打爆上游
-                    long delay = baseDelayMs <= 0 ? 0 : baseDelayMs * (1L << Math.min(10, attempt - 1));
-                    delay = Math.min(delay, maxDelayMs);
-                    delay += ThreadLocalRandom.current().nextLong(0, 250);
-                    try {
-                        Thread.sleep(delay);
-                    } catch (InterruptedException ie) {
-                        Thread.currentThread().interrupt();
-                        return FQNovelResponse.error("批量获取章节内容失败: 重试被中断");
-                    }
-                }
+        // 风控、空响应、非JSON、gzip 异常与超时由重试策略在定时器上退避重试；重试前按失败类型更换设备
+        return upstreamRetryPolicy.execute("batch_full", downloadProperties.getMaxRetries(),
+            downloadProperties.getRetryDelayMs(), downloadProperties.getRetryMaxDelayMs(),
+            () -> batchFullAttempt(itemIds, bookId, download), this::rotateDeviceBeforeRetry
+        ).exceptionally(error -> {
+            Throwable e = UpstreamRequestPipeline.unwrap(error);
+            if (e instanceof UpstreamCircuitOpenException) {
+                return FQNovelResponse.error(503, "批量获取章节内容失败: " + e.getMessage());
+            }
+            switch (UpstreamFailure.classify(e)) {
+                case ILLEGAL_ACCESS:
+                    return FQNovelResponse.error("批量获取章节内容失败: ILLEGAL_ACCESS（已重试仍失败，建议更换设备/降低频率）");
+                case GZIP:
+                    return FQNovelResponse.error("批量获取章节内容失败: 响应格式异常（已重试仍失败）");
+                case NON_JSON:
+                    return FQNovelResponse.error("批量获取章节内容失败: 上游返回非JSON（已重试仍失败）");
+                case EMPTY:
+                    return FQNovelResponse.error("批量获取章节内容失败: 空响应（已重试仍失败）");
+                default:
+                    log.error("批量获取章节内容失败 - itemIds: {}", itemIds, e);
+                    return FQNovelResponse.error("批量获取章节内容失败: " + (e.getMessage() != null ? e.getMessage() : ""));
             }
-            return FQNovelResponse.error("批量获取章节内容失败: 超过最大重试次数");
         });
     }
 
-    private String decodeUpstreamResponse(ResponseEntity<byte[]> response) {
-        if (response == null) {
-            return "";
-        }
-        byte[] body = response.getBody();
-        if (body == null || body.length == 0) {
-            return "";
-        }
+    /**
+     * 单次 batch_full 请求：预约、签名、发出与解析全程非阻塞
+     */
+    private CompletableFuture<FQNovelResponse<FqIBatchFullResponse>> batchFullAttempt(String itemIds, String bookId, boolean download) {
+        FqVariable var = getDefaultFqVariable();
+
+        // 使用工具类构建URL和参数
+        String url = fqApiUtils.getBaseUrl() + "/reading/reader/batch_full/v";
+        Map<String, String> params = fqApiUtils.buildBatchFullParams(var, itemIds, bookId, download);
+        String fullUrl = fqApiUtils.buildUrlWithParams(url, params);
+        URI uri = fqApiUtils.toUri(fullUrl);
+
+        // 使用工具类构建请求头
+        Map<String, String> headers = fqApiUtils.buildCommonHeaders();
+
+        // 预约上游时刻，签名与限流等待重叠，在预约时刻发起异步请求；响应体在解码线程上边解压边解析
+        // 主机熔断时不再签名与排队，直接失败
+        return upstreamCircuitBreaker.execute(fullUrl, () -> upstreamRequestPipeline.submitAsync(fullUrl, headers, signedHeaders -> {
+            HttpHeaders httpHeaders = new HttpHeaders();
+            signedHeaders.forEach(httpHeaders::set);
+            headers.forEach(httpHeaders::set);
+            return upstreamAsyncHttpClient.<FqIBatchFullResponse>get(uri, httpHeaders, objectMapper, batchFullResponseType);
+        }).thenApply(FQNovelService::toBatchFullResponse));
+    }
 
-        boolean isGzip = false;
-        List<String> enc = response.getHeaders() != null ? response.getHeaders().get("Content-Encoding") : null;
-        if (enc != null) {
-            for (String e : enc) {
-                if (e != null && e.toLowerCase(Locale.ROOT).contains("gzip")) {
-                    isGzip = true;
-                    break;
-                }
-            }
-        }
-        if (!isGzip && body.length >= 2 && body[0] == (byte) 0x1f && body[1] == (byte) 0x8b) {
-            isGzip = true;
+    private void rotateDeviceBeforeRetry(UpstreamFailure failure) {
+        if (failure == UpstreamFailure.ILLEGAL_ACCESS) {
+            deviceRotationService.rotateIfNeeded("ILLEGAL_ACCESS");
+        } else if (failure != UpstreamFailure.TIMEOUT) {
+            deviceRotationService.rotateIfNeeded("UPSTREAM_EMPTY_OR_FORMAT");
         }
+    }
 
-        if (!isGzip) {
-            return new String(body, StandardCharsets.UTF_8);
+    /**
+     * 校验解析结果；需要重试的情况抛出对应分类的 UpstreamFailureException
+     */
+    private static FQNovelResponse<FqIBatchFullResponse> toBatchFullResponse(UpstreamResponseDecoder.Decoded<FqIBatchFullResponse> decoded) {
+        FqIBatchFullResponse batchResponse = UpstreamRetryPolicy.requireJson(decoded);
+
+        if (batchResponse == null) {
+            throw new RuntimeException("Upstream parse failed");
         }
 
-        try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(body))) {
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = gzipInputStream.read(buffer)) != -1) {
-                byteArrayOutputStream.write(buffer, 0, length);
+        if (batchResponse.getCode() != 0) {
+            String msg = batchResponse.getMessage() != null ? batchResponse.getMessage() : "";
+            if (isIllegalAccess(batchResponse.getCode(), msg)) {
+                throw new UpstreamFailureException(UpstreamFailure.ILLEGAL_ACCESS, "ILLEGAL_ACCESS");
             }
-            return new String(byteArrayOutputStream.toByteArray(), StandardCharsets.UTF_8);
-        } catch (java.util.zip.ZipException e) {
-            // 上游偶尔会返回非 gzip 内容但误标为 gzip，兜底为原始文本，避免 NPE/异常刷屏
-            return new String(body, StandardCharsets.UTF_8);
-        } catch (Exception e) {
-            return new String(body, StandardCharsets.UTF_8);
+            return FQNovelResponse.error((int) batchResponse.getCode(), msg);
         }
+
+        return FQNovelResponse.success(batchResponse);
     }
 
-    private static boolean isIllegalAccess(long code, String message, String rawBody) {
+    private static boolean isIllegalAccess(long code, String message) {
         if (code == 110) {
             return true;
         }
-        String msg = message != null ? message : "";
-        String raw = rawBody != null ? rawBody : "";
-        return msg.contains("ILLEGAL_ACCESS") || raw.contains("ILLEGAL_ACCESS");
+        return message != null && message.contains("ILLEGAL_ACCESS");
     }
 
 /*
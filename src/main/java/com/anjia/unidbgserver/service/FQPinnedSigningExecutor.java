@@ -0,0 +1,354 @@
+package com.anjia.unidbgserver.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * 线程绑定的签名执行器：每个载体线程独占一个模拟器，签名始终在同一线程上执行，
+ * 模拟器后端的状态与缓存不会在线程/核心之间迁移。
+ * <ul>
+ *   <li>每个载体有自己的无锁双端队列：提交时按 power-of-two-choices 选择排队较短的载体，从队头入队、由载体从队头取出</li>
+ *   <li>载体自己的队列为空时，从其他载体队尾窃取任务，在自己的模拟器上执行</li>
+ *   <li>签名路径上没有借还与加锁；只有实例需要回收时才经 {@link FQSignerPool} 归还并换新</li>
+ * </ul>
+ * 容量与超时语义与 {@link FQSigningDispatcher} 一致。
+ */
+@Slf4j
+public class FQPinnedSigningExecutor implements FQSigningExecutor {
+
+    private static final int MIN_BATCH_CHUNK = 16;
+    // 空闲载体的最长休眠时间，作为唤醒丢失时的兜底
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final FQSignerPool signerPool;
+    private final Carrier[] carriers;
+    private final int capacity;
+    private final long timeoutMs;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final ScheduledExecutorService timer;
+    private volatile boolean closed;
+
+    // 统计
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong stolen = new AtomicLong();
+    private final AtomicLong queueWaitTotalNanos = new AtomicLong();
+    private final AtomicLong signTotalNanos = new AtomicLong();
+
+    public FQPinnedSigningExecutor(FQSignerPool signerPool, int carrierCount, int capacity, long timeoutMs) {
+        this.signerPool = signerPool;
+        this.capacity = Math.max(1, capacity);
+        this.timeoutMs = timeoutMs;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fq-sign-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.carriers = new Carrier[Math.max(1, carrierCount)];
+        for (int i = 0; i < carriers.length; i++) {
+            carriers[i] = new Carrier(i);
+        }
+        for (Carrier carrier : carriers) {
+            carrier.thread.start();
+        }
+        log.info("FQ线程绑定签名执行器已启动 - 载体:{}, 队列容量:{}, 超时:{}ms", carriers.length, this.capacity, timeoutMs);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> submit(String url, Function<FQEncryptService, Map<String, String>> work) {
+        return enqueue(Collections.singletonList(url), Collections.singletonList(work)).get(0);
+    }
+
+    /**
+     * 批量提交：按载体数切成若干连续块，分散到不同载体
+     */
+    @Override
+    public List<CompletableFuture<Map<String, String>>> submitBatch(List<String> urls,
+                                                                   List<Function<FQEncryptService, Map<String, String>>> works) {
+        int total = works.size();
+        int chunks = Math.max(1, Math.min(carriers.length, (total + MIN_BATCH_CHUNK - 1) / MIN_BATCH_CHUNK));
+        int chunkSize = (total + chunks - 1) / Math.max(1, chunks);
+        List<CompletableFuture<Map<String, String>>> futures = new ArrayList<>(total);
+        for (int from = 0; from < total; from += chunkSize) {
+            int to = Math.min(total, from + chunkSize);
+            futures.addAll(enqueue(urls.subList(from, to), works.subList(from, to)));
+        }
+        return futures;
+    }
+
+    private List<CompletableFuture<Map<String, String>>> enqueue(List<String> urls,
+                                                                 List<Function<FQEncryptService, Map<String, String>>> works) {
+        List<CompletableFuture<Map<String, String>>> futures = new ArrayList<>(works.size());
+        for (int i = 0; i < works.size(); i++) {
+            futures.add(new CompletableFuture<>());
+        }
+        if (closed) {
+            FQSignTask.failAll(futures, new RejectedExecutionException("FQ签名执行器已关闭"));
+            return futures;
+        }
+        if (pending.incrementAndGet() > capacity) {
+            pending.decrementAndGet();
+            rejected.addAndGet(works.size());
+            log.warn("FQ签名队列已满，拒绝请求 - 排队:{}/{}, 条数:{}", pending.get(), capacity, works.size());
+            FQSignTask.failAll(futures, new RejectedExecutionException("FQ签名队列已满(" + capacity + ")，请稍后重试"));
+            return futures;
+        }
+
+        FQSignTask task = new FQSignTask(urls, works, futures);
+        submitted.addAndGet(works.size());
+        Carrier target = choose();
+        target.depth.incrementAndGet();
+        target.queue.offerLast(task);
+        target.wake();
+        if (target.busy) {
+            wakeIdleCarrier(target);
+        }
+
+        if (timeoutMs > 0) {
+            ScheduledFuture<?> timeout = timer.schedule(() -> {
+                // 尚未被取走的任务直接移出队列，腾出容量
+                for (Carrier carrier : carriers) {
+                    if (carrier.queue.removeFirstOccurrence(task)) {
+                        carrier.depth.decrementAndGet();
+                        pending.decrementAndGet();
+                        break;
+                    }
+                }
+                TimeoutException error = new TimeoutException("FQ签名超时(" + timeoutMs + "ms)");
+                for (CompletableFuture<Map<String, String>> future : futures) {
+                    if (future.completeExceptionally(error)) {
+                        timedOut.incrementAndGet();
+                    }
+                }
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .whenComplete((result, error) -> timeout.cancel(false));
+        }
+        return futures;
+    }
+
+    /**
+     * power-of-two-choices：随机取两个载体，选排队较短者
+     */
+    private Carrier choose() {
+        if (carriers.length == 1) {
+            return carriers[0];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Carrier a = carriers[random.nextInt(carriers.length)];
+        Carrier b = carriers[random.nextInt(carriers.length)];
+        return b.depth.get() < a.depth.get() ? b : a;
+    }
+
+    /**
+     * 目标载体正忙时唤醒一个空闲载体来窃取
+     */
+    private void wakeIdleCarrier(Carrier except) {
+        for (Carrier carrier : carriers) {
+            if (carrier != except && carrier.parked) {
+                carrier.wake();
+                return;
+            }
+        }
+    }
+
+    private boolean hasQueuedWork() {
+        for (Carrier carrier : carriers) {
+            if (carrier.depth.get() > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        timer.shutdownNow();
+        for (Carrier carrier : carriers) {
+            carrier.thread.interrupt();
+            LockSupport.unpark(carrier.thread);
+        }
+        for (Carrier carrier : carriers) {
+            FQSignTask task;
+            while ((task = carrier.queue.pollFirst()) != null) {
+                FQSignTask.failAll(task.futures, new RejectedExecutionException("FQ签名执行器已关闭"));
+            }
+        }
+    }
+
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long started = completed.get() + failed.get();
+        int busy = 0;
+        List<Integer> depths = new ArrayList<>(carriers.length);
+        for (Carrier carrier : carriers) {
+            busy += carrier.busy ? 1 : 0;
+            depths.add(carrier.depth.get());
+        }
+        stats.put("mode", "pinned");
+        stats.put("lanes", carriers.length);
+        stats.put("busyLanes", busy);
+        stats.put("queueCapacity", capacity);
+        stats.put("queueDepth", pending.get());
+        stats.put("carrierDepths", depths);
+        stats.put("submitted", submitted.get());
+        stats.put("completed", completed.get());
+        stats.put("failed", failed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("timedOut", timedOut.get());
+        stats.put("stolen", stolen.get());
+        stats.put("avgQueueWaitMs", started > 0 ? TimeUnit.NANOSECONDS.toMillis(queueWaitTotalNanos.get() / started) : 0L);
+        stats.put("avgSignMs", started > 0 ? TimeUnit.NANOSECONDS.toMillis(signTotalNanos.get() / started) : 0L);
+        return stats;
+    }
+
+    /**
+     * 载体：一个平台线程 + 它独占的签名实例 + 它的任务队列
+     */
+    private final class Carrier implements Runnable {
+        private final int index;
+        private final Thread thread;
+        private final ConcurrentLinkedDeque<FQSignTask> queue = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger depth = new AtomicInteger();
+        private volatile boolean parked;
+        private volatile boolean busy;
+
+        private Carrier(int index) {
+            this.index = index;
+            this.thread = new Thread(this, "fq-sign-carrier-" + (index + 1));
+            this.thread.setDaemon(true);
+        }
+
+        private void wake() {
+            if (parked) {
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            FQSignerPool.PooledSigner signer = null;
+            try {
+                while (!closed) {
+                    if (signer == null) {
+                        signer = signerPool.borrow(2, TimeUnit.SECONDS);
+                        continue;
+                    }
+                    FQSignTask task = poll();
+                    if (task == null) {
+                        parked = true;
+                        // 置位后再检查一次，避免与提交方的唤醒交错而错过任务
+                        if (!hasQueuedWork() && !closed) {
+                            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                        }
+                        parked = false;
+                        continue;
+                    }
+                    busy = true;
+                    FQSignTask rest;
+                    try {
+                        rest = execute(task, signer);
+                    } finally {
+                        busy = false;
+                    }
+                    if (rest != null) {
+                        // 实例已被隔离：剩余请求放回队头，换实例后继续
+                        pending.incrementAndGet();
+                        depth.incrementAndGet();
+                        queue.offerFirst(rest);
+                    }
+                    if (signerPool.shouldRelease(signer)) {
+                        // 交给签名池做回收判断；通常立即借回同一实例，需替换时换成新实例
+                        signerPool.release(signer);
+                        signer = null;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                signerPool.release(signer);
+            }
+        }
+
+        /**
+         * 先取自己的队头，再从其他载体的队尾窃取
+         */
+        private FQSignTask poll() {
+            FQSignTask task = queue.pollFirst();
+            if (task != null) {
+                depth.decrementAndGet();
+                pending.decrementAndGet();
+                return task;
+            }
+            int start = ThreadLocalRandom.current().nextInt(carriers.length);
+            for (int i = 0; i < carriers.length; i++) {
+                Carrier victim = carriers[(start + i) % carriers.length];
+                if (victim == this || victim.depth.get() == 0) {
+                    continue;
+                }
+                task = victim.queue.pollLast();
+                if (task != null) {
+                    victim.depth.decrementAndGet();
+                    pending.decrementAndGet();
+                    stolen.incrementAndGet();
+                    return task;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return 实例在执行中被隔离时返回尚未执行的剩余部分，否则返回 null
+         */
+        private FQSignTask execute(FQSignTask task, FQSignerPool.PooledSigner signer) {
+            FQEncryptService service = signer.getService();
+            for (int i = 0; i < task.works.size(); i++) {
+                CompletableFuture<Map<String, String>> future = task.futures.get(i);
+                if (future.isDone()) {
+                    continue;
+                }
+                long start = System.nanoTime();
+                queueWaitTotalNanos.addAndGet(start - task.enqueuedAtNanos);
+                try {
+                    Map<String, String> result = task.works.get(i).apply(service);
+                    signer.recordCall(result != null && !result.isEmpty());
+                    future.complete(result);
+                    completed.incrementAndGet();
+                } catch (Throwable t) {
+                    signer.recordFailure(t);
+                    failed.incrementAndGet();
+                    log.warn("FQ签名执行失败 - 载体:{}, URL: {}, 错误: {}", index + 1, task.urls.get(i), t.getMessage());
+                    future.completeExceptionally(t);
+                }
+                signTotalNanos.addAndGet(System.nanoTime() - start);
+                if (signer.isQuarantined()) {
+                    return i + 1 < task.works.size() ? task.remainder(i + 1) : null;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -3,22 +3,21 @@ package com.anjia.unidbgserver.service;
 import com.anjia.unidbgserver.config.FQApiProperties;
 import com.anjia.unidbgserver.dto.*;
 import com.anjia.unidbgserver.utils.FQApiUtils;
+import com.anjia.unidbgserver.utils.UpstreamResponseDecoder;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.JsonNode;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.nio.charset.StandardCharsets;
+import java.net.URI;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.zip.GZIPInputStream;
 
 /**
  * FQNovel RegisterKey缓存服务
@@ -28,9 +27,6 @@ import java.util.zip.GZIPInputStream;
 @Service
 public class FQRegisterKeyService {
 
-    @Resource(name = "fqEncryptWorker")
-    private FQEncryptServiceWorker fqEncryptServiceWorker;
-
     @Resource
     private FQApiProperties fqApiProperties;
 
@@ -38,10 +34,20 @@ public class FQRegisterKeyService {
     private FQApiUtils fqApiUtils;
 
     @Resource
-    private UpstreamRateLimiter upstreamRateLimiter;
+    private UpstreamRequestPipeline upstreamRequestPipeline;
+
+
+    @Resource
+    private UpstreamAsyncHttpClient upstreamAsyncHttpClient;
+
+    @Resource
+    private UpstreamRetryPolicy upstreamRetryPolicy;
+
+    @Resource
+    private UpstreamCircuitBreaker upstreamCircuitBreaker;
 
-    private final RestTemplate restTemplate = new RestTemplate();
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JavaType registerKeyResponseType = objectMapper.constructType(FqRegisterKeyResponse.class);
 
     // 默认FQ变量配置
     private FqVariable defaultFqVariable;
@@ -60,25 +66,18 @@ public class FQRegisterKeyService {
     }
 
     /**
-     * 启动时初始化registerkey
+     * 启动时在后台获取初始registerkey，不阻塞应用启动；获取完成前的请求按需同步获取
      */
     @PostConstruct
     public void initialize() {
-        log.info("初始化FQRegisterKeyService，获取初始registerkey...");
-        try {
-            // 获取初始registerkey
-            FqRegisterKeyResponse response = fetchRegisterKey();
-            if (response != null && response.getData() != null) {
-                long keyver = response.getData().getKeyver();
-                cachedRegisterKeys.put(keyver, response);
-                currentRegisterKey = response;
-                log.debug("初始registerkey获取成功，keyver: {}, content: {}", keyver,response.getData().getKey());
+        log.info("初始化FQRegisterKeyService，后台获取初始registerkey...");
+        refreshRegisterKeyAsync().whenComplete((response, error) -> {
+            if (error != null) {
+                log.error("初始化registerkey失败", UpstreamRequestPipeline.unwrap(error));
             } else {
-                log.error("初始registerkey获取失败，响应为空");
+                log.debug("初始registerkey获取成功，keyver: {}, content: {}", response.getData().getKeyver(), response.getData().getKey());
             }
-        } catch (Exception e) {
-            log.error("初始化registerkey失败", e);
-        }
+        });
     }
 
     /**
@@ -121,26 +120,43 @@ public class FQRegisterKeyService {
      * @return 新的RegisterKey响应
      */
     public synchronized FqRegisterKeyResponse refreshRegisterKey() throws Exception {
-        log.info("刷新registerkey...");
-        FqRegisterKeyResponse response = fetchRegisterKey();
+        try {
+            return refreshRegisterKeyAsync().join();
+        } catch (CompletionException e) {
+            Throwable cause = UpstreamRequestPipeline.unwrap(e);
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
 
-        if (response != null && response.getData() != null) {
+    /**
+     * 非阻塞地刷新registerkey，成功后写入缓存
+     *
+     * @return 新的RegisterKey响应
+     */
+    public CompletableFuture<FqRegisterKeyResponse> refreshRegisterKeyAsync() {
+        log.info("刷新registerkey...");
+        // 空响应、非JSON、gzip 异常与超时按默认策略重试，每次重试重新构建载荷与签名
+        return upstreamRetryPolicy.execute("registerkey", this::fetchRegisterKeyAsync).thenApply(response -> {
+            if (response == null || response.getData() == null) {
+                throw new IllegalStateException("刷新registerkey失败，响应为空");
+            }
             long keyver = response.getData().getKeyver();
             cachedRegisterKeys.put(keyver, response);
             currentRegisterKey = response;
             log.info("registerkey刷新成功，新keyver: {}", keyver);
             return response;
-        } else {
-            throw new Exception("刷新registerkey失败，响应为空");
-        }
+        });
     }
 
     /**
-     * 实际获取registerkey的方法
+     * 实际获取registerkey的方法：经请求流水线预约时刻与签名，异步发出请求
      *
      * @return RegisterKey响应
      */
-    private FqRegisterKeyResponse fetchRegisterKey() throws Exception {
+    private CompletableFuture<FqRegisterKeyResponse> fetchRegisterKeyAsync() {
         FqVariable var = getDefaultFqVariable();
 
         // 使用工具类构建URL和参数
@@ -154,39 +170,57 @@ public class FQRegisterKeyService {
         // 使用工具类构建请求头
         Map<String, String> headers = fqApiUtils.buildRegisterKeyHeaders(currentTime);
 
-        // 使用现有的签名服务生成签名
-        Map<String, String> signedHeaders = fqEncryptServiceWorker.generateSignatureHeaders(fullUrl, headers).get();
-        if (signedHeaders == null || signedHeaders.isEmpty()) {
-            throw new IllegalStateException("签名生成失败，无法请求 registerkey");
-        }
-
-        // 发起API请求
-        HttpHeaders httpHeaders = new HttpHeaders();
-        signedHeaders.forEach(httpHeaders::set);
-        headers.forEach(httpHeaders::set);
-
         // 创建请求载荷
-        FqRegisterKeyPayload payload = new FqRegisterKeyPayload(var);
-        HttpEntity<FqRegisterKeyPayload> entity = new HttpEntity<>(payload, httpHeaders);
+        FqRegisterKeyPayload payload;
+        byte[] body;
+        try {
+            payload = new FqRegisterKeyPayload(var);
+            body = objectMapper.writeValueAsBytes(payload);
+        } catch (Exception e) {
+            CompletableFuture<FqRegisterKeyResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        URI uri = fqApiUtils.toUri(fullUrl);
 
         log.debug("发送registerkey请求到: {}", fullUrl);
         log.debug("请求时间戳: {}", currentTime);
-        log.debug("签名请求头: {}", httpHeaders);
         log.debug("请求载荷: content={}, keyver={}", payload.getContent(), payload.getKeyver());
 
-        upstreamRateLimiter.acquire();
-        ResponseEntity<byte[]> response = restTemplate.exchange(fullUrl, HttpMethod.POST, entity, byte[].class);
+        // 预约上游时刻并在等待期间生成签名，到点发起异步请求；主机熔断时直接失败
+        return upstreamCircuitBreaker.execute(fullUrl, () -> upstreamRequestPipeline.submitAsync(fullUrl, headers, signedHeaders -> {
+            HttpHeaders httpHeaders = new HttpHeaders();
+            signedHeaders.forEach(httpHeaders::set);
+            headers.forEach(httpHeaders::set);
+            if (httpHeaders.getContentType() == null) {
+                httpHeaders.setContentType(MediaType.APPLICATION_JSON);
+            }
+            log.debug("签名请求头: {}", httpHeaders);
+            return upstreamAsyncHttpClient.<FqRegisterKeyResponse>execute(HttpMethod.POST, uri, httpHeaders, body, objectMapper, registerKeyResponseType);
+        }).handle((response, error) -> {
+            if (error != null) {
+                Throwable e = UpstreamRequestPipeline.unwrap(error);
+                if (e instanceof IllegalStateException && "签名生成失败".equals(e.getMessage())) {
+                    throw new IllegalStateException("签名生成失败，无法请求 registerkey");
+                }
+                throw e instanceof RuntimeException ? (RuntimeException) e : new CompletionException(e);
+            }
+            return toRegisterKeyResponse(response);
+        }));
+    }
 
-        String responseBody = decompressGzipResponse(response.getBody());
-        if (log.isDebugEnabled()) {
-            log.debug("registerkey原始响应: {}", responseBody.length() > 800 ? responseBody.substring(0, 800) + "..." : responseBody);
+    private static FqRegisterKeyResponse toRegisterKeyResponse(UpstreamResponseDecoder.Decoded<FqRegisterKeyResponse> response) {
+        FqRegisterKeyResponse parsed = null;
+        if (response != null && response.isJson()) {
+            parsed = response.getValue();
+        } else if (response != null && !response.getText().trim().isEmpty()) {
+            String text = response.getText();
+            throw new UpstreamFailureException(text.contains("ILLEGAL_ACCESS") ? UpstreamFailure.ILLEGAL_ACCESS : UpstreamFailure.NON_JSON,
+                "registerkey 响应非JSON: " + (text.length() > 200 ? text.substring(0, 200) + "..." : text));
         }
 
-        JsonNode root = objectMapper.readTree(responseBody);
-        FqRegisterKeyResponse parsed = objectMapper.treeToValue(root, FqRegisterKeyResponse.class);
-
         if (parsed == null) {
-            throw new IllegalStateException("registerkey 响应解析失败: body为空");
+            throw new UpstreamFailureException(UpstreamFailure.EMPTY, "registerkey 响应解析失败: body为空");
         }
 
         log.debug("registerkey请求响应: code={}, message={}, keyver={}",
@@ -196,31 +230,6 @@ public class FQRegisterKeyService {
         return parsed;
     }
 
-    private String decompressGzipResponse(byte[] gzipData) throws Exception {
-        if (gzipData == null || gzipData.length == 0) {
-            return "";
-        }
-
-        boolean looksLikeGzip = gzipData.length >= 2
-            && (gzipData[0] == (byte) 0x1f)
-            && (gzipData[1] == (byte) 0x8b);
-        if (!looksLikeGzip) {
-            return new String(gzipData, StandardCharsets.UTF_8);
-        }
-
-        try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(gzipData))) {
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = gzipInputStream.read(buffer)) != -1) {
-                byteArrayOutputStream.write(buffer, 0, length);
-            }
-            return new String(byteArrayOutputStream.toByteArray(), StandardCharsets.UTF_8);
-        } catch (java.util.zip.ZipException e) {
-            return new String(gzipData, StandardCharsets.UTF_8);
-        }
-    }
-
     /**
      * 获取指定keyver的解密密钥
      *
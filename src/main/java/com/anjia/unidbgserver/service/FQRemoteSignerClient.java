@@ -0,0 +1,310 @@
+package com.anjia.unidbgserver.service;
+
+import com.anjia.unidbgserver.config.UnidbgProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 远程签名客户端：本节点不启动模拟器，把签名请求转发给远端签名节点的 /api/fq-signature 接口。
+ * <ul>
+ *   <li>负载均衡：随机取两个健康节点，选在途请求少的（相同时选平均延迟低的）</li>
+ *   <li>故障转移：单个节点失败时换下一个未尝试过的节点重试</li>
+ *   <li>健康检查：定时请求 health 接口；连续失败达到阈值的节点被摘除，检查恢复后重新加入</li>
+ * </ul>
+ * 到各节点的 keep-alive 连接由连接池复用，每个节点可保持的连接数与 max-concurrency 一致。
+ */
+@Slf4j
+public class FQRemoteSignerClient {
+
+    private static final String SIGN_PATH = "/api/fq-signature/generateSignature";
+    private static final String HEALTH_PATH = "/api/fq-signature/health";
+    private static final ParameterizedTypeReference<Map<String, String>> RESULT_TYPE =
+        new ParameterizedTypeReference<Map<String, String>>() {
+        };
+
+    private final List<Node> nodes = new ArrayList<>();
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final RestTemplate restTemplate;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService healthChecker;
+    private final int failureThreshold;
+    private final int maxAttempts;
+
+    public FQRemoteSignerClient(UnidbgProperties.Remote remote) {
+        for (String endpoint : remote.getEndpoints()) {
+            if (endpoint != null && !endpoint.trim().isEmpty()) {
+                nodes.add(new Node(endpoint.trim().replaceAll("/+$", "")));
+            }
+        }
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("远程签名模式需要至少一个 endpoint");
+        }
+        this.failureThreshold = Math.max(1, remote.getFailureThreshold());
+        this.maxAttempts = Math.max(1, Math.min(remote.getMaxAttempts(), nodes.size()));
+
+        // 并发请求可能集中到同一节点，每个节点的连接上限与总并发一致
+        int maxConcurrency = Math.max(1, remote.getMaxConcurrency());
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConcurrency * nodes.size());
+        connectionManager.setDefaultMaxPerRoute(maxConcurrency);
+        connectionManager.setValidateAfterInactivity(2000);
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout((int) remote.getConnectTimeoutMs())
+            .setSocketTimeout((int) remote.getReadTimeoutMs())
+            .setConnectionRequestTimeout((int) remote.getConnectTimeoutMs())
+            .build();
+        this.httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .evictExpiredConnections()
+            .evictIdleConnections(30, TimeUnit.SECONDS)
+            .disableCookieManagement()
+            // 签名请求无副作用：复用到对端已关闭的连接（NoHttpResponseException）时在新连接上重发一次
+            .setRetryHandler(new DefaultHttpRequestRetryHandler(1, true))
+            .build();
+        this.restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(maxConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "fq-remote-signer-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fq-remote-signer-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1000L, remote.getHealthCheckIntervalMs());
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, 0, interval, TimeUnit.MILLISECONDS);
+        log.info("远程签名客户端已启动 - 节点:{}", nodes.size());
+    }
+
+    /**
+     * 异步签名
+     */
+    public CompletableFuture<Map<String, String>> sign(String url, String headers) {
+        return CompletableFuture.supplyAsync(() -> signWithFailover(url, headers != null ? headers : ""), executor);
+    }
+
+    private Map<String, String> signWithFailover(String url, String headers) {
+        List<Node> tried = new ArrayList<>(maxAttempts);
+        RuntimeException lastError = null;
+        for (int attempt = 0; attempt < maxAttempts; attempt++) {
+            Node node = choose(tried);
+            if (node == null) {
+                break;
+            }
+            tried.add(node);
+            try {
+                return node.sign(url, headers);
+            } catch (RuntimeException e) {
+                if (!isNodeFailure(e)) {
+                    // 4xx 等请求本身的错误换节点也不会成功，直接返回调用方
+                    throw e;
+                }
+                lastError = e;
+                log.warn("远程签名失败，尝试下一节点 - 节点:{}, 错误:{}", node.baseUrl, e.getMessage());
+            }
+        }
+        throw lastError != null ? lastError : new IllegalStateException("没有可用的远程签名节点");
+    }
+
+    /**
+     * power-of-two-choices：在未尝试过的节点中优先健康节点；全部不健康时仍尝试，避免健康检查延迟导致全部拒绝
+     */
+    Node choose(List<Node> exclude) {
+        List<Node> candidates = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            if (node.healthy && !exclude.contains(node)) {
+                candidates.add(node);
+            }
+        }
+        if (candidates.isEmpty()) {
+            for (Node node : nodes) {
+                if (!exclude.contains(node)) {
+                    candidates.add(node);
+                }
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(candidates.size());
+        int second = random.nextInt(candidates.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        Node a = candidates.get(first);
+        Node b = candidates.get(second);
+        int inflightA = a.inflight.get();
+        int inflightB = b.inflight.get();
+        if (inflightA != inflightB) {
+            return inflightA < inflightB ? a : b;
+        }
+        return a.avgLatencyMicros <= b.avgLatencyMicros ? a : b;
+    }
+
+    private void checkHealth() {
+        for (Node node : nodes) {
+            try {
+                restTemplate.getForObject(node.baseUrl + HEALTH_PATH, Map.class);
+                if (!node.healthy) {
+                    log.info("远程签名节点恢复: {}", node.baseUrl);
+                }
+                node.consecutiveFailures.set(0);
+                node.healthy = true;
+            } catch (Exception e) {
+                node.recordFailure();
+                log.debug("远程签名节点健康检查失败 - 节点:{}, 错误:{}", node.baseUrl, e.getMessage());
+            }
+        }
+    }
+
+    public void close() {
+        healthChecker.shutdownNow();
+        executor.shutdown();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            log.debug("关闭远程签名连接池失败: {}", e.getMessage());
+        }
+    }
+
+    public int getNodeCount() {
+        return nodes.size();
+    }
+
+    public int getHealthyCount() {
+        int healthy = 0;
+        for (Node node : nodes) {
+            if (node.healthy) {
+                healthy++;
+            }
+        }
+        return healthy;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        List<Map<String, Object>> details = new ArrayList<>();
+        for (Node node : nodes) {
+            Map<String, Object> detail = new LinkedHashMap<>();
+            detail.put("endpoint", node.baseUrl);
+            detail.put("healthy", node.healthy);
+            detail.put("inflight", node.inflight.get());
+            detail.put("requests", node.requests.get());
+            detail.put("failures", node.failures.get());
+            detail.put("avgLatencyMs", node.avgLatencyMicros / 1000D);
+            details.add(detail);
+        }
+        stats.put("nodes", details);
+        PoolStats pool = connectionManager.getTotalStats();
+        Map<String, Object> connections = new LinkedHashMap<>();
+        connections.put("leased", pool.getLeased());
+        connections.put("available", pool.getAvailable());
+        connections.put("pending", pool.getPending());
+        connections.put("max", pool.getMax());
+        stats.put("connections", connections);
+        return stats;
+    }
+
+    /**
+     * 节点自身故障：连接失败与超时（ResourceAccessException）、5xx 与空结果，计入节点失败并转移到其他节点
+     */
+    static boolean isNodeFailure(RuntimeException e) {
+        return e instanceof ResourceAccessException || e instanceof HttpServerErrorException
+            || e instanceof IllegalStateException;
+    }
+
+    /**
+     * 远程签名节点
+     */
+    final class Node {
+        final String baseUrl;
+        final AtomicInteger inflight = new AtomicInteger();
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        volatile boolean healthy = true;
+        // 指数加权平均延迟（微秒）
+        volatile double avgLatencyMicros;
+
+        Node(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        Map<String, String> sign(String url, String headers) {
+            inflight.incrementAndGet();
+            requests.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                Map<String, String> body = new HashMap<>();
+                body.put("url", url);
+                body.put("headers", headers);
+                HttpHeaders httpHeaders = new HttpHeaders();
+                httpHeaders.setContentType(MediaType.APPLICATION_JSON);
+                ResponseEntity<Map<String, String>> response = restTemplate.exchange(baseUrl + SIGN_PATH,
+                    HttpMethod.POST, new HttpEntity<>(body, httpHeaders), RESULT_TYPE);
+                Map<String, String> result = response.getBody();
+                if (result == null || result.isEmpty()) {
+                    throw new IllegalStateException("远程签名结果为空");
+                }
+                consecutiveFailures.set(0);
+                long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+                avgLatencyMicros = avgLatencyMicros == 0 ? micros : avgLatencyMicros * 0.8 + micros * 0.2;
+                return result;
+            } catch (RuntimeException e) {
+                if (isNodeFailure(e)) {
+                    recordFailure();
+                }
+                throw e;
+            } finally {
+                inflight.decrementAndGet();
+            }
+        }
+
+        void recordFailure() {
+            failures.incrementAndGet();
+            if (consecutiveFailures.incrementAndGet() >= failureThreshold && healthy) {
+                healthy = false;
+                log.warn("远程签名节点被摘除: {}", baseUrl);
+            }
+        }
+    }
+}
@@ -3,21 +3,18 @@ package com.anjia.unidbgserver.service;
 import com.anjia.unidbgserver.config.FQApiProperties;
 import com.anjia.unidbgserver.dto.*;
 import com.anjia.unidbgserver.utils.FQApiUtils;
+import com.anjia.unidbgserver.utils.UpstreamResponseDecoder;
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import javax.annotation.Resource;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.net.URI;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.zip.GZIPInputStream;
 
 /**
  * FQ书籍搜索和目录服务
@@ -27,9 +24,6 @@ import java.util.zip.GZIPInputStream;
 @Service
 public class FQSearchService {
 
-    @Resource(name = "fqEncryptWorker")
-    private FQEncryptServiceWorker fqEncryptServiceWorker;
-
     @Resource
     private FQApiProperties fqApiProperties;
 
@@ -37,10 +31,22 @@ public class FQSearchService {
     private FQApiUtils fqApiUtils;
 
     @Resource
-    private UpstreamRateLimiter upstreamRateLimiter;
+    private UpstreamRequestPipeline upstreamRequestPipeline;
+
+
+    @Resource
+    private UpstreamAsyncHttpClient upstreamAsyncHttpClient;
+
+    @Resource
+    private UpstreamRetryPolicy upstreamRetryPolicy;
+
+    @Resource
+    private UpstreamCircuitBreaker upstreamCircuitBreaker;
 
-    private final RestTemplate restTemplate = new RestTemplate();
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JavaType treeType = objectMapper.constructType(JsonNode.class);
+    private final JavaType directoryResponseType = objectMapper.getTypeFactory()
+        .constructParametricType(FqUpstreamResponse.class, FQDirectoryResponse.class);
 
     // 默认FQ变量配置
     private FqVariable defaultFqVariable;
@@ -141,55 +147,49 @@ public class FQSearchService {
      * @return 搜索结果
      */
     public CompletableFuture<FQNovelResponse<FQSearchResponse>> searchBooksEnhanced(FQSearchRequest searchRequest) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                // 如果用户已经提供了search_id，直接进行搜索
-                if (searchRequest.getSearchId() != null && !searchRequest.getSearchId().trim().isEmpty()) {
-                    return performSearchWithId(searchRequest);
-                }
-
-                // 第一阶段：获取search_id
-                FQSearchRequest firstRequest = createFirstPhaseRequest(searchRequest);
-                FQNovelResponse<FQSearchResponse> firstResponse = performSearchInternal(firstRequest);
+        // 两个阶段的请求与其间的随机延迟都以 future 组合，等待期间不占用线程
+        return CompletableFuture.completedFuture(searchRequest).thenCompose(request -> {
+            // 如果用户已经提供了search_id，直接进行搜索
+            if (request.getSearchId() != null && !request.getSearchId().trim().isEmpty()) {
+                return performSearchWithId(request);
+            }
 
+            // 第一阶段：获取search_id
+            FQSearchRequest firstRequest = createFirstPhaseRequest(request);
+            return performSearchInternal(firstRequest).thenCompose(firstResponse -> {
                 if (firstResponse.getCode() != 0) {
                     log.warn("第一阶段搜索失败 - code: {}, message: {}", firstResponse.getCode(), firstResponse.getMessage());
-                    return firstResponse;
+                    return CompletableFuture.completedFuture(firstResponse);
                 }
 
                 String firstSearchId = firstResponse.getData() != null ? firstResponse.getData().getSearchId() : null;
                 if (firstSearchId == null || firstSearchId.trim().isEmpty()) {
                     log.warn("第一阶段搜索未返回search_id");
-                    return firstResponse;
+                    return CompletableFuture.completedFuture(firstResponse);
                 }
 
                 String searchId = firstSearchId;
 
-                // 随机延迟 1-2 秒
-                try {
-                    long delay = 1000 + (long)(Math.random() * 1000); // 1000-2000ms
-                    Thread.sleep(delay);
-                    searchRequest.setLastSearchPageInterval((int) delay); // 设置间隔时间
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    log.warn("延迟被中断", e);
-                }
-
-                // 第二阶段：使用search_id进行搜索
-                FQSearchRequest secondRequest = createSecondPhaseRequest(searchRequest, searchId);
-                FQNovelResponse<FQSearchResponse> secondResponse = performSearchInternal(secondRequest);
-
-                // 确保返回结果包含search_id
-                if (secondResponse.getCode() == 0 && secondResponse.getData() != null ){
-                    secondResponse.getData().setSearchId(searchId);
-                }
-
-                return secondResponse;
-
-            } catch (Exception e) {
-                log.error("增强搜索失败 - query: {}", searchRequest.getQuery(), e);
-                return FQNovelResponse.error("增强搜索失败: " + e.getMessage());
-            }
+                // 随机延迟 1-2 秒（定时器上等待）
+                long delay = 1000 + (long) (Math.random() * 1000); // 1000-2000ms
+                return upstreamRequestPipeline.delay(delay).thenCompose(ignored -> {
+                    request.setLastSearchPageInterval((int) delay); // 设置间隔时间
+
+                    // 第二阶段：使用search_id进行搜索
+                    FQSearchRequest secondRequest = createSecondPhaseRequest(request, searchId);
+                    return performSearchInternal(secondRequest);
+                }).thenApply(secondResponse -> {
+                    // 确保返回结果包含search_id
+                    if (secondResponse.getCode() == 0 && secondResponse.getData() != null) {
+                        secondResponse.getData().setSearchId(searchId);
+                    }
+                    return secondResponse;
+                });
+            });
+        }).exceptionally(error -> {
+            Throwable e = UpstreamRequestPipeline.unwrap(error);
+            log.error("增强搜索失败 - query: {}", searchRequest.getQuery(), e);
+            return FQNovelResponse.error("增强搜索失败: " + e.getMessage());
         });
     }
 
@@ -285,7 +285,7 @@ public class FQSearchService {
     /**
      * 执行带search_id的搜索
      */
-    private FQNovelResponse<FQSearchResponse> performSearchWithId(FQSearchRequest searchRequest) {
+    private CompletableFuture<FQNovelResponse<FQSearchResponse>> performSearchWithId(FQSearchRequest searchRequest) {
         // 确保is_first_enter_search为false，不包含client_ab_info
         searchRequest.setIsFirstEnterSearch(false);
 
@@ -298,144 +298,119 @@ public class FQSearchService {
     }
 
     /**
-     * 执行实际的搜索请求
+     * 执行实际的搜索请求（非阻塞）
      */
-    private FQNovelResponse<FQSearchResponse> performSearchInternal(FQSearchRequest searchRequest) {
+    private CompletableFuture<FQNovelResponse<FQSearchResponse>> performSearchInternal(FQSearchRequest searchRequest) {
+        String fullUrl;
+        Map<String, String> headers;
         try {
             FqVariable var = getDefaultFqVariable();
 
             // 构建搜索URL和参数
-            String url = fqApiUtils.getBaseUrl().replace("api5-normal-sinfonlineb", "api5-normal-sinfonlinec")
+            String url = fqApiUtils.getSearchBaseUrl()
                 + "/reading/bookapi/search/tab/v";
             Map<String, String> params = fqApiUtils.buildSearchParams(var, searchRequest);
-            String fullUrl = fqApiUtils.buildUrlWithParams(url, params);
+            fullUrl = fqApiUtils.buildUrlWithParams(url, params);
 
             // 构建请求头
-            Map<String, String> headers = buildSearchHeaders();
-
-            // 生成签名
-            Map<String, String> signedHeaders = fqEncryptServiceWorker.generateSignatureHeaders(fullUrl, headers).get();
-            if (signedHeaders == null || signedHeaders.isEmpty()) {
-                log.warn("签名生成失败，终止请求 - url: {}", fullUrl);
-                return FQNovelResponse.error("签名生成失败");
-            }
-
-            // 发起API请求
-            HttpHeaders httpHeaders = new HttpHeaders();
-            signedHeaders.forEach(httpHeaders::set);
-            headers.forEach(httpHeaders::set);
-
-            HttpEntity<String> entity = new HttpEntity<>(httpHeaders);
-            URI uri = URI.create(fullUrl);
-
-            upstreamRateLimiter.acquire();
-            ResponseEntity<byte[]> response = restTemplate.exchange(uri, HttpMethod.GET, entity, byte[].class);
-
-            // 解压缩 GZIP 响应体
-            String responseBody = decompressGzipResponse(response.getBody());
-
-            // 解析响应
-            JsonNode jsonResponse = objectMapper.readTree(responseBody);
+            headers = buildSearchHeaders();
+        } catch (Exception e) {
+            log.error("搜索请求失败 - query: {}", searchRequest.getQuery(), e);
+            return CompletableFuture.completedFuture(FQNovelResponse.error("搜索请求失败: " + e.getMessage()));
+        }
 
-            // 上游如果有 code/message，优先按其判断是否成功
-            if (jsonResponse.has("code")) {
-                int upstreamCode = jsonResponse.path("code").asInt(0);
-                if (upstreamCode != 0) {
-                    String upstreamMessage = jsonResponse.path("message").asText("upstream error");
-                    log.warn("上游搜索接口返回失败 - code: {}, message: {}", upstreamCode, upstreamMessage);
-                    return FQNovelResponse.error(upstreamCode, upstreamMessage);
+        // 预约上游时刻并在等待期间生成签名，到点发起异步请求；空响应、非JSON、gzip 异常与超时按默认策略重试
+        // 主机熔断时不再签名与排队，直接失败
+        return upstreamRetryPolicy.execute("search", () -> upstreamCircuitBreaker.execute(fullUrl, () ->
+            upstreamRequestPipeline.submitAsync(fullUrl, headers, signedHeaders -> {
+                HttpHeaders httpHeaders = new HttpHeaders();
+                signedHeaders.forEach(httpHeaders::set);
+                headers.forEach(httpHeaders::set);
+                return upstreamAsyncHttpClient.<JsonNode>get(URI.create(fullUrl), httpHeaders, objectMapper, treeType);
+            }).thenApply(response -> {
+                UpstreamRetryPolicy.requireJson(response);
+                return response;
+            }))).handle((response, error) -> {
+            if (error != null) {
+                Throwable e = UpstreamRequestPipeline.unwrap(error);
+                if (e instanceof UpstreamCircuitOpenException) {
+                    return FQNovelResponse.error(503, "搜索请求失败: " + e.getMessage());
                 }
-            }
-
-            int tabType = searchRequest.getTabType(); // 从请求获取需要的tab_type
-            FQSearchResponse searchResponse = parseSearchResponse(jsonResponse, tabType);
-
-            // 兜底：如果 parseSearchResponse 没取到 search_id，再做一次深度提取（含 root/data/log_pb 等）
-            if (searchResponse != null && isBlank(searchResponse.getSearchId())) {
-                String fromBody = deepFindSearchId(jsonResponse);
-                if (!isBlank(fromBody)) {
-                    searchResponse.setSearchId(fromBody);
+                if (e instanceof IllegalStateException) {
+                    log.warn("签名生成失败，终止请求 - url: {}", fullUrl);
+                    return FQNovelResponse.error("签名生成失败");
                 }
+                log.error("搜索请求失败 - query: {}", searchRequest.getQuery(), e);
+                return FQNovelResponse.error("搜索请求失败: " + e.getMessage());
             }
+            try {
+                return toSearchResponse(searchRequest, response);
+            } catch (Exception e) {
+                log.error("搜索请求失败 - query: {}", searchRequest.getQuery(), e);
+                return FQNovelResponse.error("搜索请求失败: " + e.getMessage());
+            }
+        });
+    }
 
-            // 兜底：部分情况下 search_id 可能在响应头里
-            if (searchResponse != null && isBlank(searchResponse.getSearchId())) {
-                String fromHeader = firstNonBlank(
-                    response.getHeaders().getFirst("search_id"),
-                    response.getHeaders().getFirst("search-id"),
-                    response.getHeaders().getFirst("x-search-id"),
-                    response.getHeaders().getFirst("x-fq-search-id")
-                );
-                if (!isBlank(fromHeader)) {
-                    searchResponse.setSearchId(fromHeader);
-                }
+    private FQNovelResponse<FQSearchResponse> toSearchResponse(FQSearchRequest searchRequest,
+                                                               UpstreamResponseDecoder.Decoded<JsonNode> response) throws Exception {
+        // 响应体已边解压边解析
+        JsonNode jsonResponse = readTree(response);
+
+        // 上游如果有 code/message，优先按其判断是否成功
+        if (jsonResponse.has("code")) {
+            int upstreamCode = jsonResponse.path("code").asInt(0);
+            if (upstreamCode != 0) {
+                String upstreamMessage = jsonResponse.path("message").asText("upstream error");
+                log.warn("上游搜索接口返回失败 - code: {}, message: {}", upstreamCode, upstreamMessage);
+                return FQNovelResponse.error(upstreamCode, upstreamMessage);
             }
+        }
 
-            if (Boolean.TRUE.equals(searchRequest.getIsFirstEnterSearch())
-                && (searchResponse == null || isBlank(searchResponse.getSearchId()))
-                && log.isDebugEnabled()) {
-                log.debug("第一阶段搜索未返回search_id，原始响应: {}", snippet(responseBody, 1200));
+        int tabType = searchRequest.getTabType(); // 从请求获取需要的tab_type
+        FQSearchResponse searchResponse = parseSearchResponse(jsonResponse, tabType);
+
+        // 兜底：如果 parseSearchResponse 没取到 search_id，再做一次深度提取（含 root/data/log_pb 等）
+        if (searchResponse != null && isBlank(searchResponse.getSearchId())) {
+            String fromBody = deepFindSearchId(jsonResponse);
+            if (!isBlank(fromBody)) {
+                searchResponse.setSearchId(fromBody);
             }
+        }
 
-            return FQNovelResponse.success(searchResponse);
+        // 兜底：部分情况下 search_id 可能在响应头里
+        if (searchResponse != null && isBlank(searchResponse.getSearchId())) {
+            String fromHeader = firstNonBlank(
+                response.getHeaders().getFirst("search_id"),
+                response.getHeaders().getFirst("search-id"),
+                response.getHeaders().getFirst("x-search-id"),
+                response.getHeaders().getFirst("x-fq-search-id")
+            );
+            if (!isBlank(fromHeader)) {
+                searchResponse.setSearchId(fromHeader);
+            }
+        }
 
-        } catch (Exception e) {
-            log.error("搜索请求失败 - query: {}", searchRequest.getQuery(), e);
-            return FQNovelResponse.error("搜索请求失败: " + e.getMessage());
+        if (Boolean.TRUE.equals(searchRequest.getIsFirstEnterSearch())
+            && (searchResponse == null || isBlank(searchResponse.getSearchId()))
+            && log.isDebugEnabled()) {
+            log.debug("第一阶段搜索未返回search_id，原始响应: {}", snippet(jsonResponse.toString(), 1200));
         }
+
+        return FQNovelResponse.success(searchResponse);
     }
 
     /**
-     * 搜索书籍
+     * 搜索书籍（单次请求，不做两阶段 search_id 交换）
+     * <p>
+     * 与 {@link #searchBooksEnhanced} 走同一条非阻塞路径：经熔断器与重试策略，预约上游时刻后异步发出，
+     * 主机熔断时直接返回 503。
      *
      * @param searchRequest 搜索请求参数
      * @return 搜索结果
      */
     public CompletableFuture<FQNovelResponse<FQSearchResponse>> searchBooks(FQSearchRequest searchRequest) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                FqVariable var = getDefaultFqVariable();
-
-                // 构建搜索URL和参数
-                String url = fqApiUtils.getBaseUrl().replace("api5-normal-sinfonlineb", "api5-normal-sinfonlinec")
-                    + "/reading/bookapi/search/tab/v";
-                Map<String, String> params = fqApiUtils.buildSearchParams(var, searchRequest);
-                String fullUrl = fqApiUtils.buildUrlWithParams(url, params);
-
-                // 构建请求头
-                Map<String, String> headers = buildSearchHeaders();
-
-                // 生成签名
-                Map<String, String> signedHeaders = fqEncryptServiceWorker.generateSignatureHeaders(fullUrl, headers).get();
-
-                // 发起API请求
-                HttpHeaders httpHeaders = new HttpHeaders();
-                signedHeaders.forEach(httpHeaders::set);
-                headers.forEach(httpHeaders::set);
-
-                HttpEntity<String> entity = new HttpEntity<>(httpHeaders);
-
-                URI uri = URI.create(fullUrl);
-
-                upstreamRateLimiter.acquire();
-                ResponseEntity<byte[]> response = restTemplate.exchange(uri, HttpMethod.GET, entity, byte[].class);
-
-                // 解压缩 GZIP 响应体
-                String responseBody = decompressGzipResponse(response.getBody());
-
-                // 解析响应
-                JsonNode jsonResponse = objectMapper.readTree(responseBody);
-
-                int tabType = searchRequest.getTabType(); // 从请求获取需要的tab_type
-                FQSearchResponse searchResponse = parseSearchResponse(jsonResponse,tabType);
-
-                return FQNovelResponse.success(searchResponse);
-
-            } catch (Exception e) {
-                log.error("搜索书籍失败 - query: {}", searchRequest.getQuery(), e);
-                return FQNovelResponse.error("搜索书籍失败: " + e.getMessage());
-            }
-        });
+        return performSearchInternal(searchRequest);
     }
 
     /**
@@ -445,77 +420,80 @@ public class FQSearchService {
      * @return 书籍目录
      */
     public CompletableFuture<FQNovelResponse<FQDirectoryResponse>> getBookDirectory(FQDirectoryRequest directoryRequest) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                FqVariable var = getDefaultFqVariable();
-
-                // 构建目录URL和参数
-                String url = fqApiUtils.getBaseUrl().replace("api5-normal-sinfonlineb", "api5-normal-sinfonlinec")
-                    + "/reading/bookapi/directory/all_items/v";
-                Map<String, String> params = fqApiUtils.buildDirectoryParams(var, directoryRequest);
-                String fullUrl = fqApiUtils.buildUrlWithParams(url, params);
+        String fullUrl;
+        Map<String, String> headers;
+        try {
+            FqVariable var = getDefaultFqVariable();
 
-                // 构建请求头
-                Map<String, String> headers = fqApiUtils.buildCommonHeaders();
+            // 构建目录URL和参数
+            String url = fqApiUtils.getSearchBaseUrl()
+                + "/reading/bookapi/directory/all_items/v";
+            Map<String, String> params = fqApiUtils.buildDirectoryParams(var, directoryRequest);
+            fullUrl = fqApiUtils.buildUrlWithParams(url, params);
 
-                // 生成签名
-                Map<String, String> signedHeaders = fqEncryptServiceWorker.generateSignatureHeaders(fullUrl, headers).get();
-                if (signedHeaders == null || signedHeaders.isEmpty()) {
-                    log.warn("签名生成失败，终止目录请求 - url: {}", fullUrl);
-                    return FQNovelResponse.error("签名生成失败");
-                }
+            // 构建请求头
+            headers = fqApiUtils.buildCommonHeaders();
+        } catch (Exception e) {
+            log.error("获取书籍目录失败 - bookId: {}", directoryRequest.getBookId(), e);
+            return CompletableFuture.completedFuture(FQNovelResponse.error("获取书籍目录失败: " + e.getMessage()));
+        }
 
-                // 发起API请求
+        // 预约上游时刻并在等待期间生成签名，到点发起异步请求（签名不再在限流等待中过期）
+        // 响应体边解压边直接解析为目录对象，不再先构造整棵 JsonNode
+        // 空响应、非JSON、gzip 异常与超时按默认策略重试
+        URI uri = fqApiUtils.toUri(fullUrl);
+        return upstreamRetryPolicy.execute("directory", () -> upstreamCircuitBreaker.execute(fullUrl, () ->
+            upstreamRequestPipeline.submitAsync(fullUrl, headers, signedHeaders -> {
                 HttpHeaders httpHeaders = new HttpHeaders();
                 signedHeaders.forEach(httpHeaders::set);
                 headers.forEach(httpHeaders::set);
-
-                HttpEntity<String> entity = new HttpEntity<>(httpHeaders);
-                upstreamRateLimiter.acquire();
-                ResponseEntity<byte[]> response = restTemplate.exchange(fullUrl, HttpMethod.GET, entity, byte[].class);
-
-                // 解压缩 GZIP 响应体
-                String responseBody = decompressGzipResponse(response.getBody());
-
-                JsonNode rootNode = objectMapper.readTree(responseBody);
-                if (rootNode.has("code")) {
-                    int upstreamCode = rootNode.path("code").asInt(0);
-                    if (upstreamCode != 0) {
-                        String upstreamMessage = rootNode.path("message").asText("upstream error");
-                        if (log.isDebugEnabled()) {
-                            log.debug("目录接口上游失败原始响应: {}", responseBody.length() > 800 ? responseBody.substring(0, 800) + "..." : responseBody);
-                        }
-                        return FQNovelResponse.error(upstreamCode, upstreamMessage);
-                    }
+                return upstreamAsyncHttpClient.<FqUpstreamResponse<FQDirectoryResponse>>get(uri, httpHeaders, objectMapper, directoryResponseType);
+            }).thenApply(UpstreamRetryPolicy::requireJson))).handle((root, error) -> {
+            if (error != null) {
+                Throwable e = UpstreamRequestPipeline.unwrap(error);
+                if (e instanceof UpstreamCircuitOpenException) {
+                    return FQNovelResponse.<FQDirectoryResponse>error(503, "获取书籍目录失败: " + e.getMessage());
                 }
-
-                JsonNode dataNode = rootNode.get("data");
-                if (dataNode == null || dataNode.isNull() || dataNode.isMissingNode()) {
-                    String upstreamMessage = rootNode.path("message").asText("upstream response missing data");
-                    if (log.isDebugEnabled()) {
-                        log.debug("目录接口上游缺少data原始响应: {}", responseBody.length() > 800 ? responseBody.substring(0, 800) + "..." : responseBody);
-                    }
-                    return FQNovelResponse.error("获取书籍目录失败: " + upstreamMessage);
+                if (e instanceof IllegalStateException) {
+                    log.warn("签名生成失败，终止目录请求 - url: {}", fullUrl);
+                    return FQNovelResponse.<FQDirectoryResponse>error("签名生成失败");
                 }
-
-                FQDirectoryResponse directoryResponse = objectMapper.treeToValue(dataNode, FQDirectoryResponse.class);
-                if (directoryResponse == null) {
-                    String upstreamMessage = rootNode.path("message").asText("upstream parse error");
-                    return FQNovelResponse.error("获取书籍目录失败: " + upstreamMessage);
+                UpstreamFailure failure = UpstreamFailure.classify(e);
+                if (failure == UpstreamFailure.EMPTY) {
+                    return FQNovelResponse.<FQDirectoryResponse>error("获取书籍目录失败: upstream response missing data");
+                }
+                if (failure == UpstreamFailure.NON_JSON || failure == UpstreamFailure.ILLEGAL_ACCESS) {
+                    return FQNovelResponse.<FQDirectoryResponse>error("获取书籍目录失败: 上游返回非JSON");
                 }
-
-                // 增强章节列表数据
-                enhanceChapterList(directoryResponse);
-
-                return FQNovelResponse.success(directoryResponse);
-
-            } catch (Exception e) {
                 log.error("获取书籍目录失败 - bookId: {}", directoryRequest.getBookId(), e);
-                return FQNovelResponse.error("获取书籍目录失败: " + e.getMessage());
+                return FQNovelResponse.<FQDirectoryResponse>error("获取书籍目录失败: " + e.getMessage());
             }
+            return toDirectoryResponse(root);
         });
     }
 
+    private FQNovelResponse<FQDirectoryResponse> toDirectoryResponse(FqUpstreamResponse<FQDirectoryResponse> root) {
+        if (root == null) {
+            return FQNovelResponse.error("获取书籍目录失败: upstream response missing data");
+        }
+        if (root.getCode() != 0) {
+            String upstreamMessage = root.getMessage() != null ? root.getMessage() : "upstream error";
+            log.debug("目录接口上游失败 - code: {}, message: {}", root.getCode(), upstreamMessage);
+            return FQNovelResponse.error((int) root.getCode(), upstreamMessage);
+        }
+
+        FQDirectoryResponse directoryResponse = root.getData();
+        if (directoryResponse == null) {
+            String upstreamMessage = root.getMessage() != null ? root.getMessage() : "upstream response missing data";
+            return FQNovelResponse.error("获取书籍目录失败: " + upstreamMessage);
+        }
+
+        // 增强章节列表数据
+        enhanceChapterList(directoryResponse);
+
+        return FQNovelResponse.success(directoryResponse);
+    }
+
     /**
      * 增强章节列表数据
      * 添加章节序号、格式化时间、最新章节标记等
@@ -566,33 +544,13 @@ public class FQSearchService {
     }
 
     /**
-     * 解压缩GZIP响应
+     * 非 JSON 响应（拦截页、空响应等）按原样交给 Jackson，保持原有的解析失败行为
      */
-    private String decompressGzipResponse(byte[] gzipData) throws Exception {
-        if (gzipData == null || gzipData.length == 0) {
-            return "";
-        }
-
-        // 有些情况下服务端会返回非 gzip（或客户端已自动解压），此时直接按 UTF-8 读取即可
-        boolean looksLikeGzip = gzipData.length >= 2
-            && (gzipData[0] == (byte) 0x1f)
-            && (gzipData[1] == (byte) 0x8b);
-        if (!looksLikeGzip) {
-            return new String(gzipData, StandardCharsets.UTF_8);
-        }
-
-        try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(gzipData))) {
-            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = gzipInputStream.read(buffer)) != -1) {
-                byteArrayOutputStream.write(buffer, 0, length);
-            }
-            return new String(byteArrayOutputStream.toByteArray(), StandardCharsets.UTF_8);
-        } catch (java.util.zip.ZipException e) {
-            // 兜底：不是 gzip（或已解压），直接按 UTF-8 返回
-            return new String(gzipData, StandardCharsets.UTF_8);
+    private JsonNode readTree(UpstreamResponseDecoder.Decoded<JsonNode> response) throws Exception {
+        if (response.isJson()) {
+            return response.getValue();
         }
+        return objectMapper.readTree(response.getText());
     }
 
     /**
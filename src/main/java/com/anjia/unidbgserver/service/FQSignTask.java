@@ -0,0 +1,47 @@
+package com.anjia.unidbgserver.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * 签名队列中的一个任务：单条请求，或批量请求中的一个连续块
+ */
+final class FQSignTask {
+
+    final List<String> urls;
+    final List<Function<FQEncryptService, Map<String, String>>> works;
+    final List<CompletableFuture<Map<String, String>>> futures;
+    final long enqueuedAtNanos = System.nanoTime();
+
+    FQSignTask(List<String> urls, List<Function<FQEncryptService, Map<String, String>>> works,
+               List<CompletableFuture<Map<String, String>>> futures) {
+        this.urls = urls;
+        this.works = works;
+        this.futures = futures;
+    }
+
+    boolean isDone() {
+        for (CompletableFuture<Map<String, String>> future : futures) {
+            if (!future.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 从第 from 条开始的剩余部分（共享同一组 future），用于执行中途更换签名实例
+     */
+    FQSignTask remainder(int from) {
+        return new FQSignTask(urls.subList(from, urls.size()), works.subList(from, works.size()),
+            futures.subList(from, futures.size()));
+    }
+
+    static void failAll(List<CompletableFuture<Map<String, String>>> futures, Throwable error) {
+        for (CompletableFuture<Map<String, String>> future : futures) {
+            future.completeExceptionally(error);
+        }
+    }
+}
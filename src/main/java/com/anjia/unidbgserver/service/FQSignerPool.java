@@ -0,0 +1,655 @@
+package com.anjia.unidbgserver.service;
+
+import com.anjia.unidbgserver.unidbg.EmulationBudgetExceededException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+
+/**
+ * 弹性签名池：在最小/最大数量之间管理 FQEncryptService 实例。
+ * <ul>
+ *   <li>扩容：借用等待超过阈值，或排队借用的线程数达到阈值时，在后台新建实例（不超过最大数量）</li>
+ *   <li>缩容：空闲超过 idleTimeout 的实例被回收，直到只剩最小数量</li>
+ * </ul>
+ * 空闲队列按 LIFO 使用：最近归还的实例优先被借出，冷实例沉到队尾等待回收。
+ * 实例在后台线程中创建，可通过 maxConcurrentBuilds 限制同时初始化的模拟器数量。
+ * <p>
+ * 回收重建（见 {@link #setRecyclePolicy}）：
+ * <ul>
+ *   <li>调用次数或模拟器内存增长超过阈值：实例继续服务，后台预热一个替换实例，就绪后换下旧实例，调用方无需等待重建</li>
+ *   <li>连续失败达到阈值：实例视为已损坏，归还时立即丢弃并在后台补建</li>
+ * </ul>
+ */
+@Slf4j
+public class FQSignerPool {
+
+    /**
+     * 每隔多少次调用检查一次模拟器内存（遍历内存映射有一定开销）
+     */
+    private static final int HEAP_CHECK_INTERVAL = 64;
+
+    private final Supplier<FQEncryptService> factory;
+    private final int minSize;
+    private final int maxSize;
+    private final long scaleUpWaitNanos;
+    private final int scaleUpQueueDepth;
+    private final long idleTimeoutMs;
+
+    // 回收重建阈值，0 表示不启用
+    private volatile long recycleMaxCalls;
+    private volatile long recycleMaxHeapGrowthBytes;
+    private volatile int recycleMaxFailures;
+
+    private final LinkedBlockingDeque<PooledSigner> idle = new LinkedBlockingDeque<>();
+    // 已创建 + 创建中的实例数
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicInteger creating = new AtomicInteger();
+    // 创建中的替换实例数（已占用 size 名额，就绪前不计入可用实例）
+    private final AtomicInteger replacing = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final ExecutorService builder;
+    private final ScheduledExecutorService evictor;
+    // 同时创建实例的并发上限，null 表示不限
+    private final Semaphore buildPermits;
+    private final CompletableFuture<Void> firstReady = new CompletableFuture<>();
+    private final IntConsumer readyListener;
+    private volatile boolean closed;
+
+    // 统计
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+    private final AtomicLong scaleUps = new AtomicLong();
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong borrowTimeouts = new AtomicLong();
+    private final AtomicLong waitTotalNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong recycledByCalls = new AtomicLong();
+    private final AtomicLong recycledByHeap = new AtomicLong();
+    private final AtomicLong recycledByFailures = new AtomicLong();
+    private final AtomicLong recycledByBudget = new AtomicLong();
+    private final AtomicLong replacementFailures = new AtomicLong();
+
+    public FQSignerPool(Supplier<FQEncryptService> factory, int minSize, int maxSize,
+                        long scaleUpWaitMs, int scaleUpQueueDepth, long idleTimeoutMs) {
+        this(factory, minSize, maxSize, scaleUpWaitMs, scaleUpQueueDepth, idleTimeoutMs, 0, null);
+    }
+
+    /**
+     * @param maxConcurrentBuilds 同时创建实例的并发上限；0 表示不限
+     * @param readyListener       每个新实例入池后以当前就绪实例数回调，可为 null
+     */
+    public FQSignerPool(Supplier<FQEncryptService> factory, int minSize, int maxSize,
+                        long scaleUpWaitMs, int scaleUpQueueDepth, long idleTimeoutMs,
+                        int maxConcurrentBuilds, IntConsumer readyListener) {
+        this.factory = factory;
+        this.maxSize = Math.max(1, maxSize);
+        this.minSize = Math.max(1, Math.min(minSize, this.maxSize));
+        this.scaleUpWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, scaleUpWaitMs));
+        this.scaleUpQueueDepth = Math.max(1, scaleUpQueueDepth);
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.builder = Executors.newCachedThreadPool(daemonThreads("fq-signer-builder"));
+        this.evictor = Executors.newSingleThreadScheduledExecutor(daemonThreads("fq-signer-evictor"));
+        this.buildPermits = maxConcurrentBuilds > 0 ? new Semaphore(maxConcurrentBuilds) : null;
+        this.readyListener = readyListener;
+
+        prewarm(this.minSize);
+        if (idleTimeoutMs > 0) {
+            long period = Math.max(1000L, idleTimeoutMs / 2);
+            evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+        }
+        log.info("FQ签名弹性池已创建 - 最小:{}, 最大:{}, 扩容等待阈值:{}ms, 扩容排队阈值:{}, 空闲回收:{}ms",
+            this.minSize, this.maxSize, scaleUpWaitMs, this.scaleUpQueueDepth, idleTimeoutMs);
+    }
+
+    /**
+     * 后台预热到指定实例数（不超过最大数量），实例的创建并发受 maxConcurrentBuilds 限制
+     *
+     * @return 本次新发起的创建数
+     */
+    public int prewarm(int count) {
+        int target = Math.min(count, maxSize);
+        int started = 0;
+        while (size.get() < target && trySpawn()) {
+            started++;
+        }
+        return started;
+    }
+
+    /**
+     * 等待第一个实例就绪
+     *
+     * @return 超时返回 false
+     */
+    public boolean awaitFirstReady(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            firstReady.get(timeout, unit);
+            return true;
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 已创建完成的实例数（空闲与借出中的实例），不含创建中的新实例与替换实例
+     */
+    public int getReadySize() {
+        return Math.max(0, size.get() - creating.get() - replacing.get());
+    }
+
+    /**
+     * 后台创建中的替换实例数
+     */
+    public int getReplacingSize() {
+        return replacing.get();
+    }
+
+    /**
+     * 设置回收重建阈值
+     *
+     * @param maxCalls           单个实例最多签名次数
+     * @param maxHeapGrowthBytes 模拟器映射内存相对创建时的最大增长
+     * @param maxFailures        最多连续失败次数
+     */
+    public void setRecyclePolicy(long maxCalls, long maxHeapGrowthBytes, int maxFailures) {
+        this.recycleMaxCalls = Math.max(0L, maxCalls);
+        this.recycleMaxHeapGrowthBytes = Math.max(0L, maxHeapGrowthBytes);
+        this.recycleMaxFailures = Math.max(0, maxFailures);
+    }
+
+    /**
+     * 借用一个签名实例
+     *
+     * @return 超时返回 null
+     */
+    public PooledSigner borrow(long timeout, TimeUnit unit) throws InterruptedException {
+        long start = System.nanoTime();
+        PooledSigner signer = idle.pollFirst();
+        if (signer == null) {
+            int depth = waiting.incrementAndGet();
+            try {
+                if (depth >= scaleUpQueueDepth || size.get() < minSize) {
+                    maybeScaleUp(0L);
+                }
+                long deadline = start + unit.toNanos(timeout);
+                while (signer == null && !closed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    signer = idle.pollFirst(Math.min(remaining, scaleUpWaitNanos), TimeUnit.NANOSECONDS);
+                    if (signer == null) {
+                        maybeScaleUp(System.nanoTime() - start);
+                    }
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+        }
+
+        long waited = System.nanoTime() - start;
+        if (signer == null) {
+            borrowTimeouts.incrementAndGet();
+            return null;
+        }
+        borrows.incrementAndGet();
+        waitTotalNanos.addAndGet(waited);
+        maxWaitNanos.accumulateAndGet(waited, Math::max);
+        return signer;
+    }
+
+    /**
+     * 归还签名实例
+     */
+    public void release(PooledSigner signer) {
+        if (signer == null) {
+            return;
+        }
+        signer.lastUsedAtMs = System.currentTimeMillis();
+        if (closed || signer.replaced) {
+            // 替换实例已就绪
+            discard(signer);
+            return;
+        }
+
+        if (signer.quarantined) {
+            recycledByBudget.incrementAndGet();
+            log.warn("FQ签名实例超出执行预算，隔离并重建 - 已签名:{}次", signer.calls);
+            discard(signer);
+            trySpawn();
+            return;
+        }
+
+        if (recycleMaxFailures > 0 && signer.consecutiveFailures >= recycleMaxFailures) {
+            recycledByFailures.incrementAndGet();
+            log.warn("FQ签名实例连续失败{}次，丢弃并重建 - 已签名:{}次", signer.consecutiveFailures, signer.calls);
+            discard(signer);
+            trySpawn();
+            return;
+        }
+
+        if (!signer.retiring) {
+            String reason = wearReason(signer);
+            if (reason != null) {
+                signer.retiring = true;
+                if (!scheduleReplacement(signer)) {
+                    // 池已满，无法先预热替换实例：先换下旧实例再补建
+                    log.info("FQ签名实例达到回收阈值({})，池已满，直接替换 - 已签名:{}次", reason, signer.calls);
+                    discard(signer);
+                    trySpawn();
+                    return;
+                }
+                log.info("FQ签名实例达到回收阈值({})，后台预热替换实例 - 已签名:{}次", reason, signer.calls);
+            }
+        }
+        idle.offerFirst(signer);
+    }
+
+    /**
+     * 长期持有实例的调用方（见 {@link FQPinnedSigningExecutor} 与 {@link FQSigningDispatcher}）在每次签名后调用：
+     * 实例已被替换、连续失败达到阈值或到达调用次数/内存检查点时返回 true，调用方应归还后重新借用，
+     * 由 {@link #release} 完成回收判断。
+     */
+    public boolean shouldRelease(PooledSigner signer) {
+        if (signer.replaced || signer.quarantined || closed) {
+            return true;
+        }
+        if (recycleMaxFailures > 0 && signer.consecutiveFailures >= recycleMaxFailures) {
+            return true;
+        }
+        if (signer.retiring) {
+            return false;
+        }
+        return (recycleMaxCalls > 0 && signer.calls >= recycleMaxCalls)
+            || (recycleMaxHeapGrowthBytes > 0 && signer.heapCheckDue());
+    }
+
+    /**
+     * 判断实例是否因调用次数或内存增长需要替换
+     */
+    private String wearReason(PooledSigner signer) {
+        if (recycleMaxCalls > 0 && signer.calls >= recycleMaxCalls) {
+            recycledByCalls.incrementAndGet();
+            return "calls";
+        }
+        if (recycleMaxHeapGrowthBytes > 0 && signer.heapCheckDue()) {
+            signer.lastHeapCheckCalls = signer.calls;
+            try {
+                long mapped = signer.service.getMappedBytes();
+                signer.mappedBytes = mapped;
+                if (mapped - signer.baselineBytes >= recycleMaxHeapGrowthBytes) {
+                    recycledByHeap.incrementAndGet();
+                    return "heap";
+                }
+            } catch (Exception e) {
+                log.debug("读取模拟器内存占用失败: {}", e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 后台创建替换实例，就绪后放入空闲队列并换下旧实例（旧实例借出中时在归还时丢弃）。
+     * 替换实例与旧实例会短暂共存，因此先在 maxSize 内预留名额。
+     *
+     * @return 池已满或已关闭、无法预留名额时返回 false
+     */
+    private boolean scheduleReplacement(PooledSigner old) {
+        if (!reserveSlot()) {
+            return false;
+        }
+        replacing.incrementAndGet();
+        try {
+            builder.execute(() -> {
+                PooledSigner replacement;
+                try {
+                    replacement = new PooledSigner(build());
+                } catch (Throwable t) {
+                    replacing.decrementAndGet();
+                    size.decrementAndGet();
+                    replacementFailures.incrementAndGet();
+                    old.retiring = false;
+                    log.error("FQ签名池创建替换实例失败，旧实例继续服务", t);
+                    return;
+                }
+                created.incrementAndGet();
+                if (closed) {
+                    replacing.decrementAndGet();
+                    discard(replacement);
+                    return;
+                }
+                old.replaced = true;
+                idle.offerFirst(replacement);
+                replacing.decrementAndGet();
+                if (idle.removeFirstOccurrence(old)) {
+                    discard(old);
+                }
+            });
+        } catch (RuntimeException e) {
+            replacing.decrementAndGet();
+            size.decrementAndGet();
+            old.retiring = false;
+        }
+        return true;
+    }
+
+    /**
+     * 在并发上限内创建实例
+     */
+    private FQEncryptService build() throws InterruptedException {
+        if (buildPermits == null) {
+            return factory.get();
+        }
+        buildPermits.acquire();
+        try {
+            return factory.get();
+        } finally {
+            buildPermits.release();
+        }
+    }
+
+    private void notifyReady() {
+        firstReady.complete(null);
+        if (readyListener != null) {
+            try {
+                readyListener.accept(getReadySize());
+            } catch (RuntimeException e) {
+                log.debug("签名池就绪回调失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void maybeScaleUp(long waitedNanos) {
+        int depth = waiting.get();
+        boolean pressured = depth >= scaleUpQueueDepth || waitedNanos >= scaleUpWaitNanos || size.get() < minSize;
+        // 已在创建的实例足以覆盖排队者时不再追加
+        if (!pressured || creating.get() >= depth) {
+            return;
+        }
+        if (trySpawn()) {
+            scaleUps.incrementAndGet();
+            log.info("FQ签名池扩容 - 当前:{}, 排队:{}, 已等待:{}ms", size.get(), depth,
+                TimeUnit.NANOSECONDS.toMillis(waitedNanos));
+        }
+    }
+
+    /**
+     * 在 maxSize 内为新实例预留名额
+     */
+    private boolean reserveSlot() {
+        while (true) {
+            int current = size.get();
+            if (closed || current >= maxSize) {
+                return false;
+            }
+            if (size.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private boolean trySpawn() {
+        if (!reserveSlot()) {
+            return false;
+        }
+        creating.incrementAndGet();
+        try {
+            builder.execute(() -> {
+                boolean ready = false;
+                try {
+                    FQEncryptService service = build();
+                    created.incrementAndGet();
+                    PooledSigner signer = new PooledSigner(service);
+                    if (closed) {
+                        discard(signer);
+                    } else {
+                        idle.offerFirst(signer);
+                        ready = true;
+                    }
+                } catch (Throwable t) {
+                    size.decrementAndGet();
+                    log.error("FQ签名池创建实例失败", t);
+                } finally {
+                    creating.decrementAndGet();
+                }
+                if (ready) {
+                    notifyReady();
+                }
+            });
+        } catch (RuntimeException e) {
+            creating.decrementAndGet();
+            size.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 回收空闲超时的实例（保留最小数量），并补齐不足最小数量的部分
+     */
+    private void evictIdle() {
+        try {
+            long now = System.currentTimeMillis();
+            while (size.get() > minSize) {
+                PooledSigner eldest = idle.peekLast();
+                if (eldest == null || now - eldest.lastUsedAtMs < idleTimeoutMs) {
+                    break;
+                }
+                if (!idle.removeLastOccurrence(eldest)) {
+                    continue;
+                }
+                evicted.incrementAndGet();
+                discard(eldest);
+                log.info("FQ签名池回收空闲实例 - 空闲:{}ms, 剩余:{}", now - eldest.lastUsedAtMs, size.get());
+            }
+            while (size.get() < minSize && trySpawn()) {
+                // 补齐最小数量
+            }
+        } catch (Exception e) {
+            log.warn("FQ签名池空闲回收失败", e);
+        }
+    }
+
+    private void discard(PooledSigner signer) {
+        size.decrementAndGet();
+        try {
+            signer.service.destroyEmulator();
+        } catch (Exception e) {
+            log.warn("释放签名实例失败", e);
+        }
+    }
+
+    /**
+     * 关闭池：停止扩缩容并释放空闲实例，借出中的实例在归还时释放
+     */
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        builder.shutdown();
+        PooledSigner signer;
+        while ((signer = idle.pollFirst()) != null) {
+            discard(signer);
+        }
+    }
+
+    /**
+     * 池统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long borrowCount = borrows.get();
+        stats.put("minSize", minSize);
+        stats.put("maxSize", maxSize);
+        stats.put("size", size.get());
+        stats.put("idle", idle.size());
+        stats.put("ready", getReadySize());
+        stats.put("creating", creating.get());
+        stats.put("replacing", replacing.get());
+        stats.put("waiting", waiting.get());
+        stats.put("created", created.get());
+        stats.put("evicted", evicted.get());
+        stats.put("scaleUps", scaleUps.get());
+        stats.put("borrows", borrowCount);
+        stats.put("borrowTimeouts", borrowTimeouts.get());
+        stats.put("avgWaitMs", borrowCount > 0 ? TimeUnit.NANOSECONDS.toMillis(waitTotalNanos.get() / borrowCount) : 0L);
+        stats.put("maxWaitMs", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()));
+        stats.put("recycledByCalls", recycledByCalls.get());
+        stats.put("recycledByHeap", recycledByHeap.get());
+        stats.put("recycledByFailures", recycledByFailures.get());
+        stats.put("recycledByBudget", recycledByBudget.get());
+        stats.put("replacementFailures", replacementFailures.get());
+        long maxMapped = 0;
+        for (PooledSigner signer : idle) {
+            maxMapped = Math.max(maxMapped, signer.mappedBytes);
+        }
+        stats.put("maxIdleMappedBytes", maxMapped);
+        return stats;
+    }
+
+    /**
+     * 汇总空闲实例的模拟器内存占用，并估算只读/可执行页若能共享时的总占用，便于按 CPU 而非内存规划池大小
+     */
+    public Map<String, Object> getMemoryStats() {
+        int sampled = 0;
+        long total = 0;
+        long writable = 0;
+        long shareable = 0;
+        for (PooledSigner signer : idle) {
+            Map<String, Long> breakdown = signer.service.getMemoryBreakdown();
+            sampled++;
+            total += breakdown.get("totalBytes");
+            writable += breakdown.get("writableBytes");
+            shareable += breakdown.get("executableBytes") + breakdown.get("readOnlyBytes");
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        int instances = size.get();
+        result.put("sampledInstances", sampled);
+        if (sampled == 0) {
+            return result;
+        }
+        long avgTotal = total / sampled;
+        long avgWritable = writable / sampled;
+        long avgShareable = shareable / sampled;
+        result.put("avgInstanceBytes", avgTotal);
+        result.put("avgWritableBytes", avgWritable);
+        result.put("avgShareableBytes", avgShareable);
+        result.put("estimatedPoolBytes", avgTotal * instances);
+        // 只读/可执行页只保留一份时的估算值
+        result.put("estimatedPoolBytesIfShared", avgWritable * instances + avgShareable);
+        return result;
+    }
+
+    /**
+     * 汇总空闲实例的 JNI 回调统计（借出中的实例不参与，避免与签名线程并发读取）
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getJniCallbackStats() {
+        long signatures = 0;
+        double callbacks = 0;
+        Map<String, Long> counts = new TreeMap<>();
+        for (PooledSigner signer : idle) {
+            Map<String, Object> stats = signer.service.getJniCallbackStats();
+            long calls = ((Number) stats.get("signatures")).longValue();
+            signatures += calls;
+            callbacks += ((Number) stats.get("avgCallbacksPerSignature")).doubleValue() * calls;
+            for (Map.Entry<String, Long> entry : ((Map<String, Long>) stats.get("callbacks")).entrySet()) {
+                counts.merge(entry.getKey(), entry.getValue(), Long::sum);
+            }
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("signatures", signatures);
+        result.put("avgCallbacksPerSignature", signatures > 0 ? callbacks / signatures : 0D);
+        result.put("callbacks", counts);
+        return result;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 池中的签名实例
+     */
+    public static final class PooledSigner {
+        private final FQEncryptService service;
+        private final long createdAtMs = System.currentTimeMillis();
+        private volatile long lastUsedAtMs = createdAtMs;
+
+        // 同一时刻只有借用者访问，volatile 保证在借还线程之间可见
+        private volatile long calls;
+        private volatile int consecutiveFailures;
+        private final long baselineBytes;
+        private volatile long mappedBytes;
+        // 上次检查内存时的调用次数；批量签名一次借用记录多次调用，不能按整除判断
+        private volatile long lastHeapCheckCalls;
+        private volatile boolean retiring;
+        private volatile boolean replaced;
+        private volatile boolean quarantined;
+
+        PooledSigner(FQEncryptService service) {
+            this.service = service;
+            long mapped = 0;
+            try {
+                mapped = service.getMappedBytes();
+            } catch (Exception e) {
+                log.debug("读取模拟器内存占用失败: {}", e.getMessage());
+            }
+            this.baselineBytes = mapped;
+            this.mappedBytes = mapped;
+        }
+
+        /**
+         * 记录一次签名结果（由借用者在归还前调用）
+         */
+        public void recordCall(boolean success) {
+            calls++;
+            consecutiveFailures = success ? 0 : consecutiveFailures + 1;
+        }
+
+        /**
+         * 记录一次失败的签名；超出执行预算的实例被隔离，归还时直接丢弃并重建
+         */
+        public void recordFailure(Throwable error) {
+            recordCall(false);
+            if (error instanceof EmulationBudgetExceededException) {
+                quarantined = true;
+            }
+        }
+
+        private boolean heapCheckDue() {
+            return calls - lastHeapCheckCalls >= HEAP_CHECK_INTERVAL;
+        }
+
+        public boolean isQuarantined() {
+            return quarantined;
+        }
+
+        public FQEncryptService getService() {
+            return service;
+        }
+
+        public long getCreatedAtMs() {
+            return createdAtMs;
+        }
+    }
+}
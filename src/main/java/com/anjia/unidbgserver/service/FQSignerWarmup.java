@@ -0,0 +1,125 @@
+package com.anjia.unidbgserver.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 签名池启动编排：按并发上限并行创建模拟器，第一个实例就绪即可对外服务，其余实例在后台继续预热。
+ * 记录首个/全部实例就绪耗时，供就绪检查接口使用。
+ */
+@Slf4j
+final class FQSignerWarmup {
+
+    private final long startNanos = System.nanoTime();
+    private final int parallelism;
+    private volatile int totalWorkers;
+    private volatile FQSignerPool pool;
+    private volatile long firstReadyMs = -1;
+    private volatile long allReadyMs = -1;
+
+    FQSignerWarmup(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * 并行执行一组创建任务（并发不超过上限），按输入顺序返回结果；失败的任务对应 null
+     */
+    <T> List<T> buildAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (tasks.isEmpty()) {
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()), runnable -> {
+            Thread thread = new Thread(runnable, "fq-signer-warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<T>> futures = new ArrayList<>(tasks.size());
+            for (Callable<T> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<T> future : futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    log.warn("FQ签名实例预热失败: {}", e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                    results.add(null);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * 接管签名池并预热到目标实例数，阻塞直到第一个实例就绪或超时
+     */
+    void start(FQSignerPool pool, int totalWorkers, long firstWorkerTimeoutMs) {
+        this.pool = pool;
+        this.totalWorkers = Math.max(1, totalWorkers);
+        pool.prewarm(this.totalWorkers);
+        onReady(pool.getReadySize());
+        try {
+            if (!pool.awaitFirstReady(Math.max(1L, firstWorkerTimeoutMs), TimeUnit.MILLISECONDS)) {
+                log.error("等待首个FQ签名实例就绪超时({}ms)，继续启动，签名请求将排队等待", firstWorkerTimeoutMs);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 签名池的就绪回调
+     */
+    void onReady(int readyWorkers) {
+        if (readyWorkers <= 0) {
+            return;
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        if (firstReadyMs < 0) {
+            firstReadyMs = elapsed;
+            log.info("首个FQ签名实例已就绪，耗时:{}ms，开始对外服务", elapsed);
+        }
+        if (allReadyMs < 0 && totalWorkers > 0 && readyWorkers >= totalWorkers) {
+            allReadyMs = elapsed;
+            log.info("FQ签名实例预热完成 - 实例数:{}, 耗时:{}ms, 并发:{}", readyWorkers, elapsed, parallelism);
+        }
+    }
+
+    boolean isReady() {
+        FQSignerPool current = pool;
+        return current != null && current.getReadySize() > 0;
+    }
+
+    Map<String, Object> getStatus() {
+        FQSignerPool current = pool;
+        int warm = current != null ? current.getReadySize() : 0;
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("status", warm <= 0 ? "WARMING" : (warm >= totalWorkers ? "WARM" : "READY"));
+        status.put("warmWorkers", warm);
+        status.put("replacingWorkers", current != null ? current.getReplacingSize() : 0);
+        status.put("totalWorkers", totalWorkers);
+        status.put("parallelism", parallelism);
+        status.put("timeToFirstWorkerMs", firstReadyMs);
+        status.put("timeToAllWorkersMs", allReadyMs);
+        return status;
+    }
+}
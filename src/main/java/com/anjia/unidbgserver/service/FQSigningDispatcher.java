@@ -0,0 +1,270 @@
+package com.anjia.unidbgserver.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 签名请求调度器：请求进入有界队列，由固定数量的签名车道线程取出执行。
+ * <ul>
+ *   <li>车道线程从 {@link FQSignerPool} 借用模拟器，队列非空时连续处理，队列清空后才归还；
+ *       连续处理期间每个任务后按 {@link FQSignerPool#shouldRelease} 判断是否需要换实例</li>
+ *   <li>队列已满时立即以 {@link RejectedExecutionException} 失败，不阻塞调用方</li>
+ *   <li>超过等待时限（排队 + 执行）的请求以 {@link TimeoutException} 失败，尚未开始的请求不再执行</li>
+ * </ul>
+ * 批量请求按块入队，每块占用一个队列位置，在同一个模拟器上连续签名，逐条完成各自的 future。
+ * <p>
+ * 返回的 future 在车道线程上完成，后续较重的处理请使用 *Async 组合方法，避免占用签名车道。
+ */
+@Slf4j
+public class FQSigningDispatcher implements FQSigningExecutor {
+
+    /**
+     * 批量请求每块的最少条数，条数较少时不拆分到多个车道
+     */
+    private static final int MIN_BATCH_CHUNK = 16;
+
+    private final FQSignerPool signerPool;
+    private final BlockingQueue<FQSignTask> queue;
+    private final int capacity;
+    private final long timeoutMs;
+    private final Thread[] lanes;
+    private final ScheduledExecutorService timer;
+    private volatile boolean closed;
+
+    // 统计
+    private final AtomicInteger busyLanes = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong enqueuePositionTotal = new AtomicLong();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong queueWaitTotalNanos = new AtomicLong();
+    private final AtomicLong signTotalNanos = new AtomicLong();
+
+    public FQSigningDispatcher(FQSignerPool signerPool, int laneCount, int capacity, long timeoutMs) {
+        this.signerPool = signerPool;
+        this.capacity = Math.max(1, capacity);
+        this.timeoutMs = timeoutMs;
+        this.queue = new ArrayBlockingQueue<>(this.capacity);
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fq-sign-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lanes = new Thread[Math.max(1, laneCount)];
+        for (int i = 0; i < lanes.length; i++) {
+            Thread lane = new Thread(this::runLane, "fq-sign-lane-" + (i + 1));
+            lane.setDaemon(true);
+            lanes[i] = lane;
+            lane.start();
+        }
+        log.info("FQ签名调度器已启动 - 车道:{}, 队列容量:{}, 超时:{}ms", lanes.length, this.capacity, timeoutMs);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> submit(String url, Function<FQEncryptService, Map<String, String>> work) {
+        return enqueue(Collections.singletonList(url), Collections.singletonList(work)).get(0);
+    }
+
+    /**
+     * 批量提交签名请求：按车道数切成若干连续块，每块在一个模拟器上连续签名
+     */
+    @Override
+    public List<CompletableFuture<Map<String, String>>> submitBatch(List<String> urls,
+                                                                   List<Function<FQEncryptService, Map<String, String>>> works) {
+        int total = works.size();
+        int chunks = Math.max(1, Math.min(lanes.length, (total + MIN_BATCH_CHUNK - 1) / MIN_BATCH_CHUNK));
+        int chunkSize = (total + chunks - 1) / Math.max(1, chunks);
+        List<CompletableFuture<Map<String, String>>> futures = new ArrayList<>(total);
+        for (int from = 0; from < total; from += chunkSize) {
+            int to = Math.min(total, from + chunkSize);
+            futures.addAll(enqueue(urls.subList(from, to), works.subList(from, to)));
+        }
+        return futures;
+    }
+
+    private List<CompletableFuture<Map<String, String>>> enqueue(List<String> urls,
+                                                                 List<Function<FQEncryptService, Map<String, String>>> works) {
+        List<CompletableFuture<Map<String, String>>> futures = new ArrayList<>(works.size());
+        for (int i = 0; i < works.size(); i++) {
+            futures.add(new CompletableFuture<>());
+        }
+        if (closed) {
+            FQSignTask.failAll(futures, new RejectedExecutionException("FQ签名调度器已关闭"));
+            return futures;
+        }
+
+        FQSignTask task = new FQSignTask(urls, works, futures);
+        if (!queue.offer(task)) {
+            rejected.addAndGet(works.size());
+            log.warn("FQ签名队列已满，拒绝请求 - 队列:{}/{}, 繁忙车道:{}, 条数:{}", queue.size(), capacity, busyLanes.get(), works.size());
+            FQSignTask.failAll(futures, new RejectedExecutionException("FQ签名队列已满(" + capacity + ")，请稍后重试"));
+            return futures;
+        }
+
+        int position = queue.size();
+        submitted.addAndGet(works.size());
+        enqueuePositionTotal.addAndGet((long) position * works.size());
+        maxQueueDepth.accumulateAndGet(position, Math::max);
+
+        if (timeoutMs > 0) {
+            ScheduledFuture<?> timeout = timer.schedule(() -> {
+                // 尚未开始执行的请求直接移出队列，腾出容量
+                queue.remove(task);
+                TimeoutException error = new TimeoutException("FQ签名超时(" + timeoutMs + "ms) - 入队位置:" + position);
+                for (CompletableFuture<Map<String, String>> future : futures) {
+                    if (future.completeExceptionally(error)) {
+                        timedOut.incrementAndGet();
+                    }
+                }
+            }, timeoutMs, TimeUnit.MILLISECONDS);
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .whenComplete((result, error) -> timeout.cancel(false));
+        }
+        return futures;
+    }
+
+    private void runLane() {
+        while (!closed) {
+            FQSignTask task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            FQSignerPool.PooledSigner signer = null;
+            try {
+                while (signer == null && !closed && !task.isDone()) {
+                    signer = signerPool.borrow(2, TimeUnit.SECONDS);
+                }
+                if (signer == null) {
+                    continue;
+                }
+                busyLanes.incrementAndGet();
+                try {
+                    // 持有模拟器连续处理排队的请求，减少借还开销
+                    while (task != null) {
+                        FQSignTask rest = execute(task, signer);
+                        task = rest != null ? rest : (closed ? null : queue.poll());
+                        if (task != null && signerPool.shouldRelease(signer)) {
+                            // 实例被隔离、已被替换、连续失败或到达回收检查点：归还由签名池做回收判断，再借一个继续处理
+                            signerPool.release(signer);
+                            signer = null;
+                            while (signer == null && !closed && !task.isDone()) {
+                                signer = signerPool.borrow(2, TimeUnit.SECONDS);
+                            }
+                            if (signer == null) {
+                                FQSignTask.failAll(task.futures, new RejectedExecutionException("FQ签名调度器已关闭"));
+                                task = null;
+                            }
+                        }
+                    }
+                } finally {
+                    busyLanes.decrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                signerPool.release(signer);
+            }
+        }
+    }
+
+    /**
+     * 在给定实例上依次执行任务中的请求
+     *
+     * @return 实例在执行中被隔离时返回尚未执行的剩余部分，否则返回 null
+     */
+    private FQSignTask execute(FQSignTask task, FQSignerPool.PooledSigner signer) {
+        FQEncryptService service = signer.getService();
+        for (int i = 0; i < task.works.size(); i++) {
+            CompletableFuture<Map<String, String>> future = task.futures.get(i);
+            if (future.isDone()) {
+                // 已超时或已被调用方取消
+                continue;
+            }
+            long start = System.nanoTime();
+            queueWaitTotalNanos.addAndGet(start - task.enqueuedAtNanos);
+            try {
+                Map<String, String> result = task.works.get(i).apply(service);
+                signer.recordCall(result != null && !result.isEmpty());
+                future.complete(result);
+                completed.incrementAndGet();
+            } catch (Throwable t) {
+                signer.recordFailure(t);
+                failed.incrementAndGet();
+                log.warn("FQ签名执行失败 - URL: {}, 错误: {}", task.urls.get(i), t.getMessage());
+                future.completeExceptionally(t);
+            } finally {
+                signTotalNanos.addAndGet(System.nanoTime() - start);
+            }
+            if (signer.isQuarantined()) {
+                return i + 1 < task.works.size() ? task.remainder(i + 1) : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 关闭调度器：停止车道线程，尚未执行的请求以拒绝失败
+     */
+    @Override
+    public void close() {
+        closed = true;
+        timer.shutdownNow();
+        for (Thread lane : lanes) {
+            lane.interrupt();
+        }
+        FQSignTask task;
+        while ((task = queue.poll()) != null) {
+            FQSignTask.failAll(task.futures, new RejectedExecutionException("FQ签名调度器已关闭"));
+        }
+    }
+
+    /**
+     * 调度器统计信息
+     */
+    @Override
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long submittedCount = submitted.get();
+        long started = completed.get() + failed.get();
+        stats.put("mode", "shared");
+        stats.put("lanes", lanes.length);
+        stats.put("busyLanes", busyLanes.get());
+        stats.put("queueCapacity", capacity);
+        stats.put("queueDepth", queue.size());
+        stats.put("maxQueueDepth", maxQueueDepth.get());
+        stats.put("avgEnqueuePosition", submittedCount > 0 ? (double) enqueuePositionTotal.get() / submittedCount : 0D);
+        stats.put("submitted", submittedCount);
+        stats.put("completed", completed.get());
+        stats.put("failed", failed.get());
+        stats.put("rejected", rejected.get());
+        stats.put("timedOut", timedOut.get());
+        stats.put("avgQueueWaitMs", started > 0 ? TimeUnit.NANOSECONDS.toMillis(queueWaitTotalNanos.get() / started) : 0L);
+        stats.put("avgSignMs", started > 0 ? TimeUnit.NANOSECONDS.toMillis(signTotalNanos.get() / started) : 0L);
+        return stats;
+    }
+}
@@ -0,0 +1,42 @@
+package com.anjia.unidbgserver.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * 签名执行器：把签名操作调度到签名实例上执行，调用方拿到 future。
+ *
+ * @see FQSigningDispatcher
+ * @see FQPinnedSigningExecutor
+ */
+public interface FQSigningExecutor {
+
+    /**
+     * 提交签名请求
+     *
+     * @param url  请求的URL（仅用于日志）
+     * @param work 在签名实例上执行的签名操作
+     * @return 签名完成时完成的 future；队列已满时返回已失败的 future
+     */
+    CompletableFuture<Map<String, String>> submit(String url, Function<FQEncryptService, Map<String, String>> work);
+
+    /**
+     * 批量提交签名请求，按块在少数几个签名实例上连续签名
+     *
+     * @return 与输入顺序一致的 future 列表，每条签名完成即完成
+     */
+    List<CompletableFuture<Map<String, String>>> submitBatch(List<String> urls,
+                                                            List<Function<FQEncryptService, Map<String, String>>> works);
+
+    /**
+     * 关闭执行器，尚未执行的请求以拒绝失败
+     */
+    void close();
+
+    /**
+     * 执行器统计信息
+     */
+    Map<String, Object> getStats();
+}
@@ -0,0 +1,381 @@
+package com.anjia.unidbgserver.service;
+
+import com.anjia.unidbgserver.config.FQApiProperties;
+import com.anjia.unidbgserver.config.FQHttpProperties;
+import com.anjia.unidbgserver.utils.UpstreamResponseDecoder;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.nio.reactor.IOSession;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.ssl.SSLContexts;
+import org.apache.http.util.EntityUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.UnknownHttpStatusCodeException;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 非阻塞的上游 HTTP 客户端：基于 NIO 反应器，少量 I/O 线程承载全部在途请求，
+ * 请求结果以 CompletableFuture 返回，等待期间不占用任何线程。
+ * <p>
+ * 连接池、keep-alive 与超时沿用 fq.http 配置；状态码 4xx/5xx 以与 RestTemplate 相同的异常类型结束，
+ * 连接失败与总超时以 ResourceAccessException 结束。响应体由固定大小的解码线程池交给
+ * {@link UpstreamResponseDecoder} 解析，不在 I/O 线程上做 JSON 解析。
+ * <p>
+ * 响应体不是边收边解：默认的响应消费者先把完整的响应体（gzip 时为压缩后的字节）读入堆内缓冲，
+ * 响应完成后解码线程才从该缓冲流式解压并解析。因此单个在途请求的内存峰值包含整个原始响应体，
+ * 解码省下的是解压结果与字符串的整体拷贝，而不是原始响应体的缓冲。
+ */
+@Slf4j
+@Component
+public class UpstreamAsyncHttpClient {
+
+    private final FQHttpProperties properties;
+    private final PoolingNHttpClientConnectionManager connectionManager;
+    private final CloseableHttpAsyncClient httpClient;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "fq-http-async-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService decodeExecutor = Executors.newFixedThreadPool(
+        Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "fq-upstream-decode-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+    @Resource
+    private FQApiProperties fqApiProperties;
+
+    // 统计
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong tlsHandshakes = new AtomicLong();
+    private final AtomicLong preconnected = new AtomicLong();
+
+    public UpstreamAsyncHttpClient(FQHttpProperties properties) throws IOReactorException {
+        this.properties = properties;
+        int ioThreads = properties.getAsyncIoThreads() > 0 ? properties.getAsyncIoThreads() : Runtime.getRuntime().availableProcessors();
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+            .setIoThreadCount(ioThreads)
+            .setConnectTimeout(properties.getConnectTimeoutMs())
+            .setSoTimeout(properties.getReadTimeoutMs())
+            .setSoKeepAlive(true)
+            .build();
+        Registry<SchemeIOSessionStrategy> registry = RegistryBuilder.<SchemeIOSessionStrategy>create()
+            .register("http", NoopIOSessionStrategy.INSTANCE)
+            .register("https", new CountingSslStrategy())
+            .build();
+        this.connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig), registry);
+        connectionManager.setMaxTotal(Math.max(1, properties.getMaxTotal()));
+        connectionManager.setDefaultMaxPerRoute(Math.max(1, properties.getMaxPerRoute()));
+
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout(properties.getConnectTimeoutMs())
+            .setSocketTimeout(properties.getReadTimeoutMs())
+            .setConnectionRequestTimeout(properties.getPoolWaitTimeoutMs())
+            .build();
+        this.httpClient = HttpAsyncClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .setKeepAliveStrategy(keepAliveStrategy(properties.getKeepAliveMs()))
+            .build();
+        httpClient.start();
+
+        // 异步连接池没有内置的空闲回收线程，按保活时间定期清理
+        long evictMs = Math.max(1000L, properties.getKeepAliveMs() / 2);
+        timer.scheduleWithFixedDelay(() -> {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(properties.getKeepAliveMs(), TimeUnit.MILLISECONDS);
+        }, evictMs, evictMs, TimeUnit.MILLISECONDS);
+        log.info("上游异步HTTP客户端 - I/O线程:{}, 最大连接:{}, 单主机:{}", ioThreads, properties.getMaxTotal(), properties.getMaxPerRoute());
+    }
+
+    /**
+     * 启动时向上游主机预建连接（含 TLS 握手），完成后留在连接池中供后续请求复用
+     */
+    @PostConstruct
+    public void init() {
+        if (!properties.isPreconnect()) {
+            return;
+        }
+        List<String> urls = preconnectUrls();
+        int count = Math.max(1, properties.getPreconnectConnections());
+        for (String url : urls) {
+            for (int i = 0; i < count; i++) {
+                send(new HttpHead(URI.create(url)), (response, headers) -> {
+                    EntityUtils.consume(response.getEntity());
+                    return Boolean.TRUE;
+                }).whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        log.warn("上游异步连接预建失败 - {}: {}", url, error.getMessage());
+                    } else {
+                        preconnected.incrementAndGet();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 预建连接的地址：配置为空时取 fq.api.base-url 及其 sinfonlinec 主机
+     */
+    List<String> preconnectUrls() {
+        if (!properties.getPreconnectUrls().isEmpty()) {
+            return properties.getPreconnectUrls();
+        }
+        Set<String> urls = new LinkedHashSet<>();
+        String baseUrl = fqApiProperties != null ? fqApiProperties.getBaseUrl() : null;
+        if (baseUrl != null && !baseUrl.trim().isEmpty()) {
+            urls.add(baseUrl.trim());
+            // 搜索与目录接口走 sinfonlinec 主机
+            urls.add(baseUrl.trim().replace("api5-normal-sinfonlineb", "api5-normal-sinfonlinec"));
+        }
+        return new ArrayList<>(urls);
+    }
+
+    /**
+     * 发出 GET 请求并解析响应
+     */
+    public <T> CompletableFuture<UpstreamResponseDecoder.Decoded<T>> get(URI uri, HttpHeaders headers, ObjectMapper mapper, JavaType type) {
+        return execute(HttpMethod.GET, uri, headers, null, mapper, type);
+    }
+
+    /**
+     * 发出请求并解析响应。响应体完整缓冲后才开始解码（见类注释）
+     *
+     * @param body 请求体，GET 时忽略
+     */
+    public <T> CompletableFuture<UpstreamResponseDecoder.Decoded<T>> execute(HttpMethod method, URI uri, HttpHeaders headers, byte[] body,
+                                                                            ObjectMapper mapper, JavaType type) {
+        HttpRequestBase request;
+        if (method == HttpMethod.POST) {
+            HttpPost post = new HttpPost(uri);
+            post.setEntity(new ByteArrayEntity(body != null ? body : new byte[0]));
+            request = post;
+        } else if (method == HttpMethod.GET) {
+            request = new HttpGet(uri);
+        } else {
+            throw new IllegalArgumentException("不支持的请求方法: " + method);
+        }
+        headers.forEach((name, values) -> values.forEach(value -> request.addHeader(name, value)));
+        return send(request, (response, responseHeaders) -> {
+            HttpEntity entity = response.getEntity();
+            try (InputStream content = entity != null ? entity.getContent() : null) {
+                return UpstreamResponseDecoder.<T>decode(content, responseHeaders, mapper, type);
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> send(HttpRequestBase request, ResponseHandler<T> handler) {
+        requests.incrementAndGet();
+        inFlight.incrementAndGet();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        String description = request.getMethod() + " request for \"" + request.getURI() + "\"";
+        Future<HttpResponse> exchange = httpClient.execute(request, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                try {
+                    decodeExecutor.execute(() -> {
+                        try {
+                            result.complete(handle(response, handler));
+                        } catch (Throwable e) {
+                            result.completeExceptionally(e instanceof IOException
+                                ? new ResourceAccessException("I/O error on " + description + ": " + e.getMessage(), (IOException) e) : e);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                ResourceAccessException error;
+                if (e instanceof IOException) {
+                    error = new ResourceAccessException("I/O error on " + description + ": " + e.getMessage(), (IOException) e);
+                } else {
+                    // 例如等待连接池超时的 TimeoutException，保留为 cause 以便按超时分类
+                    error = new ResourceAccessException("I/O error on " + description + ": " + e.getMessage());
+                    error.initCause(e);
+                }
+                result.completeExceptionally(error);
+            }
+
+            @Override
+            public void cancelled() {
+                result.completeExceptionally(new ResourceAccessException("Request cancelled: " + description));
+            }
+        });
+
+        long totalTimeoutMs = properties.getTotalTimeoutMs();
+        ScheduledFuture<?> timeout = totalTimeoutMs <= 0 ? null : timer.schedule(() -> {
+            String message = "Total timeout of " + totalTimeoutMs + "ms exceeded: " + description;
+            if (result.completeExceptionally(new ResourceAccessException(message, new SocketTimeoutException(message)))) {
+                timeouts.incrementAndGet();
+                exchange.cancel(true);
+            }
+        }, totalTimeoutMs, TimeUnit.MILLISECONDS);
+        result.whenComplete((value, error) -> {
+            inFlight.decrementAndGet();
+            if (error != null) {
+                failures.incrementAndGet();
+            }
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 按 RestTemplate 默认错误处理的约定把 4xx/5xx 转为异常，其余交给 handler
+     */
+    private static <T> T handle(HttpResponse response, ResponseHandler<T> handler) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        for (Header header : response.getAllHeaders()) {
+            headers.add(header.getName(), header.getValue());
+        }
+        int status = response.getStatusLine().getStatusCode();
+        if (status < 400) {
+            return handler.handle(response, headers);
+        }
+        String statusText = response.getStatusLine().getReasonPhrase();
+        byte[] body = response.getEntity() != null ? EntityUtils.toByteArray(response.getEntity()) : new byte[0];
+        HttpStatus resolved = HttpStatus.resolve(status);
+        if (resolved == null) {
+            throw new UnknownHttpStatusCodeException(status, statusText, headers, body, StandardCharsets.UTF_8);
+        }
+        if (resolved.is4xxClientError()) {
+            throw HttpClientErrorException.create(resolved, statusText, headers, body, StandardCharsets.UTF_8);
+        }
+        throw HttpServerErrorException.create(resolved, statusText, headers, body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 连接保持时长取服务端 Keep-Alive 头与 fq.http.keep-alive-ms 中较小者，服务端未声明时取后者
+     */
+    static ConnectionKeepAliveStrategy keepAliveStrategy(long keepAliveMs) {
+        return (response, context) -> {
+            long server = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return server > 0 ? Math.min(server, keepAliveMs) : keepAliveMs;
+        };
+    }
+
+    /**
+     * 在途请求、失败与超时次数，以及异步连接池占用情况
+     */
+    public Map<String, Object> getStats() {
+        PoolStats total = connectionManager.getTotalStats();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", requests.get());
+        stats.put("inFlight", inFlight.get());
+        stats.put("failures", failures.get());
+        stats.put("timeouts", timeouts.get());
+        stats.put("maxTotal", total.getMax());
+        stats.put("leased", total.getLeased());
+        stats.put("available", total.getAvailable());
+        stats.put("pending", total.getPending());
+        stats.put("tlsHandshakes", tlsHandshakes.get());
+        stats.put("preconnected", preconnected.get());
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        timer.shutdownNow();
+        decodeExecutor.shutdown();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            log.debug("关闭上游异步HTTP客户端失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 响应处理：在解码线程上执行，可阻塞读取已缓冲的响应体
+     */
+    private interface ResponseHandler<T> {
+        T handle(HttpResponse response, HttpHeaders headers) throws IOException;
+    }
+
+    /**
+     * 统计 TLS 握手次数的 TLS 会话策略
+     */
+    private final class CountingSslStrategy extends SSLIOSessionStrategy {
+        private CountingSslStrategy() {
+            super(SSLContexts.createDefault(), SSLIOSessionStrategy.getDefaultHostnameVerifier());
+        }
+
+        @Override
+        protected void verifySession(HttpHost host, IOSession iosession) throws SSLException {
+            // 握手完成后调用
+            tlsHandshakes.incrementAndGet();
+            super.verifySession(host, iosession);
+        }
+    }
+}
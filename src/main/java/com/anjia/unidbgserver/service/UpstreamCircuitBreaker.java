@@ -0,0 +1,254 @@
+package com.anjia.unidbgserver.service;
+
+import com.anjia.unidbgserver.config.FQCircuitBreakerProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 按上游主机的熔断器：统计最近请求的失败率（风控拦截、空响应、非JSON、gzip 异常、超时、5xx 与连接失败），
+ * 达到阈值后熔断，熔断期间请求在签名与限流排队之前直接以 {@link UpstreamCircuitOpenException} 失败。
+ * <p>
+ * 熔断到期后进入半开状态，放行少量探测请求：全部成功则恢复，任一失败则重新熔断。
+ * 签名失败、4xx 等不是上游故障的错误不计入失败率。
+ */
+@Slf4j
+@Component
+public class UpstreamCircuitBreaker {
+
+    /**
+     * 熔断器状态
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final FQCircuitBreakerProperties properties;
+    private final Map<String, HostBreaker> breakers = new ConcurrentHashMap<>();
+
+    public UpstreamCircuitBreaker(FQCircuitBreakerProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * 经目标主机的熔断器执行一次上游调用
+     *
+     * @param url 请求 URL，用于确定主机
+     * @param call 发起请求；熔断时不调用
+     * @return 调用结果；熔断时以 UpstreamCircuitOpenException 结束
+     */
+    public <T> CompletableFuture<T> execute(String url, Supplier<CompletableFuture<T>> call) {
+        if (!properties.isEnabled()) {
+            return call.get();
+        }
+        String host = hostOf(url);
+        HostBreaker breaker = breakers.computeIfAbsent(host, HostBreaker::new);
+        Boolean probe = breaker.tryAcquire(System.currentTimeMillis());
+        if (probe == null) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new UpstreamCircuitOpenException(host, breaker.retryAfterMs(System.currentTimeMillis())));
+            return rejected;
+        }
+
+        CompletableFuture<T> response;
+        try {
+            response = call.get();
+        } catch (RuntimeException e) {
+            response = new CompletableFuture<>();
+            response.completeExceptionally(e);
+        }
+        response.whenComplete((value, error) -> breaker.record(probe, error != null && isUpstreamFailure(error), System.currentTimeMillis()));
+        return response;
+    }
+
+    /**
+     * 目标主机当前是否放行请求（未熔断，或熔断已到期可以探测）；不占用探测名额
+     */
+    public boolean allowsRequests(String url) {
+        if (!properties.isEnabled()) {
+            return true;
+        }
+        HostBreaker breaker = breakers.get(hostOf(url));
+        return breaker == null || breaker.allows(System.currentTimeMillis());
+    }
+
+    /**
+     * 各主机熔断器状态：状态、窗口内请求数与失败率、被拒绝的请求数、熔断次数与剩余熔断时间
+     */
+    public Map<String, Object> getStates() {
+        Map<String, Object> states = new TreeMap<>();
+        long now = System.currentTimeMillis();
+        for (HostBreaker breaker : breakers.values()) {
+            states.put(breaker.host, breaker.snapshot(now));
+        }
+        return states;
+    }
+
+    private static boolean isUpstreamFailure(Throwable error) {
+        Throwable e = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (e instanceof UpstreamCircuitOpenException) {
+            return false;
+        }
+        return UpstreamFailure.classify(e).isRetryable()
+            || e instanceof HttpServerErrorException
+            || e instanceof ResourceAccessException;
+    }
+
+    /**
+     * 取 URL 中的主机名（不含端口）；不依赖 URI 解析，查询串中的未编码字符不影响结果
+     */
+    static String hostOf(String url) {
+        if (url == null) {
+            return "";
+        }
+        int start = url.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = start;
+        while (end < url.length()) {
+            char c = url.charAt(end);
+            if (c == '/' || c == ':' || c == '?' || c == '#') {
+                break;
+            }
+            end++;
+        }
+        return url.substring(start, end).toLowerCase();
+    }
+
+    /**
+     * 单个主机的熔断器；状态变更均在对象锁内完成
+     */
+    private final class HostBreaker {
+        private final String host;
+        private final boolean[] window;
+        private int windowCount;
+        private int windowFailures;
+        private int windowIndex;
+
+        private State state = State.CLOSED;
+        private long openUntilMs;
+        private int probesInFlight;
+        private int probeSuccesses;
+
+        private long rejected;
+        private long opened;
+
+        private HostBreaker(String host) {
+            this.host = host;
+            this.window = new boolean[Math.max(1, properties.getWindowSize())];
+        }
+
+        /**
+         * @return null 表示拒绝；TRUE 表示半开探测请求；FALSE 表示正常请求
+         */
+        synchronized Boolean tryAcquire(long now) {
+            if (state == State.CLOSED) {
+                return Boolean.FALSE;
+            }
+            if (state == State.OPEN) {
+                if (now < openUntilMs) {
+                    rejected++;
+                    return null;
+                }
+                state = State.HALF_OPEN;
+                probesInFlight = 0;
+                probeSuccesses = 0;
+                log.info("上游熔断到期，进入半开探测 - {}", host);
+            }
+            if (probesInFlight + probeSuccesses < Math.max(1, properties.getHalfOpenProbes())) {
+                probesInFlight++;
+                return Boolean.TRUE;
+            }
+            rejected++;
+            return null;
+        }
+
+        synchronized boolean allows(long now) {
+            if (state == State.CLOSED) {
+                return true;
+            }
+            if (state == State.OPEN) {
+                return now >= openUntilMs;
+            }
+            return probesInFlight + probeSuccesses < Math.max(1, properties.getHalfOpenProbes());
+        }
+
+        synchronized long retryAfterMs(long now) {
+            return state == State.OPEN ? Math.max(0L, openUntilMs - now) : 0L;
+        }
+
+        synchronized void record(boolean probe, boolean failure, long now) {
+            if (probe) {
+                if (state != State.HALF_OPEN) {
+                    return;
+                }
+                probesInFlight--;
+                if (failure) {
+                    open(now, "半开探测失败");
+                } else if (++probeSuccesses >= Math.max(1, properties.getHalfOpenProbes())) {
+                    state = State.CLOSED;
+                    resetWindow();
+                    log.info("上游探测成功，熔断恢复 - {}", host);
+                }
+                return;
+            }
+            // 熔断前发出的请求晚到的结果不再计入
+            if (state != State.CLOSED) {
+                return;
+            }
+            if (windowCount == window.length && window[windowIndex]) {
+                windowFailures--;
+            }
+            window[windowIndex] = failure;
+            if (failure) {
+                windowFailures++;
+            }
+            windowIndex = (windowIndex + 1) % window.length;
+            windowCount = Math.min(windowCount + 1, window.length);
+
+            if (windowCount >= Math.max(1, properties.getMinimumCalls())
+                && failureRate() >= properties.getFailureRateThreshold()) {
+                open(now, String.format("失败率 %.0f%%", failureRate() * 100));
+            }
+        }
+
+        private void open(long now, String reason) {
+            state = State.OPEN;
+            openUntilMs = now + Math.max(0L, properties.getOpenMs());
+            opened++;
+            resetWindow();
+            log.warn("上游熔断 - {}: {}，{}ms 内请求直接失败", host, reason, properties.getOpenMs());
+        }
+
+        private void resetWindow() {
+            windowCount = 0;
+            windowFailures = 0;
+            windowIndex = 0;
+        }
+
+        private double failureRate() {
+            return windowCount == 0 ? 0D : (double) windowFailures / windowCount;
+        }
+
+        synchronized Map<String, Object> snapshot(long now) {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            // 到期未探测的熔断按半开展示
+            State shown = state == State.OPEN && now >= openUntilMs ? State.HALF_OPEN : state;
+            snapshot.put("state", shown.name());
+            snapshot.put("windowCalls", windowCount);
+            snapshot.put("failureRate", Math.round(failureRate() * 1000) / 1000D);
+            snapshot.put("rejected", rejected);
+            snapshot.put("opened", opened);
+            snapshot.put("retryAfterMs", retryAfterMs(now));
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.anjia.unidbgserver.service;
+
+/**
+ * 上游主机处于熔断状态，请求未发出即失败
+ */
+public class UpstreamCircuitOpenException extends RuntimeException {
+
+    private final String host;
+    private final long retryAfterMs;
+
+    public UpstreamCircuitOpenException(String host, long retryAfterMs) {
+        super("上游熔断中(" + host + ")，约 " + Math.max(1L, (retryAfterMs + 999) / 1000) + " 秒后重试");
+        this.host = host;
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    /**
+     * 距离进入半开状态的剩余时间（ms）；半开探测名额已满时为 0
+     */
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+}
@@ -0,0 +1,75 @@
+package com.anjia.unidbgserver.service;
+
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.ZipException;
+
+/**
+ * 上游请求失败分类，决定是否重试以及按类别统计
+ */
+public enum UpstreamFailure {
+
+    /**
+     * 风控拦截（code 110 或响应中含 ILLEGAL_ACCESS），需更换设备后重试
+     */
+    ILLEGAL_ACCESS(true),
+
+    /**
+     * 空响应体
+     */
+    EMPTY(true),
+
+    /**
+     * 非 JSON 响应（HTML 拦截页、错误页等）
+     */
+    NON_JSON(true),
+
+    /**
+     * gzip 数据损坏或无法解压
+     */
+    GZIP(true),
+
+    /**
+     * 连接、读取、连接池等待或总超时
+     */
+    TIMEOUT(true),
+
+    /**
+     * 其他错误（签名失败、4xx/5xx、解析失败等），不重试
+     */
+    OTHER(false);
+
+    private final boolean retryable;
+
+    UpstreamFailure(boolean retryable) {
+        this.retryable = retryable;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
+    }
+
+    /**
+     * 沿 cause 链按异常类型分类：CompletionException、ResourceAccessException 等包装携带的底层原因同样识别
+     */
+    public static UpstreamFailure classify(Throwable error) {
+        for (Throwable e = error; e != null; e = e.getCause() == e ? null : e.getCause()) {
+            if (e instanceof UpstreamFailureException) {
+                return ((UpstreamFailureException) e).getFailure();
+            }
+            if (e instanceof ZipException) {
+                return GZIP;
+            }
+            if (e instanceof MismatchedInputException && e.getMessage() != null
+                && e.getMessage().startsWith("No content to map due to end-of-input")) {
+                return EMPTY;
+            }
+            if (e instanceof InterruptedIOException || e instanceof TimeoutException) {
+                return TIMEOUT;
+            }
+        }
+        return OTHER;
+    }
+}
@@ -0,0 +1,18 @@
+package com.anjia.unidbgserver.service;
+
+/**
+ * 已分类的上游失败，由 {@link UpstreamRetryPolicy} 按 {@link UpstreamFailure} 决定是否重试
+ */
+public class UpstreamFailureException extends RuntimeException {
+
+    private final UpstreamFailure failure;
+
+    public UpstreamFailureException(UpstreamFailure failure, String message) {
+        super(message);
+        this.failure = failure;
+    }
+
+    public UpstreamFailure getFailure() {
+        return failure;
+    }
+}
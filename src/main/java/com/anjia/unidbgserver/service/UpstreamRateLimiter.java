@@ -20,25 +20,33 @@ public class UpstreamRateLimiter {
     private final AtomicLong nextAllowedAtNanos = new AtomicLong(0L);
 
     public void acquire() {
+        long wait = reserve() - System.nanoTime();
+        if (wait > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    /**
+     * 预约一个上游请求时刻但不等待，调用方需在返回的时刻（System.nanoTime 基准）或之后发出请求
+     *
+     * @return 预约到的请求时刻
+     */
+    public long reserve() {
         long intervalMs = downloadProperties.getRequestIntervalMs();
+        long now = System.nanoTime();
         if (intervalMs <= 0) {
-            return;
+            return now;
         }
 
         long intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMs);
         while (true) {
-            long now = System.nanoTime();
             long prev = nextAllowedAtNanos.get();
             long start = Math.max(now, prev);
             long next = start + intervalNanos;
             if (nextAllowedAtNanos.compareAndSet(prev, next)) {
-                long wait = start - now;
-                if (wait > 0) {
-                    LockSupport.parkNanos(wait);
-                }
-                return;
+                return start;
             }
+            now = System.nanoTime();
         }
     }
 }
-
@@ -0,0 +1,218 @@
+package com.anjia.unidbgserver.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 上游请求流水线：先向 {@link UpstreamRateLimiter} 预约请求时刻，在时刻到来前按签名耗时提前开始签名，
+ * 签名完成后在预约时刻准时发出请求。
+ * <p>
+ * 签名耗时与限流等待重叠而不是叠加；签名尽量贴近发出时刻生成，不会出现线程拿着已签名请求空等的情况。
+ */
+@Slf4j
+@Component
+public class UpstreamRequestPipeline {
+
+    // 签名提前量 = 签名平均耗时 * 2 + 余量
+    private static final long LEAD_MARGIN_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    @Resource(name = "fqEncryptWorker")
+    private FQEncryptServiceWorker fqEncryptServiceWorker;
+
+    @Resource
+    private UpstreamRateLimiter upstreamRateLimiter;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "fq-upstream-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService callExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "fq-upstream-call-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // 签名耗时的指数加权平均（纳秒），0 表示尚无样本
+    private volatile long signNanosEwma;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong lateFires = new AtomicLong();
+    private final AtomicLong lateNanosTotal = new AtomicLong();
+
+    /**
+     * 预约上游时刻、签名并在预约时刻执行请求
+     *
+     * @param url 完整请求 URL
+     * @param headers 参与签名的请求头
+     * @param call 使用签名结果发出请求的回调，在预约时刻于调用线程池执行（可阻塞）
+     * @return 请求结果；签名为空时以 IllegalStateException("签名生成失败") 结束
+     */
+    public <T> CompletableFuture<T> submit(String url, Map<String, String> headers, Function<Map<String, String>, T> call) {
+        return submitAsync(url, headers, signedHeaders -> CompletableFuture.supplyAsync(() -> call.apply(signedHeaders), callExecutor));
+    }
+
+    /**
+     * 非阻塞版本：预约时刻到来时直接在定时线程上调用 call，call 须立即返回（如发出异步请求），
+     * 整个过程中等待限流、签名与响应都不占用线程
+     *
+     * @param call 使用签名结果发出请求并返回其结果 future 的回调
+     * @return 请求结果；签名为空时以 IllegalStateException("签名生成失败") 结束
+     */
+    public <T> CompletableFuture<T> submitAsync(String url, Map<String, String> headers,
+                                                Function<Map<String, String>, CompletableFuture<T>> call) {
+        requests.incrementAndGet();
+        long slot = upstreamRateLimiter.reserve();
+        CompletableFuture<T> result = new CompletableFuture<>();
+
+        long signDelay = (slot - System.nanoTime()) - leadNanos();
+        if (signDelay > 0) {
+            timer.schedule(() -> sign(url, headers, slot, call, result), signDelay, TimeUnit.NANOSECONDS);
+        } else {
+            sign(url, headers, slot, call, result);
+        }
+        return result;
+    }
+
+    /**
+     * 在指定毫秒后完成的 future，用于重试退避等延迟，不占用线程
+     */
+    public CompletableFuture<Void> delay(long delayMs) {
+        CompletableFuture<Void> delayed = new CompletableFuture<>();
+        if (delayMs <= 0) {
+            delayed.complete(null);
+        } else {
+            timer.schedule(() -> delayed.complete(null), delayMs, TimeUnit.MILLISECONDS);
+        }
+        return delayed;
+    }
+
+    /**
+     * 去掉 CompletableFuture 组合过程中包装的 CompletionException / ExecutionException
+     */
+    public static Throwable unwrap(Throwable error) {
+        Throwable current = error;
+        while ((current instanceof CompletionException || current instanceof ExecutionException) && current.getCause() != null) {
+            current = current.getCause();
+        }
+        return current;
+    }
+
+    /**
+     * 同步版本：阻塞直到请求完成，异常原样抛出（不包装为 CompletionException）
+     */
+    public <T> T execute(String url, Map<String, String> headers, Function<Map<String, String>, T> call) {
+        try {
+            return submit(url, headers, call).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    private <T> void sign(String url, Map<String, String> headers, long slot,
+                          Function<Map<String, String>, CompletableFuture<T>> call, CompletableFuture<T> result) {
+        long start = System.nanoTime();
+        CompletableFuture<Map<String, String>> signing;
+        try {
+            signing = fqEncryptServiceWorker.generateSignatureHeaders(url, headers);
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        signing.whenComplete((signedHeaders, error) -> {
+            if (error != null) {
+                result.completeExceptionally(unwrap(error));
+                return;
+            }
+            if (signedHeaders == null || signedHeaders.isEmpty()) {
+                result.completeExceptionally(new IllegalStateException("签名生成失败"));
+                return;
+            }
+            long now = System.nanoTime();
+            recordSignNanos(now - start);
+            long fireDelay = slot - now;
+            if (fireDelay > 0) {
+                timer.schedule(() -> fire(signedHeaders, slot, call, result), fireDelay, TimeUnit.NANOSECONDS);
+            } else {
+                fire(signedHeaders, slot, call, result);
+            }
+        });
+    }
+
+    private <T> void fire(Map<String, String> signedHeaders, long slot,
+                          Function<Map<String, String>, CompletableFuture<T>> call, CompletableFuture<T> result) {
+        long late = System.nanoTime() - slot;
+        if (late > LEAD_MARGIN_NANOS) {
+            lateFires.incrementAndGet();
+            lateNanosTotal.addAndGet(late);
+        }
+        CompletableFuture<T> response;
+        try {
+            response = call.apply(signedHeaders);
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+            return;
+        }
+        response.whenComplete((value, error) -> {
+            if (error != null) {
+                result.completeExceptionally(unwrap(error));
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    private long leadNanos() {
+        long ewma = signNanosEwma;
+        // 尚无样本时立即签名
+        return ewma == 0 ? Long.MAX_VALUE / 4 : ewma * 2 + LEAD_MARGIN_NANOS;
+    }
+
+    private void recordSignNanos(long nanos) {
+        long ewma = signNanosEwma;
+        signNanosEwma = ewma == 0 ? nanos : (ewma * 7 + nanos) / 8;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long late = lateFires.get();
+        stats.put("requests", requests.get());
+        stats.put("signAvgMs", TimeUnit.NANOSECONDS.toMillis(signNanosEwma));
+        stats.put("lateFires", late);
+        stats.put("lateAvgMs", late > 0 ? TimeUnit.NANOSECONDS.toMillis(lateNanosTotal.get() / late) : 0L);
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        timer.shutdownNow();
+        callExecutor.shutdown();
+    }
+}
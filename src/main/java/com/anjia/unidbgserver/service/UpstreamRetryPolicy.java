@@ -0,0 +1,232 @@
+package com.anjia.unidbgserver.service;
+
+import com.anjia.unidbgserver.config.FQRetryProperties;
+import com.anjia.unidbgserver.utils.UpstreamResponseDecoder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 上游请求重试策略：按 {@link UpstreamFailure} 分类决定是否重试，指数退避加随机抖动经
+ * {@link UpstreamRequestPipeline#delay} 在流水线的定时器上等待（不占用线程），并以全局重试预算限制故障期间的重试总量。
+ * <p>
+ * 重试前的回调（如更换设备）可能阻塞，在专用的线程池上执行，不占用公共 ForkJoinPool；回调失败只记录日志，
+ * 不影响重试，也不会掩盖上游失败本身。
+ * <p>
+ * 重试预算为令牌桶：每个首次请求存入 budgetRatio 个令牌，每次重试消耗 1 个，令牌上限 budgetCapacity。
+ * 上游持续故障时重试量因此不超过正常请求量的 budgetRatio 倍，不会把故障放大成重试风暴。
+ */
+@Slf4j
+@Component
+public class UpstreamRetryPolicy {
+
+    private final FQRetryProperties properties;
+    private final UpstreamRequestPipeline upstreamRequestPipeline;
+    private final ExecutorService beforeRetryExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "fq-retry-prepare-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // 重试预算令牌
+    private double budgetTokens;
+
+    // 统计
+    private final AtomicLong requests = new AtomicLong();
+    private final Map<UpstreamFailure, AtomicLong> failures = counters();
+    private final Map<UpstreamFailure, AtomicLong> retries = counters();
+    private final Map<UpstreamFailure, AtomicLong> budgetDenied = counters();
+    private final Map<UpstreamFailure, AtomicLong> exhausted = counters();
+
+    public UpstreamRetryPolicy(FQRetryProperties properties, UpstreamRequestPipeline upstreamRequestPipeline) {
+        this.properties = properties;
+        this.upstreamRequestPipeline = upstreamRequestPipeline;
+        this.budgetTokens = Math.max(0, properties.getBudgetCapacity());
+    }
+
+    /**
+     * 按 fq.retry 的默认次数与退避执行
+     */
+    public <T> CompletableFuture<T> execute(String operation, Supplier<CompletableFuture<T>> attempt) {
+        return execute(operation, properties.getMaxAttempts(), properties.getBaseDelayMs(), properties.getMaxDelayMs(), attempt, null);
+    }
+
+    /**
+     * 执行上游调用，可重试的失败在退避后重新调用 attempt
+     *
+     * @param operation 调用名称，用于日志
+     * @param maxAttempts 最大尝试次数（含首次请求）
+     * @param attempt 发起一次请求；每次重试重新调用，以便重新构建参数与签名
+     * @param beforeRetry 重试前的回调（如更换设备），在专用线程池上执行，可阻塞；失败时记录日志后照常重试；可为 null
+     * @return 最后一次尝试的结果；放弃重试时以最后一次的异常（已剥离 CompletionException）结束
+     */
+    public <T> CompletableFuture<T> execute(String operation, int maxAttempts, long baseDelayMs, long maxDelayMs,
+                                            Supplier<CompletableFuture<T>> attempt, Consumer<UpstreamFailure> beforeRetry) {
+        requests.incrementAndGet();
+        deposit();
+        return attempt(operation, Math.max(1, maxAttempts), Math.max(0L, baseDelayMs), Math.max(baseDelayMs, maxDelayMs),
+            attempt, beforeRetry, 1);
+    }
+
+    private <T> CompletableFuture<T> attempt(String operation, int maxAttempts, long baseDelayMs, long maxDelayMs,
+                                             Supplier<CompletableFuture<T>> attempt, Consumer<UpstreamFailure> beforeRetry, int attemptNo) {
+        CompletableFuture<T> response;
+        try {
+            response = attempt.get();
+        } catch (RuntimeException e) {
+            response = new CompletableFuture<>();
+            response.completeExceptionally(e);
+        }
+        return response.handle((value, error) -> {
+            if (error == null) {
+                return CompletableFuture.completedFuture(value);
+            }
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            UpstreamFailure failure = UpstreamFailure.classify(cause);
+            failures.get(failure).incrementAndGet();
+
+            if (!failure.isRetryable()) {
+                return UpstreamRetryPolicy.<T>failed(cause);
+            }
+            if (attemptNo >= maxAttempts) {
+                exhausted.get(failure).incrementAndGet();
+                return UpstreamRetryPolicy.<T>failed(cause);
+            }
+            if (!tryAcquireRetry()) {
+                budgetDenied.get(failure).incrementAndGet();
+                log.warn("上游重试预算耗尽，放弃重试 - {}: {} ({})", operation, failure, cause.getMessage());
+                return UpstreamRetryPolicy.<T>failed(cause);
+            }
+            retries.get(failure).incrementAndGet();
+
+            long delayMs = backoffMs(attemptNo, baseDelayMs, maxDelayMs);
+            log.debug("上游请求失败，{}ms 后重试 - {} 第{}次: {} ({})", delayMs, operation, attemptNo, failure, cause.getMessage());
+            CompletableFuture<Void> prepared;
+            try {
+                prepared = beforeRetry == null
+                    ? CompletableFuture.completedFuture(null)
+                    : CompletableFuture.runAsync(() -> prepareRetry(operation, failure, beforeRetry), beforeRetryExecutor);
+            } catch (RejectedExecutionException e) {
+                // 已关闭：不再重试，返回上游失败本身
+                return UpstreamRetryPolicy.<T>failed(cause);
+            }
+            return prepared
+                .thenCompose(ignored -> upstreamRequestPipeline.delay(delayMs))
+                .thenCompose(ignored -> attempt(operation, maxAttempts, baseDelayMs, maxDelayMs, attempt, beforeRetry, attemptNo + 1));
+        }).thenCompose(future -> future);
+    }
+
+    /**
+     * 指数退避 + 随机抖动，避免并发重试同时打到上游
+     */
+    long backoffMs(int attemptNo, long baseDelayMs, long maxDelayMs) {
+        long delay = baseDelayMs <= 0 ? 0 : baseDelayMs * (1L << Math.min(10, attemptNo - 1));
+        delay = Math.min(delay, maxDelayMs);
+        long jitterMs = properties.getJitterMs();
+        return jitterMs > 0 ? delay + ThreadLocalRandom.current().nextLong(0, jitterMs) : delay;
+    }
+
+    private static void prepareRetry(String operation, UpstreamFailure failure, Consumer<UpstreamFailure> beforeRetry) {
+        try {
+            beforeRetry.accept(failure);
+        } catch (RuntimeException e) {
+            log.warn("重试前回调失败，照常重试 - {}: {} ({})", operation, failure, e.getMessage());
+        }
+    }
+
+    private synchronized void deposit() {
+        budgetTokens = Math.min(properties.getBudgetCapacity(), budgetTokens + properties.getBudgetRatio());
+    }
+
+    private synchronized boolean tryAcquireRetry() {
+        if (budgetTokens < 1) {
+            return false;
+        }
+        budgetTokens -= 1;
+        return true;
+    }
+
+    /**
+     * 校验响应为 JSON：空响应、含 ILLEGAL_ACCESS 的拦截页与其他非 JSON 内容分别以对应分类的异常结束
+     *
+     * @return 解析后的对象（JSON 字面量 null 时为 null）
+     */
+    public static <T> T requireJson(UpstreamResponseDecoder.Decoded<T> decoded) {
+        if (decoded != null && decoded.isJson()) {
+            return decoded.getValue();
+        }
+        String text = decoded != null ? decoded.getText().trim() : "";
+        if (text.isEmpty()) {
+            throw new UpstreamFailureException(UpstreamFailure.EMPTY, "Empty upstream response");
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("上游非JSON原始响应: {}", text.length() > 800 ? text.substring(0, 800) + "..." : text);
+        }
+        // 上游可能返回 HTML/非 JSON（例如风控/拦截页）
+        if (text.contains("ILLEGAL_ACCESS")) {
+            throw new UpstreamFailureException(UpstreamFailure.ILLEGAL_ACCESS, "ILLEGAL_ACCESS");
+        }
+        throw new UpstreamFailureException(UpstreamFailure.NON_JSON, "UPSTREAM_NON_JSON");
+    }
+
+    /**
+     * 请求数、剩余预算，以及按失败类别的失败/重试/预算拒绝/重试耗尽次数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", requests.get());
+        synchronized (this) {
+            stats.put("budgetTokens", Math.floor(budgetTokens * 100) / 100);
+        }
+        Map<String, Object> byFailure = new LinkedHashMap<>();
+        for (UpstreamFailure failure : UpstreamFailure.values()) {
+            Map<String, Object> counts = new LinkedHashMap<>();
+            counts.put("failures", failures.get(failure).get());
+            counts.put("retries", retries.get(failure).get());
+            counts.put("budgetDenied", budgetDenied.get(failure).get());
+            counts.put("exhausted", exhausted.get(failure).get());
+            byFailure.put(failure.name(), counts);
+        }
+        stats.put("failures", byFailure);
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        beforeRetryExecutor.shutdown();
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    private static Map<UpstreamFailure, AtomicLong> counters() {
+        Map<UpstreamFailure, AtomicLong> counters = new EnumMap<>(UpstreamFailure.class);
+        for (UpstreamFailure failure : UpstreamFailure.values()) {
+            counters.put(failure, new AtomicLong());
+        }
+        return counters;
+    }
+}
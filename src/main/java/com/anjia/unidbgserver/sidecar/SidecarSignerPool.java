@@ -0,0 +1,231 @@
+package com.anjia.unidbgserver.sidecar;
+
+import com.anjia.unidbgserver.config.UnidbgProperties;
+import com.anjia.unidbgserver.utils.TempFileUtils;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 进程外签名池：启动 N 个签名子进程（{@link SignerSidecarMain}），请求分发给在途请求最少的进程。
+ * 模拟器的内存分配与 GC 停顿、native 崩溃都被隔离在子进程内；子进程退出后在后台重启。
+ * <p>
+ * 子进程按 queue.timeout-ms 限制排队与执行时间；父进程额外等待 {@link #RESPONSE_GRACE_MS} 仍无响应的请求直接超时失败，
+ * 连续超时的子进程视为卡死，强制结束后由后台重启。
+ */
+@Slf4j
+public class SidecarSignerPool {
+
+    private static final long RESTART_DELAY_MS = 2000;
+    private static final long RESPONSE_GRACE_MS = 2000;
+
+    private final List<String> command;
+    private final long startTimeoutMs;
+    private final long requestTimeoutMs;
+    private final int restartAfterTimeouts;
+    private final AtomicReferenceArray<SidecarSignerProcess> processes;
+    private final ScheduledExecutorService supervisor;
+    // 请求超时定时器：与 supervisor 分开，重启子进程时不会推迟超时处理
+    private final ScheduledExecutorService timer;
+    private final AtomicLong restarts = new AtomicLong();
+    private volatile boolean closed;
+
+    public SidecarSignerPool(UnidbgProperties unidbgProperties, String backend) {
+        UnidbgProperties.Sidecar sidecar = unidbgProperties.getSidecar();
+        this.command = buildCommand(unidbgProperties, sidecar, backend);
+        this.startTimeoutMs = sidecar.getStartTimeoutMs();
+        long queueTimeoutMs = unidbgProperties.getQueue().getTimeoutMs();
+        this.requestTimeoutMs = queueTimeoutMs > 0 ? queueTimeoutMs + RESPONSE_GRACE_MS : 0;
+        this.restartAfterTimeouts = sidecar.getRestartAfterTimeouts();
+        this.processes = new AtomicReferenceArray<>(Math.max(1, sidecar.getProcesses()));
+        this.supervisor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fq-sidecar-supervisor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fq-sidecar-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // 并行启动所有子进程
+        List<CompletableFuture<Void>> starting = new ArrayList<>();
+        for (int i = 0; i < processes.length(); i++) {
+            int index = i;
+            starting.add(CompletableFuture.runAsync(() -> startProcess(index)));
+        }
+        CompletableFuture.allOf(starting.toArray(new CompletableFuture[0])).join();
+        supervisor.scheduleWithFixedDelay(this::superviseProcesses, RESTART_DELAY_MS, RESTART_DELAY_MS, TimeUnit.MILLISECONDS);
+        log.info("FQ签名子进程池已启动 - 进程数:{}, 每进程实例数:{}", processes.length(), sidecar.getInstancesPerProcess());
+    }
+
+    /**
+     * 提交签名请求到在途请求最少的子进程
+     */
+    public CompletableFuture<Map<String, String>> sign(String url, String headers) {
+        SidecarSignerProcess target = null;
+        for (int i = 0; i < processes.length(); i++) {
+            SidecarSignerProcess candidate = processes.get(i);
+            if (candidate != null && candidate.isAlive()
+                && (target == null || candidate.getOutstanding() < target.getOutstanding())) {
+                target = candidate;
+            }
+        }
+        if (target == null) {
+            CompletableFuture<Map<String, String>> future = new CompletableFuture<>();
+            future.completeExceptionally(new IOException("没有可用的签名子进程"));
+            return future;
+        }
+        return target.sign(url, headers);
+    }
+
+    private void startProcess(int index) {
+        try {
+            long start = System.nanoTime();
+            SidecarSignerProcess process = SidecarSignerProcess.start(index, command, startTimeoutMs,
+                timer, requestTimeoutMs, restartAfterTimeouts);
+            if (closed) {
+                process.shutdown("池已关闭");
+                return;
+            }
+            processes.set(index, process);
+            log.info("签名子进程[{}]已就绪，耗时:{}ms", index, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException e) {
+            log.error("签名子进程[{}]启动失败: {}", index, e.getMessage());
+        }
+    }
+
+    /**
+     * 重启已退出的子进程（逐个进行，避免同时冷启动占满 CPU）
+     */
+    private void superviseProcesses() {
+        for (int i = 0; i < processes.length() && !closed; i++) {
+            SidecarSignerProcess process = processes.get(i);
+            if (process == null || !process.isAlive()) {
+                if (process != null) {
+                    process.shutdown("进程已退出");
+                }
+                restarts.incrementAndGet();
+                log.warn("签名子进程[{}]不可用，重新启动", i);
+                startProcess(i);
+            }
+        }
+    }
+
+    public void close() {
+        closed = true;
+        supervisor.shutdownNow();
+        timer.shutdownNow();
+        for (int i = 0; i < processes.length(); i++) {
+            SidecarSignerProcess process = processes.get(i);
+            if (process != null) {
+                process.shutdown("池已关闭");
+            }
+        }
+    }
+
+    public int getProcessCount() {
+        return processes.length();
+    }
+
+    public int getAliveCount() {
+        int alive = 0;
+        for (int i = 0; i < processes.length(); i++) {
+            SidecarSignerProcess process = processes.get(i);
+            if (process != null && process.isAlive()) {
+                alive++;
+            }
+        }
+        return alive;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("processes", processes.length());
+        stats.put("restarts", restarts.get());
+        List<Map<String, Object>> details = new ArrayList<>();
+        for (int i = 0; i < processes.length(); i++) {
+            SidecarSignerProcess process = processes.get(i);
+            Map<String, Object> detail = new LinkedHashMap<>();
+            detail.put("index", i);
+            detail.put("alive", process != null && process.isAlive());
+            if (process != null) {
+                detail.put("outstanding", process.getOutstanding());
+                detail.put("completed", process.getCompleted());
+                detail.put("failed", process.getFailed());
+                detail.put("timeouts", process.getTimeouts());
+            }
+            details.add(detail);
+        }
+        stats.put("details", details);
+        return stats;
+    }
+
+    /**
+     * 子进程启动命令：沿用当前 JVM 与类路径。Spring Boot 可执行 jar 内的类需经 PropertiesLauncher 加载。
+     */
+    private static List<String> buildCommand(UnidbgProperties unidbgProperties, UnidbgProperties.Sidecar sidecar, String backend) {
+        List<String> command = new ArrayList<>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        String jvmOptions = sidecar.getJvmOptions();
+        if (jvmOptions != null && !jvmOptions.trim().isEmpty()) {
+            for (String option : jvmOptions.trim().split("\\s+")) {
+                command.add(option);
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+
+        String location = String.valueOf(SidecarSignerPool.class.getProtectionDomain().getCodeSource().getLocation());
+        if (location.contains("BOOT-INF")) {
+            command.add("-Dloader.main=" + SignerSidecarMain.class.getName());
+            command.add("org.springframework.boot.loader.PropertiesLauncher");
+        } else {
+            command.add(SignerSidecarMain.class.getName());
+        }
+
+        command.add("--instances=" + Math.max(1, sidecar.getInstancesPerProcess()));
+        command.add("--backend=" + backend);
+        command.add("--verbose=" + unidbgProperties.isVerbose());
+        if (unidbgProperties.getApkPath() != null) {
+            command.add("--apk-path=" + unidbgProperties.getApkPath());
+        }
+        if (unidbgProperties.getApkClasspath() != null) {
+            command.add("--apk-classpath=" + unidbgProperties.getApkClasspath());
+        }
+        command.add("--extract-cache-dir=" + TempFileUtils.getCacheDir().getAbsolutePath());
+        UnidbgProperties.Watchdog watchdog = unidbgProperties.getWatchdog();
+        command.add("--max-instructions=" + watchdog.getMaxInstructions());
+        command.add("--max-wall-clock-ms=" + watchdog.getMaxWallClockMs());
+        command.add("--instruction-histogram=" + watchdog.isInstructionHistogram());
+        command.add("--queue-timeout-ms=" + unidbgProperties.getQueue().getTimeoutMs());
+        command.add("--queue-capacity=" + unidbgProperties.getQueue().getCapacity());
+        UnidbgProperties.Pool pool = unidbgProperties.getPool();
+        command.add("--recycle-max-calls=" + pool.getRecycleMaxCalls());
+        command.add("--recycle-max-heap-growth-mb=" + pool.getRecycleMaxHeapGrowthMb());
+        command.add("--recycle-max-failures=" + pool.getRecycleMaxFailures());
+        command.add("--template-clone=" + unidbgProperties.isTemplateClone());
+        String snapshotPath = unidbgProperties.getSnapshotPath();
+        if (snapshotPath != null && !snapshotPath.trim().isEmpty()) {
+            command.add("--snapshot-path=" + snapshotPath.trim());
+        }
+        UnidbgProperties.Libc libc = unidbgProperties.getLibc();
+        command.add("--libc-mode=" + libc.getMode());
+        if (!libc.getFunctions().isEmpty()) {
+            command.add("--libc-functions=" + String.join(",", libc.getFunctions()));
+        }
+        return command;
+    }
+}
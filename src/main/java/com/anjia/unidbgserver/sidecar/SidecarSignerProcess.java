@@ -0,0 +1,237 @@
+package com.anjia.unidbgserver.sidecar;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个签名子进程及其连接：请求按帧流水线写出，读线程按请求ID完成对应的 future。
+ * 子进程退出或连接断开时，所有在途请求以 IOException 失败。
+ * <p>
+ * 超过时限仍未响应的请求以 TimeoutException 失败；连续超时达到阈值时视为子进程卡死，强制结束进程。
+ */
+@Slf4j
+class SidecarSignerProcess {
+
+    private final int index;
+    private final Process process;
+    private final Socket socket;
+    private final OutputStream out;
+    private final ScheduledExecutorService timer;
+    private final long requestTimeoutMs;
+    private final int restartAfterTimeouts;
+    private final Map<Integer, CompletableFuture<Map<String, String>>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger nextRequestId = new AtomicInteger();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicInteger consecutiveTimeouts = new AtomicInteger();
+    private volatile boolean alive = true;
+
+    private SidecarSignerProcess(int index, Process process, Socket socket, ScheduledExecutorService timer,
+                                 long requestTimeoutMs, int restartAfterTimeouts) throws IOException {
+        this.index = index;
+        this.process = process;
+        this.socket = socket;
+        this.timer = timer;
+        this.requestTimeoutMs = requestTimeoutMs;
+        this.restartAfterTimeouts = restartAfterTimeouts;
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+        Thread reader = new Thread(this::readLoop, "fq-sidecar-reader-" + index);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * 启动子进程并等待其报告端口后建立连接
+     *
+     * @param timer 请求超时定时器
+     * @param requestTimeoutMs 单个请求等待响应的时限，0 表示不限
+     * @param restartAfterTimeouts 连续超时达到该次数时强制结束子进程，0 表示不结束
+     */
+    static SidecarSignerProcess start(int index, List<String> command, long startTimeoutMs, ScheduledExecutorService timer,
+                                      long requestTimeoutMs, int restartAfterTimeouts) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+        Process process = builder.start();
+        CompletableFuture<Integer> port = new CompletableFuture<>();
+
+        // 持续读取子进程输出，避免管道写满阻塞子进程；首个端口行用于建立连接
+        Thread drain = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!port.isDone() && line.startsWith(SignerProtocol.PORT_LINE_PREFIX)) {
+                        port.complete(Integer.parseInt(line.substring(SignerProtocol.PORT_LINE_PREFIX.length()).trim()));
+                    } else {
+                        log.info("[signer-{}] {}", index, line);
+                    }
+                }
+            } catch (Exception e) {
+                log.debug("读取签名子进程输出结束: {}", e.getMessage());
+            } finally {
+                port.completeExceptionally(new IOException("签名子进程在报告端口前退出"));
+            }
+        }, "fq-sidecar-output-" + index);
+        drain.setDaemon(true);
+        drain.start();
+
+        try {
+            int listenPort = port.get(startTimeoutMs, TimeUnit.MILLISECONDS);
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), listenPort);
+            socket.setTcpNoDelay(true);
+            return new SidecarSignerProcess(index, process, socket, timer, requestTimeoutMs, restartAfterTimeouts);
+        } catch (Exception e) {
+            process.destroyForcibly();
+            throw new IOException("签名子进程启动失败: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 发送签名请求
+     */
+    CompletableFuture<Map<String, String>> sign(String url, String headers) {
+        CompletableFuture<Map<String, String>> future = new CompletableFuture<>();
+        if (!alive) {
+            future.completeExceptionally(new IOException("签名子进程已退出"));
+            return future;
+        }
+        int requestId = nextRequestId.incrementAndGet();
+        pending.put(requestId, future);
+        outstanding.incrementAndGet();
+        if (!alive) {
+            // 与 shutdown 并发时确保不遗漏
+            complete(requestId, null, new IOException("签名子进程已退出"));
+            return future;
+        }
+        if (requestTimeoutMs > 0) {
+            ScheduledFuture<?> deadline = timer.schedule(() -> timeout(requestId), requestTimeoutMs, TimeUnit.MILLISECONDS);
+            future.whenComplete((result, error) -> deadline.cancel(false));
+        }
+        try {
+            byte[] frame = SignerProtocol.encodeSign(requestId, url, headers != null ? headers : "");
+            synchronized (out) {
+                out.write(frame);
+                out.flush();
+            }
+        } catch (IOException e) {
+            complete(requestId, null, e);
+            shutdown("写入请求失败: " + e.getMessage());
+        }
+        return future;
+    }
+
+    private void readLoop() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16))) {
+            SignerProtocol.Frame frame;
+            while ((frame = SignerProtocol.readFrame(in)) != null) {
+                // 子进程仍在响应（包括其自身的排队超时），不算卡死
+                consecutiveTimeouts.set(0);
+                if (frame.type == SignerProtocol.OK) {
+                    complete(frame.requestId, SignerProtocol.readResult(frame.payload), null);
+                } else {
+                    complete(frame.requestId, null, new IllegalStateException(SignerProtocol.readString(frame.payload)));
+                }
+            }
+            shutdown("连接已关闭");
+        } catch (IOException e) {
+            shutdown("读取响应失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 请求超过时限仍未响应：以 TimeoutException 失败；连续超时达到阈值时强制结束子进程，由池在后台重启
+     */
+    private void timeout(int requestId) {
+        if (!complete(requestId, null, new TimeoutException("签名子进程[" + index + "]响应超时(" + requestTimeoutMs + "ms)"))) {
+            return;
+        }
+        timeouts.incrementAndGet();
+        int streak = consecutiveTimeouts.incrementAndGet();
+        if (restartAfterTimeouts > 0 && streak >= restartAfterTimeouts) {
+            shutdown("连续" + streak + "次响应超时");
+            process.destroyForcibly();
+        }
+    }
+
+    private boolean complete(int requestId, Map<String, String> result, Throwable error) {
+        CompletableFuture<Map<String, String>> future = pending.remove(requestId);
+        if (future == null) {
+            return false;
+        }
+        outstanding.decrementAndGet();
+        if (error == null) {
+            completed.incrementAndGet();
+            future.complete(result);
+        } else {
+            failed.incrementAndGet();
+            future.completeExceptionally(error);
+        }
+        return true;
+    }
+
+    /**
+     * 关闭连接与子进程，在途请求全部失败
+     */
+    void shutdown(String reason) {
+        if (!alive) {
+            return;
+        }
+        alive = false;
+        log.warn("签名子进程[{}]关闭: {}", index, reason);
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // 忽略
+        }
+        process.destroy();
+        IOException error = new IOException("签名子进程已退出: " + reason);
+        for (Integer requestId : pending.keySet()) {
+            complete(requestId, null, error);
+        }
+    }
+
+    boolean isAlive() {
+        return alive && process.isAlive();
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    int getOutstanding() {
+        return outstanding.get();
+    }
+
+    long getCompleted() {
+        return completed.get();
+    }
+
+    long getFailed() {
+        return failed.get();
+    }
+
+    long getTimeouts() {
+        return timeouts.get();
+    }
+}
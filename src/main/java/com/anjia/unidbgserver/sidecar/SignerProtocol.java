@@ -0,0 +1,163 @@
+package com.anjia.unidbgserver.sidecar;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 签名子进程的二进制帧协议（本机回环 TCP，单连接可流水线发送多个请求，响应按完成顺序返回）。
+ * <pre>
+ * 帧:   [int 帧长度(不含自身)] [int 请求ID] [byte 类型] [负载]
+ * 请求: 类型 SIGN    负载 = [str url] [str headers]
+ * 响应: 类型 OK      负载 = [int 条数] ([str key] [str value])*
+ *       类型 ERROR   负载 = [str 错误信息]
+ * str:  [int 字节数] [UTF-8 字节]
+ * </pre>
+ */
+final class SignerProtocol {
+
+    static final byte SIGN = 1;
+    static final byte OK = 2;
+    static final byte ERROR = 3;
+
+    /**
+     * 单帧上限，防止异常数据导致超大分配
+     */
+    static final int MAX_FRAME_BYTES = 16 << 20;
+
+    /**
+     * 子进程启动后在标准输出打印的端口行前缀
+     */
+    static final String PORT_LINE_PREFIX = "FQ_SIGNER_PORT ";
+
+    private SignerProtocol() {
+    }
+
+    static byte[] encodeSign(int requestId, String url, String headers) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(256 + url.length() + headers.length());
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(0);
+        out.writeInt(requestId);
+        out.writeByte(SIGN);
+        writeString(out, url);
+        writeString(out, headers);
+        return finish(buffer);
+    }
+
+    static byte[] encodeOk(int requestId, Map<String, String> result) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(0);
+        out.writeInt(requestId);
+        out.writeByte(OK);
+        out.writeInt(result.size());
+        for (Map.Entry<String, String> entry : result.entrySet()) {
+            writeString(out, entry.getKey());
+            writeString(out, entry.getValue());
+        }
+        return finish(buffer);
+    }
+
+    static byte[] encodeError(int requestId, String message) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(0);
+        out.writeInt(requestId);
+        out.writeByte(ERROR);
+        writeString(out, message != null ? message : "unknown");
+        return finish(buffer);
+    }
+
+    /**
+     * 读取一帧；返回 null 表示连接已正常关闭
+     */
+    static Frame readFrame(DataInputStream in) throws IOException {
+        int length;
+        try {
+            length = in.readInt();
+        } catch (java.io.EOFException e) {
+            return null;
+        }
+        if (length < 5 || length > MAX_FRAME_BYTES) {
+            throw new IOException("非法帧长度: " + length);
+        }
+        int requestId = in.readInt();
+        byte type = in.readByte();
+        return new Frame(requestId, type, length - 5, in);
+    }
+
+    static Map<String, String> readResult(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        Map<String, String> result = new LinkedHashMap<>(Math.max(4, count * 2));
+        for (int i = 0; i < count; i++) {
+            result.put(readString(in), readString(in));
+        }
+        return result;
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_FRAME_BYTES) {
+            throw new IOException("非法字符串长度: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] finish(ByteArrayOutputStream buffer) {
+        byte[] frame = buffer.toByteArray();
+        int length = frame.length - 4;
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+        return frame;
+    }
+
+    /**
+     * 已读取帧头的帧，负载由调用方按类型继续从流中读取；不认识的类型须调用 {@link #skipPayload()} 跳过负载，
+     * 否则后续帧会从负载中间开始解析
+     */
+    static final class Frame {
+        final int requestId;
+        final byte type;
+        /**
+         * 负载字节数（帧长度减去请求ID与类型）
+         */
+        final int length;
+        final DataInputStream payload;
+
+        Frame(int requestId, byte type, int length, DataInputStream payload) {
+            this.requestId = requestId;
+            this.type = type;
+            this.length = length;
+            this.payload = payload;
+        }
+
+        void skipPayload() throws IOException {
+            int remaining = length;
+            while (remaining > 0) {
+                int skipped = payload.skipBytes(remaining);
+                if (skipped <= 0) {
+                    // skipBytes 在流末尾返回 0，用 read 区分流结束
+                    if (payload.read() < 0) {
+                        throw new java.io.EOFException("帧负载不完整，还差 " + remaining + " 字节");
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+        }
+    }
+}
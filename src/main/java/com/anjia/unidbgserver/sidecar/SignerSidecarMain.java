@@ -0,0 +1,236 @@
+package com.anjia.unidbgserver.sidecar;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.anjia.unidbgserver.config.UnidbgProperties;
+import com.anjia.unidbgserver.service.FQEncryptService;
+import com.anjia.unidbgserver.service.FQSignerPool;
+import com.anjia.unidbgserver.service.FQSigningDispatcher;
+import com.anjia.unidbgserver.unidbg.EmulatorBackend;
+import com.anjia.unidbgserver.unidbg.IdleFQ;
+import com.anjia.unidbgserver.unidbg.IdleFQSnapshot;
+import com.anjia.unidbgserver.unidbg.IdleFQState;
+import com.anjia.unidbgserver.utils.TempFileUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 签名子进程入口：在独立 JVM 中持有若干 IdleFQ 实例，通过本机回环端口接收父进程的签名请求。
+ * <p>
+ * 启动后在标准输出打印监听端口，只接受一个连接；连接断开（父进程退出）即退出进程。
+ * 参数形如 {@code --instances=2 --backend=unicorn2 --apk-path=/abs/base.apk --apk-classpath=... --extract-cache-dir=... --max-wall-clock-ms=5000
+ * --queue-timeout-ms=10000 --queue-capacity=256 --recycle-max-calls=50000 --template-clone=true --snapshot-path=... --verbose=false}。
+ * 启用模板克隆或快照时，第一个实例完整初始化（或从快照恢复）后采集状态，其余实例及回收重建的实例从该状态克隆。
+ */
+@Slf4j
+public final class SignerSidecarMain {
+
+    private static final int ACCEPT_TIMEOUT_MS = 60000;
+    private static final String PROBE_URL = "https://api5-normal-sinfonlineb.fqnovel.com/reading/user/info/v?aid=1967";
+
+    private SignerSidecarMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        ((Logger) LoggerFactory.getLogger(org.slf4j.Logger.ROOT_LOGGER_NAME)).setLevel(Level.INFO);
+
+        UnidbgProperties properties = new UnidbgProperties();
+        properties.setVerbose(Boolean.parseBoolean(options.getOrDefault("verbose", "false")));
+        properties.setApkPath(options.get("apk-path"));
+        properties.setApkClasspath(options.get("apk-classpath"));
+        TempFileUtils.setCacheDir(options.get("extract-cache-dir"));
+        IdleFQ.setExecutionBudget(Long.parseLong(options.getOrDefault("max-instructions", "0")),
+            Long.parseLong(options.getOrDefault("max-wall-clock-ms", "0")),
+            Boolean.parseBoolean(options.getOrDefault("instruction-histogram", "false")));
+        String libcFunctions = options.get("libc-functions");
+        IdleFQ.setLibcInterception(options.get("libc-mode"),
+            libcFunctions != null ? Arrays.asList(libcFunctions.split(",")) : null);
+        EmulatorBackend backend = EmulatorBackend.fromConfig(options.get("backend"), false);
+        if (backend == EmulatorBackend.AUTO) {
+            backend = EmulatorBackend.UNICORN2;
+        }
+        int instances = Math.max(1, Integer.parseInt(options.getOrDefault("instances", "1")));
+        long queueTimeoutMs = Long.parseLong(options.getOrDefault("queue-timeout-ms", "10000"));
+        int queueCapacity = Math.max(1, Integer.parseInt(options.getOrDefault("queue-capacity", "256")));
+        properties.setTemplateClone(Boolean.parseBoolean(options.getOrDefault("template-clone", "false")));
+        properties.setSnapshotPath(options.get("snapshot-path"));
+
+        EmulatorBackend selected = backend;
+        // 拦截状态无法克隆或写入快照
+        boolean cloneable = libcOff(options.get("libc-mode"));
+        File snapshotFile = cloneable && properties.getSnapshotPath() != null ? new File(properties.getSnapshotPath()) : null;
+        AtomicReference<FQEncryptService> first = new AtomicReference<>();
+        IdleFQState templateState = null;
+        if (cloneable && (properties.isTemplateClone() || snapshotFile != null)) {
+            templateState = bootTemplate(properties, selected, snapshotFile, first);
+        }
+        IdleFQState template = templateState;
+        FQSignerPool pool = new FQSignerPool(() -> createService(properties, selected, template, first),
+            instances, instances, 50, 1, 0);
+        pool.setRecyclePolicy(Long.parseLong(options.getOrDefault("recycle-max-calls", "0")),
+            Long.parseLong(options.getOrDefault("recycle-max-heap-growth-mb", "0")) << 20,
+            Integer.parseInt(options.getOrDefault("recycle-max-failures", "0")));
+        FQSigningDispatcher dispatcher = new FQSigningDispatcher(pool, instances, queueCapacity, queueTimeoutMs);
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            server.setSoTimeout(ACCEPT_TIMEOUT_MS);
+            System.out.println(SignerProtocol.PORT_LINE_PREFIX + server.getLocalPort());
+            System.out.flush();
+
+            try (Socket socket = server.accept()) {
+                socket.setTcpNoDelay(true);
+                serve(socket, dispatcher);
+            }
+        } finally {
+            dispatcher.close();
+            pool.close();
+            TempFileUtils.cleanup();
+        }
+        System.exit(0);
+    }
+
+    private static boolean libcOff(String mode) {
+        return mode == null || mode.trim().isEmpty() || "off".equalsIgnoreCase(mode.trim());
+    }
+
+    /**
+     * 启动第一个实例并返回其初始状态：配置了快照时优先从快照恢复，否则完整初始化后采集状态并写入快照。
+     * 状态在处理任何签名请求之前采集；失败时返回 null，所有实例冷启动。
+     */
+    private static IdleFQState bootTemplate(UnidbgProperties properties, EmulatorBackend backend, File snapshotFile,
+                                            AtomicReference<FQEncryptService> first) {
+        String snapshotKey = null;
+        try {
+            if (snapshotFile != null) {
+                snapshotKey = IdleFQ.computeSnapshotKey(properties.getApkPath(), properties.getApkClasspath());
+                IdleFQState state = IdleFQSnapshot.load(snapshotFile, snapshotKey, properties.isVerbose(),
+                    properties.getApkPath(), properties.getApkClasspath(), backend);
+                FQEncryptService restored = state != null ? restore(state) : null;
+                if (restored != null) {
+                    first.set(restored);
+                    log.info("签名子进程已从快照恢复: {}", snapshotFile.getAbsolutePath());
+                    return state;
+                }
+            }
+            FQEncryptService service = new FQEncryptService(properties, backend);
+            first.set(service);
+            IdleFQState state = service.captureState();
+            if (snapshotKey != null) {
+                // 快照先写临时文件再改名，多个子进程同时写入互不影响
+                IdleFQSnapshot.save(state, snapshotFile, snapshotKey);
+            }
+            return state;
+        } catch (Exception e) {
+            log.warn("签名子进程模板初始化失败，实例逐个冷启动: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 池内实例工厂：优先交出模板实例，其次从模板状态克隆，最后冷启动
+     */
+    private static FQEncryptService createService(UnidbgProperties properties, EmulatorBackend backend, IdleFQState template,
+                                                  AtomicReference<FQEncryptService> first) {
+        FQEncryptService service = first.getAndSet(null);
+        if (service != null) {
+            return service;
+        }
+        if (template != null) {
+            service = restore(template);
+            if (service != null) {
+                return service;
+            }
+            log.warn("签名子进程从模板克隆失败，退回冷启动");
+        }
+        return new FQEncryptService(properties, backend);
+    }
+
+    /**
+     * 从状态恢复实例并做一次探测签名校验；失败返回 null
+     */
+    private static FQEncryptService restore(IdleFQState state) {
+        FQEncryptService restored = null;
+        try {
+            restored = new FQEncryptService(state);
+            if (!restored.generateSignatureHeaders(PROBE_URL, "").isEmpty()) {
+                return restored;
+            }
+        } catch (Exception e) {
+            log.warn("签名子进程从状态恢复失败: {}", e.getMessage());
+        }
+        if (restored != null) {
+            restored.destroyEmulator();
+        }
+        return null;
+    }
+
+    /**
+     * 读循环：逐帧解析请求并提交给调度器，签名完成后立即写回响应（多个请求可同时在途）
+     */
+    private static void serve(Socket socket, FQSigningDispatcher dispatcher) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+        log.info("签名子进程已连接，开始处理请求");
+
+        SignerProtocol.Frame frame;
+        while ((frame = SignerProtocol.readFrame(in)) != null) {
+            int requestId = frame.requestId;
+            if (frame.type != SignerProtocol.SIGN) {
+                frame.skipPayload();
+                write(out, SignerProtocol.encodeError(requestId, "未知请求类型: " + frame.type));
+                continue;
+            }
+            String url = SignerProtocol.readString(frame.payload);
+            String headers = SignerProtocol.readString(frame.payload);
+            dispatcher.submit(url, service -> service.generateSignatureHeaders(url, headers))
+                .whenComplete((result, error) -> {
+                    try {
+                        write(out, error == null
+                            ? SignerProtocol.encodeOk(requestId, result)
+                            : SignerProtocol.encodeError(requestId, error.getClass().getSimpleName() + ": " + error.getMessage()));
+                    } catch (IOException e) {
+                        log.warn("写回签名结果失败: {}", e.getMessage());
+                    }
+                });
+        }
+        log.info("父进程连接已关闭，签名子进程退出");
+    }
+
+    private static void write(OutputStream out, byte[] frame) throws IOException {
+        synchronized (out) {
+            out.write(frame);
+            out.flush();
+        }
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            if (eq > 2) {
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            } else {
+                options.put(arg.substring(2), "true");
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,38 @@
+package com.anjia.unidbgserver.unidbg;
+
+/**
+ * 单次签名超出指令数或墙钟时间预算，模拟已被强制中止。
+ * 中止后模拟器状态不可信，持有该实例的调用方应将其隔离并重建。
+ */
+public class EmulationBudgetExceededException extends RuntimeException {
+
+    private final String reason;
+    private final long instructions;
+    private final long elapsedMs;
+
+    public EmulationBudgetExceededException(String reason, long instructions, long elapsedMs) {
+        super("签名超出执行预算(" + reason + ") - 指令数:" + (instructions >= 0 ? String.valueOf(instructions) : "未统计")
+            + ", 耗时:" + elapsedMs + "ms");
+        this.reason = reason;
+        this.instructions = instructions;
+        this.elapsedMs = elapsedMs;
+    }
+
+    /**
+     * 超出的预算类型：instructions 或 wall-clock
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    /**
+     * 中止时已执行的指令数；未开启指令计数时为 -1
+     */
+    public long getInstructions() {
+        return instructions;
+    }
+
+    public long getElapsedMs() {
+        return elapsedMs;
+    }
+}
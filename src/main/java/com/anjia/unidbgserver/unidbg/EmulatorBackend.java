@@ -0,0 +1,63 @@
+package com.anjia.unidbgserver.unidbg;
+
+import com.github.unidbg.arm.backend.BackendFactory;
+import com.github.unidbg.arm.backend.DynarmicFactory;
+import com.github.unidbg.arm.backend.Unicorn2Factory;
+
+import java.util.Locale;
+
+/**
+ * 模拟器执行后端
+ */
+public enum EmulatorBackend {
+
+    /**
+     * Unicorn2 解释执行，兼容性最好
+     */
+    UNICORN2,
+
+    /**
+     * Dynarmic JIT，原生库不可用时由 unidbg 自动退回 Unicorn
+     */
+    DYNARMIC,
+
+    /**
+     * 启动时在各后端上试跑签名，校验结果一致后选用较快的一个
+     */
+    AUTO;
+
+    /**
+     * 解析配置的后端名称；未配置时沿用旧的 dynarmic 开关
+     *
+     * @param name     unicorn2 / dynarmic / auto，大小写不敏感
+     * @param dynarmic 旧配置 application.unidbg.dynarmic
+     */
+    public static EmulatorBackend fromConfig(String name, boolean dynarmic) {
+        if (name == null || name.trim().isEmpty()) {
+            return dynarmic ? DYNARMIC : UNICORN2;
+        }
+        try {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("不支持的模拟器后端: " + name + "，可选值: unicorn2, dynarmic, auto");
+        }
+    }
+
+    /**
+     * 创建 unidbg 后端工厂
+     */
+    public BackendFactory createFactory() {
+        switch (this) {
+            case DYNARMIC:
+                return new DynarmicFactory(true);
+            case UNICORN2:
+                return new Unicorn2Factory(true);
+            default:
+                throw new IllegalStateException("AUTO 需先经过启动校准确定具体后端");
+        }
+    }
+
+    public String configName() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,197 @@
+package com.anjia.unidbgserver.unidbg;
+
+import com.github.unidbg.arm.ARMEmulator;
+import com.github.unidbg.arm.backend.Backend;
+import com.github.unidbg.linux.ARM64SyscallHandler;
+import com.github.unidbg.memory.SvcMemory;
+import unicorn.Arm64Const;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 带快速路径的 ARM64 系统调用处理器：高频的时间类调用（clock_gettime、gettimeofday）直接写回结果，
+ * 不进入 unidbg 的通用分发；同时按调用号统计每个系统调用的次数（进程级）。
+ * <p>
+ * 后端校准时可按线程固定时钟（见 {@link #pinClock}），使不同后端对同一输入的签名可以逐值比较。
+ */
+final class FastPathSyscallHandler extends ARM64SyscallHandler {
+
+    private static final int NR_GETTIMEOFDAY = 169;
+    private static final int NR_CLOCK_GETTIME = 113;
+    private static final int CLOCK_REALTIME = 0;
+    private static final int CLOCK_MONOTONIC = 1;
+    private static final int CLOCK_MONOTONIC_RAW = 4;
+    private static final int CLOCK_REALTIME_COARSE = 5;
+    private static final int CLOCK_MONOTONIC_COARSE = 6;
+    private static final int CLOCK_BOOTTIME = 7;
+    private static final int MAX_NR = 512;
+
+    private static final Map<Integer, String> NAMES = new HashMap<>();
+
+    static {
+        NAMES.put(48, "faccessat");
+        NAMES.put(56, "openat");
+        NAMES.put(57, "close");
+        NAMES.put(61, "getdents64");
+        NAMES.put(62, "lseek");
+        NAMES.put(63, "read");
+        NAMES.put(64, "write");
+        NAMES.put(78, "readlinkat");
+        NAMES.put(79, "newfstatat");
+        NAMES.put(80, "fstat");
+        NAMES.put(98, "futex");
+        NAMES.put(NR_CLOCK_GETTIME, "clock_gettime");
+        NAMES.put(NR_GETTIMEOFDAY, "gettimeofday");
+        NAMES.put(172, "getpid");
+        NAMES.put(178, "gettid");
+        NAMES.put(214, "brk");
+        NAMES.put(215, "munmap");
+        NAMES.put(222, "mmap");
+        NAMES.put(226, "mprotect");
+    }
+
+    private static final AtomicLongArray COUNTS = new AtomicLongArray(MAX_NR);
+    private static final AtomicLong FAST_PATH = new AtomicLong();
+
+    // 单调时钟以进程启动为起点，不暴露宿主的开机时长
+    private static final long MONOTONIC_BASE_NANOS = System.nanoTime();
+
+    // 按线程固定的时钟（毫秒），仅在有线程固定时钟时才查询，避免影响签名热路径
+    private static final ThreadLocal<Long> PINNED_MILLIS = new ThreadLocal<>();
+    private static final AtomicInteger PINNED_THREADS = new AtomicInteger();
+
+    FastPathSyscallHandler(SvcMemory svcMemory) {
+        super(svcMemory);
+    }
+
+    @Override
+    public void hook(Backend backend, int intno, int swi, Object user) {
+        // svc #0 为 Linux 系统调用；非零立即数是 unidbg 自身的回调
+        if (intno == ARMEmulator.EXCP_SWI && swi == 0) {
+            int nr = backend.reg_read(Arm64Const.UC_ARM64_REG_X8).intValue();
+            if (nr >= 0 && nr < MAX_NR) {
+                COUNTS.incrementAndGet(nr);
+            }
+            if (nr == NR_CLOCK_GETTIME && clockGettime(backend)) {
+                FAST_PATH.incrementAndGet();
+                return;
+            }
+            if (nr == NR_GETTIMEOFDAY && gettimeofday(backend)) {
+                FAST_PATH.incrementAndGet();
+                return;
+            }
+        }
+        super.hook(backend, intno, swi, user);
+    }
+
+    /**
+     * 固定当前线程上模拟器看到的实时与单调时钟；传入 null 恢复真实时钟
+     */
+    static void pinClock(Long epochMillis) {
+        Long previous = PINNED_MILLIS.get();
+        if (epochMillis == null) {
+            if (previous != null) {
+                PINNED_MILLIS.remove();
+                PINNED_THREADS.decrementAndGet();
+            }
+            return;
+        }
+        PINNED_MILLIS.set(epochMillis);
+        if (previous == null) {
+            PINNED_THREADS.incrementAndGet();
+        }
+    }
+
+    private static Long pinnedMillis() {
+        return PINNED_THREADS.get() > 0 ? PINNED_MILLIS.get() : null;
+    }
+
+    private static boolean clockGettime(Backend backend) {
+        int clock = backend.reg_read(Arm64Const.UC_ARM64_REG_X0).intValue();
+        long tp = backend.reg_read(Arm64Const.UC_ARM64_REG_X1).longValue();
+        Long pinned = pinnedMillis();
+        long nanos;
+        switch (clock) {
+            case CLOCK_REALTIME:
+            case CLOCK_REALTIME_COARSE:
+                nanos = TimeUnit.MILLISECONDS.toNanos(pinned != null ? pinned : System.currentTimeMillis());
+                break;
+            case CLOCK_MONOTONIC:
+            case CLOCK_MONOTONIC_RAW:
+            case CLOCK_MONOTONIC_COARSE:
+            case CLOCK_BOOTTIME:
+                nanos = pinned != null ? TimeUnit.SECONDS.toNanos(1) : System.nanoTime() - MONOTONIC_BASE_NANOS;
+                break;
+            default:
+                // 其他时钟（CPU 时间等）交给 unidbg 处理
+                return false;
+        }
+        if (tp == 0) {
+            return false;
+        }
+        backend.mem_write(tp, pack(nanos / 1000000000L, nanos % 1000000000L));
+        backend.reg_write(Arm64Const.UC_ARM64_REG_X0, 0);
+        return true;
+    }
+
+    private static boolean gettimeofday(Backend backend) {
+        long tv = backend.reg_read(Arm64Const.UC_ARM64_REG_X0).longValue();
+        long tz = backend.reg_read(Arm64Const.UC_ARM64_REG_X1).longValue();
+        if (tv == 0 || tz != 0) {
+            return false;
+        }
+        Long pinned = pinnedMillis();
+        long micros = TimeUnit.MILLISECONDS.toMicros(pinned != null ? pinned : System.currentTimeMillis());
+        backend.mem_write(tv, pack(micros / 1000000L, micros % 1000000L));
+        backend.reg_write(Arm64Const.UC_ARM64_REG_X0, 0);
+        return true;
+    }
+
+    /**
+     * 按小端序打包两个 64 位字段（timespec / timeval）
+     */
+    private static byte[] pack(long first, long second) {
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (first >>> (i * 8));
+            bytes[8 + i] = (byte) (second >>> (i * 8));
+        }
+        return bytes;
+    }
+
+    /**
+     * 系统调用统计：总次数、走快速路径的次数，以及按次数降序的各调用
+     */
+    static Map<String, Object> getStats() {
+        List<long[]> entries = new ArrayList<>();
+        long total = 0;
+        for (int nr = 0; nr < MAX_NR; nr++) {
+            long count = COUNTS.get(nr);
+            if (count > 0) {
+                entries.add(new long[]{nr, count});
+                total += count;
+            }
+        }
+        Collections.sort(entries, (a, b) -> Long.compare(b[1], a[1]));
+        Map<String, Long> byCall = new LinkedHashMap<>();
+        for (long[] entry : entries) {
+            String name = NAMES.get((int) entry[0]);
+            byCall.put(name != null ? name : "nr_" + entry[0], entry[1]);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("total", total);
+        stats.put("fastPath", FAST_PATH.get());
+        stats.put("memoryFsHits", MemoryRootfs.getHits());
+        stats.put("calls", byCall);
+        return stats;
+    }
+}
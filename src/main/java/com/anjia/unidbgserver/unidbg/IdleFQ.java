@@ -4,31 +4,55 @@ import com.anjia.unidbgserver.utils.TempFileUtils;
 import com.github.unidbg.AndroidEmulator;
 import com.github.unidbg.Emulator;
 import com.github.unidbg.Module;
-import com.github.unidbg.arm.backend.Unicorn2Factory;
+import com.github.unidbg.arm.backend.Backend;
+import com.github.unidbg.arm.backend.BlockHook;
+import com.github.unidbg.arm.backend.UnHook;
 import com.github.unidbg.file.FileResult;
 import com.github.unidbg.file.IOResolver;
 import com.github.unidbg.file.linux.AndroidFileIO;
-import com.github.unidbg.linux.android.AndroidEmulatorBuilder;
+import com.github.unidbg.arm.backend.BackendFactory;
+import com.github.unidbg.linux.android.AndroidARM64Emulator;
 import com.github.unidbg.linux.android.AndroidResolver;
 import com.github.unidbg.linux.android.dvm.*;
 import com.github.unidbg.linux.android.dvm.array.ArrayObject;
 import com.github.unidbg.linux.android.dvm.array.ByteArray;
 import com.github.unidbg.linux.android.dvm.wrapper.DvmBoolean;
+import com.github.unidbg.linux.file.ByteArrayFileIO;
 import com.github.unidbg.linux.file.SimpleFileIO;
 import com.github.unidbg.memory.Memory;
+import com.github.unidbg.memory.MemoryMap;
+import com.github.unidbg.memory.SvcMemory;
 import com.github.unidbg.pointer.UnidbgPointer;
 import com.github.unidbg.spi.SyscallHandler;
+import com.github.unidbg.unix.UnixSyscallHandler;
 import com.github.unidbg.virtualmodule.android.AndroidModule;
 import com.github.unidbg.virtualmodule.android.JniGraphics;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.collections4.map.LinkedMap;
+import unicorn.Arm64Const;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Field;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
@@ -46,6 +70,44 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
     private static final String APK_INSTALL_PATH = "/data/app/com.dragon.read.oversea.gp-q5NyjSN9BLSTVBJ54kg7YA==/base.apk";
     private static final int SDK_VERSION = 23;
 
+    // 模板状态回放相关常量
+    private static final int STATE_COPY_CHUNK = 1 << 20;
+    private static final int MAP_PRIVATE = 0x02;
+    private static final int MAP_FIXED = 0x10;
+    private static final int MAP_ANONYMOUS = 0x20;
+    private static final int PROT_WRITE = 0x2;
+    private static final int PROT_EXEC = 0x4;
+
+    /**
+     * 只读文件内容（证书等）在所有实例间共享，按文件路径缓存
+     */
+    private static final Map<String, byte[]> SHARED_FILE_BYTES = new ConcurrentHashMap<>();
+
+    /**
+     * 超过该大小的 APK 不放入内存，仍按文件打开
+     */
+    private static final long MAX_IN_MEMORY_FILE_BYTES = 256L << 20;
+
+    /**
+     * 签名执行预算（进程级配置，见 {@link #setExecutionBudget}）：单次签名的指令数与墙钟时间上限，0 表示不限
+     */
+    private static final String INSTRUCTION_REASON = "instructions";
+    private static final String WALL_CLOCK_REASON = "wall-clock";
+    private static volatile long budgetMaxInstructions;
+    private static volatile long budgetMaxWallClockMs;
+    private static volatile boolean countInstructions;
+    private static volatile String libcInterceptionMode = LibcInterceptor.MODE_OFF;
+    private static volatile List<String> libcInterceptionFunctions = new ArrayList<>(LibcInterceptor.SUPPORTED);
+    private static final LogHistogram INSTRUCTION_HISTOGRAM = new LogHistogram();
+    private static final LogHistogram LATENCY_HISTOGRAM = new LogHistogram();
+    private static final AtomicLong INSTRUCTION_ABORTS = new AtomicLong();
+    private static final AtomicLong WALL_CLOCK_ABORTS = new AtomicLong();
+    private static final ScheduledExecutorService WATCHDOG = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "fq-sign-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final AndroidEmulator emulator;
     private final VM vm;
     private final Module module;
@@ -54,6 +116,49 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
     private final boolean loggable;
     private final String apkPath;
     private final String apkClasspath;
+    private final EmulatorBackend backend;
+
+    // JNI 回调分发表：签名 -> 处理器，初始化时构建一次
+    private final Map<String, JniObjectHandler> staticObjectHandlers = new HashMap<>();
+    private final Map<String, JniObjectHandler> objectHandlers = new HashMap<>();
+
+    // JNI 回调缓存：DvmClass 句柄（首次使用时解析）、证书内容、固定栈帧
+    private DvmClass longClass;
+    private DvmClass integerClass;
+    private DvmClass threadClass;
+    private DvmClass stackTraceElementClass;
+    private byte[] msCertBytes;
+    private StackTraceElement[] cannedStackTrace;
+
+    // JNI 回调计数：按签名累计，以及每次签名触发的回调数
+    private final Map<String, AtomicLong> jniCallCounts = new ConcurrentHashMap<>();
+    private final AtomicLong signatureCalls = new AtomicLong();
+    private final AtomicLong signatureCallbacks = new AtomicLong();
+    private volatile int lastSignatureCallbacks;
+    private int currentCallbacks;
+
+    private boolean libcIntercepted;
+
+    // 执行预算：看门狗与签名线程通过 budgetLock 协调，保证 emu_stop 只作用于当前这次签名
+    private final Object budgetLock = new Object();
+    private boolean emulating;
+    private long callSequence;
+    private volatile String abortReason;
+    // 指令计数钩子：0 未安装，1 已安装，-1 后端不支持
+    private int instructionHookState;
+    private long callInstructions;
+    private long callInstructionLimit;
+
+    // 签名参数缓冲区（URL / header），首次签名时在模拟器内分配，之后原地复用
+    private ScratchArena urlScratch;
+    private ScratchArena headerScratch;
+
+    // 模拟器 rootfs：SDK 访问的目录与文件在内存中应答
+    private final MemoryRootfs memoryRootfs = new MemoryRootfs();
+    private byte[] soMetasecMlBytes;
+
+    // 构造各阶段耗时（毫秒）：资源准备、模拟器创建、载入 so、JNI_OnLoad 或状态回放
+    private final Map<String, Long> initPhaseMs = new LinkedHashMap<>();
 
     // 临时文件缓存
     private File tempApkFile;
@@ -63,20 +168,48 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
     private File tempMsCertFile;
 
     public IdleFQ(boolean loggable, String apkPath, String apkClasspath) {
+        this(loggable, apkPath, apkClasspath, EmulatorBackend.UNICORN2);
+    }
+
+    /**
+     * @param backend 模拟器执行后端（UNICORN2 或 DYNARMIC）
+     */
+    public IdleFQ(boolean loggable, String apkPath, String apkClasspath, EmulatorBackend backend) {
+        this(loggable, apkPath, apkClasspath, backend, null);
+    }
+
+    /**
+     * 从模板状态克隆：载入 so 后直接回放模板在 JNI_OnLoad 之后的内存映射、寄存器与 DVM 状态，跳过 JNI_OnLoad。
+     * <p>
+     * so 仍经 unidbg 加载器映射与重定位：加载器在解析导入符号时注册的 svc 跳板（dlopen/dlsym 等）
+     * 与虚拟模块处理器只存在于 Java 侧，不在采集的内存中，直接映射内存无法重建。
+     * 克隆只跳过两个 so 的 init_array（其结果会被回放覆盖）与 JNI_OnLoad，各阶段耗时见 {@link #getInitPhases()}。
+     *
+     * @param template 模板实例通过 {@link #captureState()} 采集的状态
+     */
+    public IdleFQ(IdleFQState template) {
+        this(template.isLoggable(), template.getApkPath(), template.getApkClasspath(), template.getBackend(), template);
+    }
+
+    private IdleFQ(boolean loggable, String apkPath, String apkClasspath, EmulatorBackend backend, IdleFQState template) {
         this.loggable = loggable;
         this.apkPath = apkPath;
         this.apkClasspath = apkClasspath;
+        this.backend = backend;
         try {
+            long phaseStart = System.nanoTime();
             // 初始化临时文件
             initTempFiles();
+            phaseStart = recordPhase("resources", phaseStart);
 
-            // 创建模拟器
-            emulator = AndroidEmulatorBuilder
-                .for64Bit()
-                .setRootDir(tempRootfsDir)
-                .setProcessName(PACKAGE_NAME)
-                .addBackendFactory(new Unicorn2Factory(true))
-                .build();
+            // 创建模拟器：系统调用处理器替换为带快速路径与计数的版本
+            List<BackendFactory> backendFactories = Collections.singletonList(backend.createFactory());
+            emulator = new AndroidARM64Emulator(PACKAGE_NAME, tempRootfsDir, backendFactories) {
+                @Override
+                protected UnixSyscallHandler<AndroidFileIO> createSyscallHandler(SvcMemory svcMemory) {
+                    return new FastPathSyscallHandler(svcMemory);
+                }
+            };
 
             // 设置inode和uid
             initEmulatorSettings();
@@ -93,10 +226,12 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
             vm = emulator.createDalvikVM();
             vm.setJni(this);
             vm.setVerbose(loggable);
+            initJniDispatch();
 
             // 导入第三方虚拟模块
             new AndroidModule(emulator, vm).register(memory);
             new JniGraphics(emulator, vm).register(memory);
+            phaseStart = recordPhase("emulator", phaseStart);
 
             // 载入依赖so库
             vm.loadLibrary(tempSoCShareFile, false);
@@ -106,35 +241,175 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
             DvmClass a4a = vm.resolveClass("ms/bd/c/a4$a", m);
             DvmClass ms = vm.resolveClass("com/bytedance/mobsec/metasec/ml/MS", a4a);
 
-            // 加载主要so库
-            DalvikModule dm = vm.loadLibrary(tempSoMetasecMlFile, true);
+            // 加载主要so库；克隆时不执行 init_array（依赖库的初始化函数也随之跳过），其写入的内存由回放覆盖
+            DalvikModule dm = vm.loadLibrary(tempSoMetasecMlFile, template == null);
             module = dm.getModule();
-            dm.callJNI_OnLoad(emulator);
-
-            log.info("IdleFQ初始化完成");
+            phaseStart = recordPhase("libraries", phaseStart);
+            if (template == null) {
+                String libcMode = libcInterceptionMode;
+                if (!LibcInterceptor.MODE_OFF.equalsIgnoreCase(libcMode)) {
+                    libcIntercepted = LibcInterceptor.install(emulator, libcMode, libcInterceptionFunctions);
+                }
+                dm.callJNI_OnLoad(emulator);
+                recordPhase("onLoad", phaseStart);
+                log.info("IdleFQ初始化完成，各阶段耗时(ms): {}", initPhaseMs);
+            } else {
+                restoreState(template);
+                recordPhase("replay", phaseStart);
+                log.info("IdleFQ已从模板克隆完成，各阶段耗时(ms): {}", initPhaseMs);
+            }
         } catch (Exception e) {
             log.error("IdleFQ初始化失败", e);
             throw new RuntimeException("IdleFQ初始化失败", e);
         }
     }
 
+    private long recordPhase(String phase, long phaseStart) {
+        long now = System.nanoTime();
+        initPhaseMs.put(phase, TimeUnit.NANOSECONDS.toMillis(now - phaseStart));
+        return now;
+    }
+
+    /**
+     * 构造各阶段耗时（毫秒）：resources、emulator、libraries，以及 onLoad（完整初始化）或 replay（克隆/快照恢复）
+     */
+    public Map<String, Long> getInitPhases() {
+        return Collections.unmodifiableMap(initPhaseMs);
+    }
+
+    /**
+     * 构建 JNI 回调分发表并缓存证书内容与栈帧，避免每次回调比较长签名串、重复解析类和读取磁盘
+     */
+    private void initJniDispatch() throws IOException {
+        if (tempMsCertFile != null && tempMsCertFile.exists()) {
+            msCertBytes = SHARED_FILE_BYTES.computeIfAbsent(tempMsCertFile.getAbsolutePath(), IdleFQ::readFileBytes);
+        } else {
+            log.warn("证书文件不存在: {}", tempMsCertFile);
+        }
+        // 栈帧在初始化时采集一次（与 JNI_OnLoad 时 native 看到的一致），之后每次回调复用
+        cannedStackTrace = Thread.currentThread().getStackTrace();
+
+        staticObjectHandlers.put("com/bytedance/mobsec/metasec/ml/MS->b(IIJLjava/lang/String;Ljava/lang/Object;)Ljava/lang/Object;",
+            (vm, self, vaList) -> handleMSMethod(vm, vaList.getIntArg(0)));
+        staticObjectHandlers.put("java/lang/Thread->currentThread()Ljava/lang/Thread;",
+            (vm, self, vaList) -> threadClass(vm).newObject(Thread.currentThread()));
+
+        objectHandlers.put("java/lang/Thread->getStackTrace()[Ljava/lang/StackTraceElement;", (vm, self, vaList) -> {
+            DvmClass elementClass = stackTraceElementClass(vm);
+            DvmObject[] objs = new DvmObject[cannedStackTrace.length];
+            for (int i = 0; i < cannedStackTrace.length; i++) {
+                objs[i] = elementClass.newObject(cannedStackTrace[i]);
+            }
+            return new ArrayObject(objs);
+        });
+        objectHandlers.put("java/lang/StackTraceElement->getClassName()Ljava/lang/String;",
+            (vm, self, vaList) -> new StringObject(vm, ((StackTraceElement) self.getValue()).getClassName()));
+        objectHandlers.put("java/lang/StackTraceElement->getMethodName()Ljava/lang/String;",
+            (vm, self, vaList) -> new StringObject(vm, ((StackTraceElement) self.getValue()).getMethodName()));
+        objectHandlers.put("java/lang/Thread->getBytes(Ljava/lang/String;)[B", (vm, self, vaList) -> {
+            String arg0 = (String) vaList.getObjectArg(0).getValue();
+            if (loggable) {
+                log.debug("java/lang/Thread->getBytes arg0: {}", arg0);
+            }
+            return new ByteArray(vm, arg0.getBytes(StandardCharsets.UTF_8));
+        });
+        objectHandlers.put("java/lang/Long->longValue()J", (vm, self, vaList) -> {
+            Object value = self.getValue();
+            // 返回 null 时交给父类处理
+            return value instanceof Long ? (DvmObject<Long>) value : null;
+        });
+    }
+
+    private static byte[] readFileBytes(String path) {
+        try {
+            return TempFileUtils.readAllBytes(new File(path));
+        } catch (IOException e) {
+            throw new IllegalStateException("读取文件失败: " + path, e);
+        }
+    }
+
+    private DvmClass longClass(BaseVM vm) {
+        if (longClass == null) {
+            longClass = vm.resolveClass("java/lang/Long");
+        }
+        return longClass;
+    }
+
+    private DvmClass integerClass(BaseVM vm) {
+        if (integerClass == null) {
+            integerClass = vm.resolveClass("java.lang.Integer");
+        }
+        return integerClass;
+    }
+
+    private DvmClass threadClass(BaseVM vm) {
+        if (threadClass == null) {
+            threadClass = vm.resolveClass("java/lang/Thread");
+        }
+        return threadClass;
+    }
+
+    private DvmClass stackTraceElementClass(BaseVM vm) {
+        if (stackTraceElementClass == null) {
+            stackTraceElementClass = vm.resolveClass("java/lang/StackTraceElement");
+        }
+        return stackTraceElementClass;
+    }
+
+    /**
+     * 记录一次 JNI 回调
+     */
+    private void countCallback(String signature) {
+        currentCallbacks++;
+        AtomicLong counter = jniCallCounts.get(signature);
+        if (counter == null) {
+            counter = jniCallCounts.computeIfAbsent(signature, key -> new AtomicLong());
+        }
+        counter.incrementAndGet();
+    }
+
+    /**
+     * JNI 回调统计：签名次数、平均每次签名的回调数、最近一次签名的回调数，以及按方法签名的累计次数
+     */
+    public Map<String, Object> getJniCallbackStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long calls = signatureCalls.get();
+        stats.put("signatures", calls);
+        stats.put("avgCallbacksPerSignature", calls > 0 ? (double) signatureCallbacks.get() / calls : 0D);
+        stats.put("lastSignatureCallbacks", lastSignatureCallbacks);
+        Map<String, Long> counts = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : jniCallCounts.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        stats.put("callbacks", counts);
+        return stats;
+    }
+
+    /**
+     * JNI 对象回调处理器；返回 null 表示交给父类默认实现
+     */
+    @FunctionalInterface
+    private interface JniObjectHandler {
+        DvmObject<?> handle(BaseVM vm, DvmObject<?> self, VaList vaList);
+    }
+
     /**
      * 初始化临时文件
      */
     private void initTempFiles() throws IOException {
         try {
-            tempApkFile = resolveApkFile();
+            tempApkFile = resolveApkFile(apkPath, apkClasspath);
             tempSoMetasecMlFile = TempFileUtils.getTempFile(SO_METASEC_ML_PATH);
             tempSoCShareFile = TempFileUtils.getTempFile(SO_C_SHARE_PATH);
             tempMsCertFile = TempFileUtils.getTempFile(MS_CERT_FILE_PATH);
 
-            // 处理rootfs目录
-            tempRootfsDir = createTempDir("fq_rootfs");
-            prepareRootfs(tempRootfsDir.toPath());
-
             if (tempApkFile == null || !tempApkFile.exists()) {
                 throw new IOException("APK 文件不存在或不可用");
             }
+
+            // 处理rootfs目录：磁盘目录仅作为未登记路径的兜底，常用路径由内存文件系统应答
+            tempRootfsDir = TempFileUtils.createPrivateDir("fq_rootfs");
+            prepareRootfs();
             if (loggable) {
                 log.debug("临时APK文件: {}", tempApkFile.getAbsolutePath());
                 log.debug("临时SO主文件: {}", tempSoMetasecMlFile.getAbsolutePath());
@@ -149,25 +424,48 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
     }
 
     /**
-     * 准备模拟器 rootfs 的关键目录/文件，避免 SDK 初始化阶段因路径不存在而失败。
+     * 在内存文件系统中准备 rootfs 的关键目录/文件，避免 SDK 初始化阶段因路径不存在而失败。
+     * APK 与 so 的内容以内存映射读取一次，在进程内所有实例间共享。
      */
-    private void prepareRootfs(Path rootfs) throws IOException {
-        // MS SDK 可能会依赖该目录/文件来存放持久化数据
-        Path msDataDir = rootfs.resolve("data/user/0/" + PACKAGE_NAME + "/files");
-        Files.createDirectories(msDataDir);
+    private void prepareRootfs() {
+        // MS SDK 可能会依赖该目录/文件来存放持久化数据（每个实例独立、可写）
+        memoryRootfs.addFile("/data/user/0/" + PACKAGE_NAME + "/files/.msdata", new byte[0], true);
 
-        Path msDataFile = msDataDir.resolve(".msdata");
-        if (!Files.exists(msDataFile)) {
-            Files.createFile(msDataFile);
+        // 部分逻辑会访问 /data/system、/data/app、/sdcard/android 等目录
+        memoryRootfs.addDirectory("/data/system");
+        memoryRootfs.addDirectory("/data/app");
+        memoryRootfs.addDirectory("/sdcard/android");
+
+        if (tempApkFile.length() <= MAX_IN_MEMORY_FILE_BYTES) {
+            byte[] apkBytes = SHARED_FILE_BYTES.computeIfAbsent(tempApkFile.getAbsolutePath(), IdleFQ::readFileBytes);
+            memoryRootfs.addFile(APK_INSTALL_PATH, apkBytes, false);
+        } else {
+            log.info("APK 较大({}字节)，按文件方式提供: {}", tempApkFile.length(), tempApkFile.getAbsolutePath());
         }
+        soMetasecMlBytes = SHARED_FILE_BYTES.computeIfAbsent(tempSoMetasecMlFile.getAbsolutePath(), IdleFQ::readFileBytes);
+    }
 
-        // 部分逻辑会访问 /data/system、/data/app、/sdcard/android 等目录
-        Files.createDirectories(rootfs.resolve("data/system"));
-        Files.createDirectories(rootfs.resolve("data/app"));
-        Files.createDirectories(rootfs.resolve("sdcard/android"));
+    /**
+     * 计算快照键：APK、libmetasec_ml.so 与 ms_16777218.bin 各自内容 SHA-256 的 SHA-256。
+     * 任一资源变化都会使旧快照失效；提取缓存中的资源直接使用其内容哈希，无需重新读取。
+     */
+    public static String computeSnapshotKey(String apkPath, String apkClasspath) throws IOException {
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        File[] files = {
+            resolveApkFile(apkPath, apkClasspath),
+            TempFileUtils.getTempFile(SO_METASEC_ML_PATH),
+            TempFileUtils.getTempFile(MS_CERT_FILE_PATH)
+        };
+        for (File file : files) {
+            if (file == null || !file.isFile()) {
+                throw new IOException("计算快照键失败，资源文件不可用");
+            }
+            digest.update(TempFileUtils.sha256(file).getBytes(StandardCharsets.US_ASCII));
+        }
+        return Hex.encodeHexString(digest.digest());
     }
 
-    private File resolveApkFile() throws IOException {
+    private static File resolveApkFile(String apkPath, String apkClasspath) throws IOException {
         if (apkPath != null && !apkPath.trim().isEmpty()) {
             File apkFile = new File(apkPath.trim());
             if (!apkFile.exists() || !apkFile.isFile()) {
@@ -197,19 +495,6 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
         throw new IOException("未找到 APK：请配置 application.unidbg.apk-path（本地文件）或 application.unidbg.apk-classpath（classpath 资源）；默认查找 " + DEFAULT_APK_CLASSPATH);
     }
 
-    /**
-     * 创建临时目录
-     */
-    private File createTempDir(String prefix) throws IOException {
-        File tempDir = File.createTempFile(prefix, "");
-        tempDir.delete();
-        if (!tempDir.mkdirs()) {
-            throw new IOException("无法创建临时目录: " + tempDir);
-        }
-        tempDir.deleteOnExit();
-        return tempDir;
-    }
-
     /**
      * 初始化模拟器设置
      */
@@ -224,11 +509,157 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
         emulator.set("uid", 10074);
 
         // 可选的多线程支持配置
-        // emulator.getBackend().registerEmuCountHook(100000);
+        // 单次签名的指令数/墙钟预算见 setExecutionBudget
         // emulator.getSyscallHandler().setVerbose(true);
         // emulator.getSyscallHandler().setEnableThreadDispatcher(true);
     }
 
+    /**
+     * 采集当前模拟器状态，供 {@link #IdleFQ(IdleFQState)} 克隆使用。
+     * 应在 JNI_OnLoad 完成后、尚未处理业务请求时调用。
+     */
+    public IdleFQState captureState() {
+        if (libcIntercepted) {
+            // 导入表已指向本实例的拦截跳板，克隆实例中不存在对应处理器
+            throw new IllegalStateException("已启用 libc 拦截的实例不能作为克隆模板");
+        }
+        Backend backend = emulator.getBackend();
+        List<IdleFQState.Region> regions = new ArrayList<>();
+        for (MemoryMap map : memory.getMemoryMap()) {
+            byte[] data = new byte[(int) map.size];
+            for (int offset = 0; offset < data.length; offset += STATE_COPY_CHUNK) {
+                int length = Math.min(STATE_COPY_CHUNK, data.length - offset);
+                System.arraycopy(backend.mem_read(map.base + offset, length), 0, data, offset, length);
+            }
+            regions.add(new IdleFQState.Region(map.base, map.prot, data));
+        }
+        regions.sort(Comparator.comparingLong(IdleFQState.Region::getBase));
+        long threadPointer = backend.reg_read(Arm64Const.UC_ARM64_REG_TPIDR_EL0).longValue();
+        return new IdleFQState(loggable, apkPath, apkClasspath, this.backend, regions, captureClassNames(), threadPointer);
+    }
+
+    /**
+     * 配置的后端
+     */
+    public EmulatorBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * 当前模拟器已映射的内存总字节数（so、栈与 native 堆），用于观察长期运行的内存增长
+     */
+    public long getMappedBytes() {
+        long total = 0;
+        for (MemoryMap map : memory.getMemoryMap()) {
+            total += map.size;
+        }
+        return total;
+    }
+
+    /**
+     * 模拟器内存按权限分类统计：可写区域每个实例独有；只读与可执行区域（so 代码段、只读数据）
+     * 各实例内容相同，但 unicorn2 / dynarmic 后端各自持有客体内存，无法跨实例共享映射。
+     */
+    public Map<String, Long> getMemoryBreakdown() {
+        long total = 0;
+        long writable = 0;
+        long executable = 0;
+        long readOnly = 0;
+        for (MemoryMap map : memory.getMemoryMap()) {
+            total += map.size;
+            if ((map.prot & PROT_WRITE) != 0) {
+                writable += map.size;
+            } else if ((map.prot & PROT_EXEC) != 0) {
+                executable += map.size;
+            } else {
+                readOnly += map.size;
+            }
+        }
+        Map<String, Long> breakdown = new LinkedHashMap<>();
+        breakdown.put("totalBytes", total);
+        breakdown.put("writableBytes", writable);
+        breakdown.put("executableBytes", executable);
+        breakdown.put("readOnlyBytes", readOnly);
+        return breakdown;
+    }
+
+    /**
+     * 实际生效的 unidbg 后端实现（Dynarmic 原生库不可用时会退回 Unicorn）
+     */
+    public String getBackendImplementation() {
+        return emulator.getBackend().getClass().getSimpleName();
+    }
+
+    /**
+     * 读取 DVM 类表中的类名。native 侧在 JNI_OnLoad 中通过 FindClass 拿到的 jclass 句柄由类名决定，
+     * 克隆实例需要提前解析同样的类，句柄才能对得上。
+     */
+    private List<String> captureClassNames() {
+        List<String> names = new ArrayList<>();
+        try {
+            Field field = BaseVM.class.getDeclaredField("classMap");
+            field.setAccessible(true);
+            Map<?, ?> classMap = (Map<?, ?>) field.get(vm);
+            for (Object value : classMap.values()) {
+                if (value instanceof DvmClass) {
+                    names.add(((DvmClass) value).getClassName());
+                }
+            }
+        } catch (Exception e) {
+            log.warn("读取模板DVM类表失败，克隆实例将按需解析类: {}", e.getMessage());
+        }
+        return names;
+    }
+
+    /**
+     * 将模板状态回放到当前模拟器：补齐缺失的映射、覆盖内存内容、恢复线程指针并预解析类。
+     */
+    private void restoreState(IdleFQState template) {
+        Backend backend = emulator.getBackend();
+        Map<Long, MemoryMap> existing = new HashMap<>();
+        for (MemoryMap map : memory.getMemoryMap()) {
+            existing.put(map.base, map);
+        }
+
+        for (IdleFQState.Region region : template.getRegions()) {
+            MemoryMap current = existing.get(region.getBase());
+            if (current == null || current.size != region.getSize()) {
+                mapRegion(region, current);
+            }
+            byte[] data = region.getData();
+            for (int offset = 0; offset < data.length; offset += STATE_COPY_CHUNK) {
+                int length = Math.min(STATE_COPY_CHUNK, data.length - offset);
+                backend.mem_write(region.getBase() + offset, Arrays.copyOfRange(data, offset, offset + length));
+            }
+        }
+
+        backend.reg_write(Arm64Const.UC_ARM64_REG_TPIDR_EL0, template.getThreadPointer());
+        for (String className : template.getClassNames()) {
+            vm.resolveClass(className);
+        }
+    }
+
+    /**
+     * 为模板中存在而当前模拟器缺失的区域建立映射（通常是 JNI_OnLoad 期间分配的堆）。
+     * 优先走普通匿名映射：加载顺序相同，分配器会给出同样的地址；否则退回 MAP_FIXED。
+     */
+    private void mapRegion(IdleFQState.Region region, MemoryMap current) {
+        int size = (int) region.getSize();
+        if (current != null) {
+            memory.munmap(current.base, (int) current.size);
+        } else {
+            long addr = memory.mmap2(region.getBase(), size, region.getProt(), MAP_PRIVATE | MAP_ANONYMOUS, -1, 0);
+            if (addr == region.getBase()) {
+                return;
+            }
+            memory.munmap(addr, size);
+        }
+        long addr = memory.mmap2(region.getBase(), size, region.getProt(), MAP_PRIVATE | MAP_ANONYMOUS | MAP_FIXED, -1, 0);
+        if (addr != region.getBase()) {
+            throw new IllegalStateException("无法在模板地址映射内存: 0x" + Long.toHexString(region.getBase()));
+        }
+    }
+
     /**
      * 生成API请求签名
      *
@@ -243,8 +674,36 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
                 log.debug("准备生成签名 - Header: {}", header);
             }
 
-            // 调用native方法生成签名
-            Number number = module.callFunction(emulator, 0x168c80, url, header);
+            // 参数原地写入复用的缓冲区后调用native方法生成签名
+            if (urlScratch == null) {
+                urlScratch = new ScratchArena(memory);
+                headerScratch = new ScratchArena(memory);
+            }
+            UnidbgPointer urlArg = urlScratch.write(url);
+            UnidbgPointer headerArg = headerScratch.write(header != null ? header : "");
+            currentCallbacks = 0;
+            boolean counting = prepareInstructionCount();
+            ScheduledFuture<?> watchdog = armWatchdog();
+            long start = System.nanoTime();
+            Number number;
+            try {
+                number = module.callFunction(emulator, 0x168c80, urlArg, headerArg);
+            } finally {
+                disarmWatchdog(watchdog);
+                lastSignatureCallbacks = currentCallbacks;
+                signatureCallbacks.addAndGet(currentCallbacks);
+                signatureCalls.incrementAndGet();
+            }
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            LATENCY_HISTOGRAM.record(elapsedMs);
+            if (counting) {
+                INSTRUCTION_HISTOGRAM.record(callInstructions);
+            }
+            String reason = abortReason;
+            if (reason != null) {
+                (INSTRUCTION_REASON.equals(reason) ? INSTRUCTION_ABORTS : WALL_CLOCK_ABORTS).incrementAndGet();
+                throw new EmulationBudgetExceededException(reason, counting ? callInstructions : -1, elapsedMs);
+            }
 
             if (number == null) {
                 log.error("调用native方法失败，返回结果为null");
@@ -258,7 +717,7 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
                 return null;
             }
 
-            String signature = result.getString(0);
+            String signature = urlScratch.readCString(result);
 
             if (loggable) {
                 log.debug("签名生成成功: {}", signature);
@@ -266,12 +725,156 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
 
             return signature;
 
+        } catch (EmulationBudgetExceededException e) {
+            log.error("签名被执行预算中止 - URL: {}, {}", url, e.getMessage());
+            throw e;
         } catch (Exception e) {
             log.error("生成签名过程出错: {}", e.getMessage(), e);
             return null;
         }
     }
 
+    /**
+     * 设置单次签名的执行预算（对进程内所有实例生效）。超出预算时强制停止模拟并抛出
+     * {@link EmulationBudgetExceededException}。
+     *
+     * @param maxInstructions 指令数上限，0 表示不限；需要后端支持块钩子（unicorn2），dynarmic 下仅墙钟预算生效
+     * @param maxWallClockMs 墙钟时间上限（毫秒），0 表示不限
+     * @param histogram 未设置指令上限时是否仍统计每次签名的指令数（有额外开销）
+     */
+    public static void setExecutionBudget(long maxInstructions, long maxWallClockMs, boolean histogram) {
+        budgetMaxInstructions = Math.max(0, maxInstructions);
+        budgetMaxWallClockMs = Math.max(0, maxWallClockMs);
+        countInstructions = histogram;
+        log.info("签名执行预算 - 指令数上限:{}, 墙钟上限:{}ms, 指令数直方图:{}", budgetMaxInstructions, budgetMaxWallClockMs,
+            histogram || budgetMaxInstructions > 0);
+    }
+
+    /**
+     * 设置 libc 热点函数拦截（对之后完整初始化的实例生效；从模板克隆的实例不安装）
+     *
+     * @param mode off、replace（宿主实现直接返回）或 verify（同时执行原函数并比对结果）
+     * @param functions 要拦截的函数，为空时拦截全部支持的函数
+     */
+    public static void setLibcInterception(String mode, List<String> functions) {
+        libcInterceptionMode = mode == null || mode.trim().isEmpty() ? LibcInterceptor.MODE_OFF : mode.trim();
+        libcInterceptionFunctions = functions == null || functions.isEmpty()
+            ? new ArrayList<>(LibcInterceptor.SUPPORTED) : new ArrayList<>(functions);
+        if (!LibcInterceptor.MODE_OFF.equalsIgnoreCase(libcInterceptionMode)) {
+            log.info("libc 热点函数拦截 - 模式:{}, 函数:{}", libcInterceptionMode, libcInterceptionFunctions);
+        }
+    }
+
+    /**
+     * libc 拦截统计（进程级）
+     */
+    public static Map<String, Object> getLibcInterceptionStats() {
+        return LibcInterceptor.getStats();
+    }
+
+    /**
+     * 系统调用统计：按调用号的次数、快速路径次数与内存文件系统命中次数（进程级）
+     */
+    public static Map<String, Object> getSyscallStats() {
+        return FastPathSyscallHandler.getStats();
+    }
+
+    /**
+     * 固定当前线程上模拟器读取到的时钟（clock_gettime / gettimeofday），用于比较不同后端的签名输出；
+     * 传入 null 恢复真实时钟
+     */
+    public static void pinClock(Long epochMillis) {
+        FastPathSyscallHandler.pinClock(epochMillis);
+    }
+
+    /**
+     * 执行预算统计：预算配置、各类中止次数，以及签名耗时（毫秒）与指令数的直方图
+     */
+    public static Map<String, Object> getExecutionStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxInstructions", budgetMaxInstructions);
+        stats.put("maxWallClockMs", budgetMaxWallClockMs);
+        stats.put("instructionAborts", INSTRUCTION_ABORTS.get());
+        stats.put("wallClockAborts", WALL_CLOCK_ABORTS.get());
+        stats.put("latencyMs", LATENCY_HISTOGRAM.snapshot());
+        if (INSTRUCTION_HISTOGRAM.getCount() > 0) {
+            stats.put("instructions", INSTRUCTION_HISTOGRAM.snapshot());
+        }
+        return stats;
+    }
+
+    /**
+     * 重置本次签名的指令计数，需要时安装块钩子。返回本次是否统计指令数。
+     * ARM64 指令定长 4 字节，按基本块大小累加，比逐条指令的代码钩子开销小得多。
+     */
+    private boolean prepareInstructionCount() {
+        abortReason = null;
+        callInstructions = 0;
+        long limit = budgetMaxInstructions;
+        callInstructionLimit = limit;
+        if (limit <= 0 && !countInstructions) {
+            return instructionHookState > 0;
+        }
+        if (instructionHookState == 0) {
+            try {
+                emulator.getBackend().hook_add_new(new BlockHook() {
+                    @Override
+                    public void hookBlock(Backend backend, long address, int size, Object user) {
+                        callInstructions += size >>> 2;
+                        long max = callInstructionLimit;
+                        if (max > 0 && callInstructions > max && abortReason == null) {
+                            abortReason = INSTRUCTION_REASON;
+                            backend.emu_stop();
+                        }
+                    }
+
+                    @Override
+                    public void onAttach(UnHook unHook) {
+                    }
+
+                    @Override
+                    public void detach() {
+                    }
+                }, 1, 0, null);
+                instructionHookState = 1;
+            } catch (RuntimeException e) {
+                instructionHookState = -1;
+                log.warn("当前后端({})不支持指令计数，仅墙钟预算生效: {}", backend.configName(), e.getMessage());
+            }
+        }
+        return instructionHookState > 0;
+    }
+
+    private ScheduledFuture<?> armWatchdog() {
+        long limitMs = budgetMaxWallClockMs;
+        long sequence;
+        synchronized (budgetLock) {
+            emulating = true;
+            sequence = ++callSequence;
+        }
+        if (limitMs <= 0) {
+            return null;
+        }
+        return WATCHDOG.schedule(() -> {
+            synchronized (budgetLock) {
+                // 只中止仍在进行中的同一次签名
+                if (emulating && callSequence == sequence && abortReason == null) {
+                    abortReason = WALL_CLOCK_REASON;
+                    emulator.getBackend().emu_stop();
+                }
+            }
+        }, limitMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void disarmWatchdog(ScheduledFuture<?> watchdog) {
+        synchronized (budgetLock) {
+            emulating = false;
+        }
+        if (watchdog != null) {
+            watchdog.cancel(false);
+        }
+    }
+
     /**
      * 重载方法：使用Map格式的header参数
      *
@@ -313,13 +916,10 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
     // 环境补充相关方法
     @Override
     public DvmObject<?> callStaticObjectMethodV(BaseVM vm, DvmClass dvmClass, String signature, VaList vaList) {
-        switch (signature) {
-            case "com/bytedance/mobsec/metasec/ml/MS->b(IIJLjava/lang/String;Ljava/lang/Object;)Ljava/lang/Object;": {
-                int i = vaList.getIntArg(0);
-                return handleMSMethod(vm, i);
-            }
-            case "java/lang/Thread->currentThread()Ljava/lang/Thread;":
-                return vm.resolveClass("java/lang/Thread").newObject(Thread.currentThread());
+        countCallback(signature);
+        JniObjectHandler handler = staticObjectHandlers.get(signature);
+        if (handler != null) {
+            return handler.handle(vm, null, vaList);
         }
         return super.callStaticObjectMethodV(vm, dvmClass, signature, vaList);
     }
@@ -335,30 +935,15 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
             case 33554434:
                 return DvmBoolean.valueOf(vm, true);
             case 16777232:
-                return vm.resolveClass("java.lang.Integer").newObject(68132);
+                return integerClass(vm).newObject(68132);
             case 16777233:
                 return new StringObject(vm, "6.8.1.32");
-            case 16777218: {
-                // 返回证书文件的字节数组
-                try {
-                    if (tempMsCertFile != null && tempMsCertFile.exists()) {
-                        byte[] fileData = Files.readAllBytes(tempMsCertFile.toPath());
-                        if (loggable) {
-                            log.debug("成功读取证书文件: {} bytes", fileData.length);
-                        }
-                        return new ByteArray(vm, fileData);
-                    } else {
-                        log.warn("证书文件不存在: {}", tempMsCertFile);
-                        return null;
-                    }
-                } catch (IOException e) {
-                    log.error("读取证书文件失败", e);
-                    return null;
-                }
-            }
+            case 16777218:
+                // 返回证书文件的字节数组（初始化时已读入内存；复制一份，避免 native 回写污染缓存）
+                return msCertBytes != null ? new ByteArray(vm, msCertBytes.clone()) : null;
             case 268435470:
                 // 返回当前时间戳
-                return vm.resolveClass("java/lang/Long").newObject(System.currentTimeMillis());
+                return longClass(vm).newObject(System.currentTimeMillis());
             default:
                 if (loggable) {
                     log.debug("未处理的MS方法ID: {}", methodId);
@@ -369,35 +954,12 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
 
     @Override
     public DvmObject<?> callObjectMethodV(BaseVM vm, DvmObject<?> dvmObject, String signature, VaList vaList) {
-        switch (signature) {
-            case "java/lang/Thread->getStackTrace()[Ljava/lang/StackTraceElement;": {
-                StackTraceElement[] elements = Thread.currentThread().getStackTrace();
-                DvmObject[] objs = new DvmObject[elements.length];
-                for (int i = 0; i < elements.length; i++) {
-                    objs[i] = vm.resolveClass("java/lang/StackTraceElement").newObject(elements[i]);
-                }
-                return new ArrayObject(objs);
-            }
-            case "java/lang/StackTraceElement->getClassName()Ljava/lang/String;": {
-                StackTraceElement element = (StackTraceElement) dvmObject.getValue();
-                return new StringObject(vm, element.getClassName());
-            }
-            case "java/lang/StackTraceElement->getMethodName()Ljava/lang/String;": {
-                StackTraceElement element = (StackTraceElement) dvmObject.getValue();
-                return new StringObject(vm, element.getMethodName());
-            }
-            case "java/lang/Thread->getBytes(Ljava/lang/String;)[B": {
-                String arg0 = (String) vaList.getObjectArg(0).getValue();
-                if (loggable) {
-                    log.debug("java/lang/Thread->getBytes arg0: {}", arg0);
-                }
-                return new ByteArray(vm, arg0.getBytes(StandardCharsets.UTF_8));
-            }
-            case "java/lang/Long->longValue()J": {
-                Object value = dvmObject.getValue();
-                if (value instanceof Long) {
-                    return (DvmObject<Long>) value;
-                }
+        countCallback(signature);
+        JniObjectHandler handler = objectHandlers.get(signature);
+        if (handler != null) {
+            DvmObject<?> result = handler.handle(vm, dvmObject, vaList);
+            if (result != null) {
+                return result;
             }
         }
         return super.callObjectMethodV(vm, dvmObject, signature, vaList);
@@ -405,6 +967,7 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
 
     @Override
     public long callLongMethodV(BaseVM vm, DvmObject<?> dvmObject, String signature, VaList vaList) {
+        countCallback(signature);
         if ("java/lang/Long->longValue()J".equals(signature)) {
             Object value = dvmObject.getValue();
             if (value instanceof Long) {
@@ -416,6 +979,7 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
 
     @Override
     public int getStaticIntField(BaseVM vm, DvmClass dvmClass, String signature) {
+        countCallback(signature);
         if (loggable) {
             log.debug("getStaticIntField: {}", signature);
         }
@@ -427,6 +991,7 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
 
     @Override
     public void callVoidMethod(BaseVM vm, DvmObject<?> dvmObject, String signature, VarArg varArg) {
+        countCallback(signature);
         if (loggable) {
             log.debug("callVoidMethod: {}", signature);
         }
@@ -442,6 +1007,7 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
 
     @Override
     public int callIntMethodV(BaseVM vm, DvmObject<?> dvmObject, String signature, VaList vaList) {
+        countCallback(signature);
         if ("java/lang/Integer->intValue()I".equals(signature)) {
             Object value = dvmObject.getValue();
             if (value instanceof Integer) {
@@ -456,6 +1022,7 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
 
     @Override
     public boolean callBooleanMethodV(BaseVM vm, DvmObject<?> dvmObject, String signature, VaList vaList) {
+        countCallback(signature);
         if ("java/lang/Boolean->booleanValue()Z".equals(signature)) {
             Object value = dvmObject.getValue();
             if (value instanceof Boolean) {
@@ -476,10 +1043,16 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
 
         // 处理libmetasec_ml.so文件
         if (pathname.contains("libmetasec_ml.so")) {
-            return FileResult.success(new SimpleFileIO(oflags, tempSoMetasecMlFile, pathname));
+            return FileResult.success(new ByteArrayFileIO(oflags, pathname, soMetasecMlBytes));
+        }
+
+        // 内存文件系统：.msdata、APK 与常用目录
+        FileResult<AndroidFileIO> result = memoryRootfs.resolve(pathname, oflags);
+        if (result != null) {
+            return result;
         }
 
-        // 处理APK文件
+        // 处理APK文件（过大未放入内存时）
         if (pathname.equals(APK_INSTALL_PATH)) {
             return FileResult.success(new SimpleFileIO(oflags, tempApkFile, pathname));
         }
@@ -499,5 +1072,6 @@ public class IdleFQ extends AbstractJni implements IOResolver<AndroidFileIO> {
                 log.error("关闭模拟器失败", e);
             }
         }
+        TempFileUtils.deleteDirectory(tempRootfsDir);
     }
 }
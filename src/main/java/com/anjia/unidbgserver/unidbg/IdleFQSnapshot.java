@@ -0,0 +1,111 @@
+package com.anjia.unidbgserver.unidbg;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * IdleFQ 状态的磁盘快照。
+ * <p>
+ * 文件头记录快照键（APK、libmetasec_ml.so、ms_16777218.bin 的内容哈希），
+ * 键不一致时视为失效，由调用方退回完整初始化。
+ * <p>
+ * 恢复走与克隆相同的 {@link IdleFQ#IdleFQ(IdleFQState)}：跳过 init_array 与 JNI_OnLoad，
+ * 但仍需创建模拟器并经加载器载入 so，恢复耗时的下限即这两步；各阶段耗时见签名统计的 snapshotRestorePhasesMs。
+ */
+@Slf4j
+public final class IdleFQSnapshot {
+
+    private static final int MAGIC = 0x46515353; // "FQSS"
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private IdleFQSnapshot() {
+    }
+
+    /**
+     * 将状态写入快照文件（先写临时文件再原子替换，避免并发启动读到半个文件）
+     */
+    public static void save(IdleFQState state, File file, String key) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.exists() && !dir.mkdirs()) {
+            throw new IOException("无法创建快照目录: " + dir);
+        }
+        File tmp = new File(dir, file.getName() + ".tmp" + System.nanoTime());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(key);
+            out.writeLong(state.getThreadPointer());
+            out.writeInt(state.getClassNames().size());
+            for (String className : state.getClassNames()) {
+                out.writeUTF(className);
+            }
+            out.writeInt(state.getRegions().size());
+            for (IdleFQState.Region region : state.getRegions()) {
+                out.writeLong(region.getBase());
+                out.writeInt(region.getProt());
+                out.writeInt(region.getData().length);
+                out.write(region.getData());
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp.toPath());
+            throw e;
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 读取快照文件（快照只含内存与寄存器数据，可在任一后端上回放）
+     *
+     * @return 快照不存在、格式不兼容或键不匹配时返回 null
+     */
+    public static IdleFQState load(File file, String key, boolean loggable, String apkPath, String apkClasspath,
+                                   EmulatorBackend backend) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.info("快照格式不兼容，忽略: {}", file.getAbsolutePath());
+                return null;
+            }
+            String storedKey = in.readUTF();
+            if (!storedKey.equals(key)) {
+                log.info("快照键不匹配（资源已更新），忽略: {}", file.getAbsolutePath());
+                return null;
+            }
+            long threadPointer = in.readLong();
+            int classCount = in.readInt();
+            List<String> classNames = new ArrayList<>(classCount);
+            for (int i = 0; i < classCount; i++) {
+                classNames.add(in.readUTF());
+            }
+            int regionCount = in.readInt();
+            List<IdleFQState.Region> regions = new ArrayList<>(regionCount);
+            for (int i = 0; i < regionCount; i++) {
+                long base = in.readLong();
+                int prot = in.readInt();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                regions.add(new IdleFQState.Region(base, prot, data));
+            }
+            return new IdleFQState(loggable, apkPath, apkClasspath, backend, regions, classNames, threadPointer);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.anjia.unidbgserver.unidbg;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * IdleFQ 在 JNI_OnLoad 之后的模拟器状态（内存映射、线程寄存器、DVM 已解析类）。
+ * <p>
+ * 由模板实例通过 {@link IdleFQ#captureState()} 采集一次，之后可反复用于克隆新的 IdleFQ，
+ * 克隆实例只需载入 so 并回放该状态，无需再次执行 JNI_OnLoad。
+ */
+@Getter
+public class IdleFQState {
+
+    private final boolean loggable;
+    private final String apkPath;
+    private final String apkClasspath;
+
+    /**
+     * 采集状态时使用的模拟器后端，克隆实例沿用同一后端
+     */
+    private final EmulatorBackend backend;
+
+    /**
+     * 模板内存映射（按基址升序）
+     */
+    private final List<Region> regions;
+
+    /**
+     * 模板 DVM 中已解析的类名（native 侧持有的 jclass 句柄依赖这些类存在）
+     */
+    private final List<String> classNames;
+
+    /**
+     * TPIDR_EL0（线程指针），其余通用寄存器在每次 callFunction 时都会重新设置
+     */
+    private final long threadPointer;
+
+    IdleFQState(boolean loggable, String apkPath, String apkClasspath, EmulatorBackend backend,
+                List<Region> regions, List<String> classNames, long threadPointer) {
+        this.loggable = loggable;
+        this.apkPath = apkPath;
+        this.apkClasspath = apkClasspath;
+        this.backend = backend;
+        this.regions = Collections.unmodifiableList(regions);
+        this.classNames = Collections.unmodifiableList(classNames);
+        this.threadPointer = threadPointer;
+    }
+
+    /**
+     * 状态中内存数据的总字节数
+     */
+    public long getTotalBytes() {
+        long total = 0;
+        for (Region region : regions) {
+            total += region.getData().length;
+        }
+        return total;
+    }
+
+    /**
+     * 单个内存映射区域
+     */
+    @Getter
+    public static class Region {
+        private final long base;
+        private final int prot;
+        private final byte[] data;
+
+        Region(long base, int prot, byte[] data) {
+            this.base = base;
+            this.prot = prot;
+            this.data = data;
+        }
+
+        public long getSize() {
+            return data.length;
+        }
+    }
+}
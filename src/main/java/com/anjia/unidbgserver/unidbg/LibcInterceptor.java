@@ -0,0 +1,245 @@
+package com.anjia.unidbgserver.unidbg;
+
+import com.github.unidbg.Emulator;
+import com.github.unidbg.arm.backend.Backend;
+import com.github.unidbg.hook.HookContext;
+import com.github.unidbg.hook.HookStatus;
+import com.github.unidbg.hook.ReplaceCallback;
+import com.github.unidbg.hook.xhook.IxHook;
+import com.github.unidbg.hook.xhook.XHookImpl;
+import lombok.extern.slf4j.Slf4j;
+import unicorn.Arm64Const;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 用宿主 Java 实现替换 so 通过 PLT 调用的热点 libc 函数（memcpy、memmove、memset、strlen、memcmp），
+ * 直接读写模拟器内存，省去这些函数的逐条指令模拟。
+ * <ul>
+ *   <li>replace：调用直接由宿主实现完成并返回</li>
+ *   <li>verify：宿主先算出预期结果，再执行原函数，返回后比对目标内存与返回值，不一致时计数并告警</li>
+ * </ul>
+ * 宿主实现遇到无法读取的内存或过大的长度时退回原函数，由模拟器按原样处理。
+ */
+@Slf4j
+final class LibcInterceptor {
+
+    static final String MODE_OFF = "off";
+    static final String MODE_REPLACE = "replace";
+    static final String MODE_VERIFY = "verify";
+
+    // 拦截 libmetasec_ml 与 libc++_shared 的导入表
+    private static final String CALLER_PATTERN = ".*(libmetasec_ml|libc\\+\\+_shared)\\.so$";
+    private static final long MAX_HOST_BYTES = 1 << 20;
+    private static final int STRLEN_CHUNK = 256;
+    private static final int PAGE_SIZE = 0x1000;
+    private static final int MAX_MISMATCH_LOGS = 20;
+
+    static final Collection<String> SUPPORTED = Arrays.asList("memcpy", "memmove", "memset", "strlen", "memcmp");
+
+    private static final Map<String, AtomicLong> HOST_CALLS = new ConcurrentHashMap<>();
+    private static final AtomicLong FALLBACKS = new AtomicLong();
+    private static final AtomicLong VERIFIED = new AtomicLong();
+    private static final AtomicLong MISMATCHES = new AtomicLong();
+
+    private final Emulator<?> emulator;
+    private final boolean verify;
+
+    private LibcInterceptor(Emulator<?> emulator, boolean verify) {
+        this.emulator = emulator;
+        this.verify = verify;
+    }
+
+    /**
+     * 在已载入目标 so 的模拟器上安装拦截
+     *
+     * @param mode replace 或 verify；其他值不安装
+     * @param functions 要拦截的函数名，不支持的名称忽略
+     * @return 是否已安装
+     */
+    static boolean install(Emulator<?> emulator, String mode, Collection<String> functions) {
+        if (!MODE_REPLACE.equalsIgnoreCase(mode) && !MODE_VERIFY.equalsIgnoreCase(mode)) {
+            log.warn("未知的 libc 拦截模式: {}，不安装拦截", mode);
+            return false;
+        }
+        LibcInterceptor interceptor = new LibcInterceptor(emulator, MODE_VERIFY.equalsIgnoreCase(mode));
+        IxHook xHook = XHookImpl.getInstance(emulator);
+        for (String function : functions) {
+            if (!SUPPORTED.contains(function)) {
+                log.warn("不支持拦截的 libc 函数: {}", function);
+                continue;
+            }
+            xHook.register(CALLER_PATTERN, function, interceptor.callback(function), interceptor.verify);
+        }
+        xHook.refresh();
+        return true;
+    }
+
+    private ReplaceCallback callback(String function) {
+        return new ReplaceCallback() {
+            @Override
+            public HookStatus onCall(Emulator<?> emulator, long originFunction) {
+                return HookStatus.RET(emulator, originFunction);
+            }
+
+            @Override
+            public HookStatus onCall(Emulator<?> emulator, HookContext context, long originFunction) {
+                Expected expected;
+                try {
+                    expected = compute(function, context);
+                } catch (RuntimeException e) {
+                    expected = null;
+                }
+                if (expected == null) {
+                    FALLBACKS.incrementAndGet();
+                    if (verify) {
+                        context.push((Object) null);
+                    }
+                    return HookStatus.RET(emulator, originFunction);
+                }
+                if (verify) {
+                    context.push(expected);
+                    return HookStatus.RET(emulator, originFunction);
+                }
+                if (expected.bytes != null) {
+                    emulator.getBackend().mem_write(expected.address, expected.bytes);
+                }
+                HOST_CALLS.computeIfAbsent(function, key -> new AtomicLong()).incrementAndGet();
+                return HookStatus.LR(emulator, expected.returnValue);
+            }
+
+            @Override
+            public void postCall(Emulator<?> emulator, HookContext context) {
+                Expected expected = context.pop();
+                if (expected != null) {
+                    check(function, expected);
+                }
+            }
+        };
+    }
+
+    /**
+     * 宿主侧计算函数结果（不写内存）；无法处理时返回 null
+     */
+    private Expected compute(String function, HookContext context) {
+        Backend backend = emulator.getBackend();
+        long a = context.getLongArg(0);
+        long b = context.getLongArg(1);
+        long n = context.getLongArg(2);
+        switch (function) {
+            case "memcpy":
+            case "memmove":
+                if (n < 0 || n > MAX_HOST_BYTES) {
+                    return null;
+                }
+                return new Expected(a, n == 0 ? null : backend.mem_read(b, n), a);
+            case "memset":
+                if (n < 0 || n > MAX_HOST_BYTES) {
+                    return null;
+                }
+                byte[] fill = new byte[(int) n];
+                Arrays.fill(fill, (byte) b);
+                return new Expected(a, n == 0 ? null : fill, a);
+            case "strlen":
+                long length = strlen(backend, a);
+                return length < 0 ? null : new Expected(0, null, length);
+            case "memcmp":
+                if (n < 0 || n > MAX_HOST_BYTES) {
+                    return null;
+                }
+                return new Expected(0, null, n == 0 ? 0 : memcmp(backend.mem_read(a, n), backend.mem_read(b, n)));
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 按页内分块读取直到遇到 NUL，避免跨入未映射页；超过上限返回 -1
+     */
+    private static long strlen(Backend backend, long address) {
+        long length = 0;
+        while (length <= MAX_HOST_BYTES) {
+            long current = address + length;
+            int chunk = (int) Math.min(STRLEN_CHUNK, PAGE_SIZE - (current & (PAGE_SIZE - 1)));
+            byte[] bytes = backend.mem_read(current, chunk);
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] == 0) {
+                    return length + i;
+                }
+            }
+            length += chunk;
+        }
+        return -1;
+    }
+
+    private static long memcmp(byte[] left, byte[] right) {
+        for (int i = 0; i < left.length; i++) {
+            if (left[i] != right[i]) {
+                return (left[i] & 0xff) - (right[i] & 0xff);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * verify 模式：原函数返回后比对返回值与目标内存
+     */
+    private void check(String function, Expected expected) {
+        Backend backend = emulator.getBackend();
+        VERIFIED.incrementAndGet();
+        long actual = backend.reg_read(Arm64Const.UC_ARM64_REG_X0).longValue();
+        boolean match;
+        if ("memcmp".equals(function)) {
+            // memcmp 只约定符号
+            match = Long.signum((int) actual) == Long.signum(expected.returnValue);
+        } else {
+            match = actual == expected.returnValue;
+        }
+        if (match && expected.bytes != null) {
+            match = Arrays.equals(expected.bytes, backend.mem_read(expected.address, expected.bytes.length));
+        }
+        if (!match) {
+            long mismatches = MISMATCHES.incrementAndGet();
+            if (mismatches <= MAX_MISMATCH_LOGS) {
+                log.warn("libc 拦截校验不一致 - 函数:{}, 预期返回:{}, 实际返回:{}", function, expected.returnValue, actual);
+            }
+        }
+    }
+
+    /**
+     * 拦截统计：各函数由宿主完成的次数、退回原函数次数、校验次数与不一致次数（进程级）
+     */
+    static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Map<String, Long> calls = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : HOST_CALLS.entrySet()) {
+            calls.put(entry.getKey(), entry.getValue().get());
+        }
+        stats.put("hostCalls", calls);
+        stats.put("fallbacks", FALLBACKS.get());
+        stats.put("verified", VERIFIED.get());
+        stats.put("mismatches", MISMATCHES.get());
+        return stats;
+    }
+
+    /**
+     * 宿主计算的预期结果：写入 address 的内容（可为空）与返回值
+     */
+    private static final class Expected {
+        private final long address;
+        private final byte[] bytes;
+        private final long returnValue;
+
+        private Expected(long address, byte[] bytes, long returnValue) {
+            this.address = address;
+            this.bytes = bytes;
+            this.returnValue = returnValue;
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.anjia.unidbgserver.unidbg;
+
+import com.github.unidbg.Emulator;
+import com.github.unidbg.arm.backend.Backend;
+import com.github.unidbg.file.FileResult;
+import com.github.unidbg.file.linux.AndroidFileIO;
+import com.github.unidbg.file.linux.BaseAndroidFileIO;
+import com.github.unidbg.file.linux.StatStructure;
+import com.github.unidbg.linux.file.ByteArrayFileIO;
+import com.github.unidbg.linux.file.DirectoryFileIO;
+import com.github.unidbg.unix.UnixEmulator;
+import com.sun.jna.Pointer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 模拟器的内存文件系统：SDK 访问的目录（/data/system、/data/app、files 目录等）、.msdata 与 APK/so
+ * 都在内存中应答，签名过程中不再读写宿主磁盘。
+ * <p>
+ * 只读文件（APK、so）的内容在进程内所有实例间共享；可写文件（.msdata 等）每个实例独立一份，
+ * 每个文件描述符维护自己的读写位置，写入落在当前位置（O_APPEND 时落在末尾）并按需扩展内容，
+ * 读取看到的是最新内容，以 O_TRUNC 打开时清空。未登记的路径返回 null，交给 unidbg 按磁盘 rootfs 处理。
+ */
+final class MemoryRootfs {
+
+    private static final int O_ACCMODE = 0x3;
+    private static final int O_CREAT = 0x40;
+    private static final int O_TRUNC = 0x200;
+    private static final int O_APPEND = 0x400;
+
+    private static final AtomicLong HITS = new AtomicLong();
+
+    private final Map<String, MemoryFile> files = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> directories = new ConcurrentHashMap<>();
+
+    static long getHits() {
+        return HITS.get();
+    }
+
+    /**
+     * 登记目录（含所有上级目录）
+     */
+    void addDirectory(String path) {
+        String normalized = normalize(path);
+        directories.computeIfAbsent(normalized, key -> new LinkedHashSet<>());
+        String parent = parentOf(normalized);
+        if (parent != null) {
+            addDirectory(parent);
+            addChild(parent, nameOf(normalized));
+        }
+    }
+
+    /**
+     * 登记文件
+     *
+     * @param writable 是否允许写入；只读文件直接引用传入的数组，不做拷贝
+     */
+    void addFile(String path, byte[] content, boolean writable) {
+        String normalized = normalize(path);
+        String parent = parentOf(normalized);
+        if (parent != null) {
+            addDirectory(parent);
+            addChild(parent, nameOf(normalized));
+        }
+        files.put(normalized, new MemoryFile(content, writable));
+    }
+
+    /**
+     * 按路径应答打开请求
+     *
+     * @return 未登记的路径返回 null
+     */
+    FileResult<AndroidFileIO> resolve(String pathname, int oflags) {
+        String path = normalize(pathname);
+        MemoryFile file = files.get(path);
+        if (file == null && (oflags & O_CREAT) != 0 && directories.containsKey(parentOf(path))) {
+            file = files.computeIfAbsent(path, key -> new MemoryFile(new byte[0], true));
+            addChild(parentOf(path), nameOf(path));
+        }
+        if (file != null) {
+            HITS.incrementAndGet();
+            boolean writing = (oflags & O_ACCMODE) != 0;
+            if (writing && !file.writable) {
+                return FileResult.failed(UnixEmulator.EACCES);
+            }
+            if (writing && (oflags & O_TRUNC) != 0) {
+                file.truncate();
+            }
+            AndroidFileIO io = file.writable ? new MemoryFileIO(oflags, path, file) : new ByteArrayFileIO(oflags, path, file.content);
+            return FileResult.success(io);
+        }
+        Set<String> children = directories.get(path);
+        if (children != null) {
+            HITS.incrementAndGet();
+            List<DirectoryFileIO.DirectoryEntry> entries = new ArrayList<>();
+            synchronized (children) {
+                for (String child : children) {
+                    entries.add(new DirectoryFileIO.DirectoryEntry(files.containsKey(path + "/" + child), child));
+                }
+            }
+            return FileResult.success(new DirectoryFileIO(oflags, path, entries.toArray(new DirectoryFileIO.DirectoryEntry[0])));
+        }
+        return null;
+    }
+
+    private void addChild(String parent, String name) {
+        Set<String> children = directories.computeIfAbsent(parent, key -> new LinkedHashSet<>());
+        synchronized (children) {
+            children.add(name);
+        }
+    }
+
+    private static String normalize(String path) {
+        String normalized = path.replaceAll("/+", "/");
+        if (normalized.length() > 1 && normalized.endsWith("/")) {
+            normalized = normalized.substring(0, normalized.length() - 1);
+        }
+        return normalized.startsWith("/") ? normalized : "/" + normalized;
+    }
+
+    private static String parentOf(String path) {
+        int slash = path.lastIndexOf('/');
+        if (slash < 0 || path.length() == 1) {
+            return null;
+        }
+        return slash == 0 ? "/" : path.substring(0, slash);
+    }
+
+    private static String nameOf(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * 内存文件内容；可写文件按位置读写，容量不足时成倍扩展
+     */
+    private static final class MemoryFile {
+        private byte[] content;
+        private int size;
+        private final boolean writable;
+
+        private MemoryFile(byte[] content, boolean writable) {
+            this.content = content;
+            this.size = content.length;
+            this.writable = writable;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        /**
+         * 读取 position 起最多 count 字节；位置在末尾之后时返回空数组
+         */
+        synchronized byte[] read(long position, int count) {
+            if (position >= size || count <= 0) {
+                return new byte[0];
+            }
+            int from = (int) position;
+            return Arrays.copyOfRange(content, from, from + Math.min(count, size - from));
+        }
+
+        /**
+         * 在 position 处写入，覆盖已有内容；位置超出末尾时中间补零
+         */
+        synchronized void write(long position, byte[] data) {
+            long end = position + data.length;
+            if (end > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("内存文件过大: " + end);
+            }
+            if (end > content.length) {
+                content = Arrays.copyOf(content, (int) Math.max(end, content.length * 2L));
+            }
+            System.arraycopy(data, 0, content, (int) position, data.length);
+            size = (int) Math.max(size, end);
+        }
+
+        synchronized byte[] snapshot() {
+            return Arrays.copyOf(content, size);
+        }
+
+        private synchronized void truncate() {
+            content = new byte[0];
+            size = 0;
+        }
+    }
+
+    /**
+     * 可写内存文件的文件描述符：维护独立的读写位置，读写都直接作用于内存文件的最新内容
+     */
+    private static final class MemoryFileIO extends BaseAndroidFileIO {
+        private final String path;
+        private final MemoryFile file;
+        private final boolean append;
+        private long position;
+
+        private MemoryFileIO(int oflags, String path, MemoryFile file) {
+            super(oflags);
+            this.path = path;
+            this.file = file;
+            this.append = (oflags & O_APPEND) != 0;
+        }
+
+        @Override
+        public int read(Backend backend, Pointer buffer, int count) {
+            int read = pread(backend, buffer, count, position);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public int pread(Backend backend, Pointer buffer, int count, long offset) {
+            byte[] data = file.read(offset, count);
+            buffer.write(0, data, 0, data.length);
+            return data.length;
+        }
+
+        @Override
+        public int write(byte[] data) {
+            if (append) {
+                position = file.size();
+            }
+            file.write(position, data);
+            position += data.length;
+            return data.length;
+        }
+
+        @Override
+        public int lseek(int offset, int whence) {
+            long base;
+            switch (whence) {
+                case SEEK_SET:
+                    base = 0;
+                    break;
+                case SEEK_CUR:
+                    base = position;
+                    break;
+                case SEEK_END:
+                    base = file.size();
+                    break;
+                default:
+                    return -UnixEmulator.EINVAL;
+            }
+            long target = base + offset;
+            if (target < 0 || target > Integer.MAX_VALUE) {
+                return -UnixEmulator.EINVAL;
+            }
+            position = target;
+            return (int) target;
+        }
+
+        @Override
+        public int fstat(Emulator<?> emulator, StatStructure stat) {
+            // 按当前内容大小应答，其余字段与只读内存文件一致
+            return new ByteArrayFileIO(oflags, path, file.snapshot()).fstat(emulator, stat);
+        }
+
+        @Override
+        protected byte[] getMmapData(long addr, int offset, int length) {
+            byte[] data = new byte[length];
+            byte[] current = file.read(offset, length);
+            System.arraycopy(current, 0, data, 0, current.length);
+            return data;
+        }
+
+        @Override
+        public void close() {
+            position = 0;
+        }
+
+        @Override
+        public String toString() {
+            return path;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.anjia.unidbgserver.unidbg;
+
+import com.github.unidbg.memory.Memory;
+import com.github.unidbg.memory.MemoryBlock;
+import com.github.unidbg.pointer.UnidbgPointer;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 模拟器内可复用的参数缓冲区：字符串在原地编码为 C 字符串写入，只有输入超过容量时才重新分配（按 2 的幂增长）。
+ * 同时提供复用 JVM 侧缓冲区读取 native 返回的 C 字符串。
+ * <p>
+ * 非线程安全，每个 IdleFQ 持有自己的实例。
+ */
+final class ScratchArena {
+
+    private static final int INITIAL_CAPACITY = 4096;
+    private static final int PAGE_SIZE = 0x1000;
+    private static final int READ_CHUNK = 512;
+
+    private final Memory memory;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate(INITIAL_CAPACITY);
+    private byte[] readBuffer = new byte[INITIAL_CAPACITY];
+
+    private MemoryBlock block;
+    private int capacity;
+    private int grows;
+
+    ScratchArena(Memory memory) {
+        this.memory = memory;
+    }
+
+    /**
+     * 把字符串以 NUL 结尾写入缓冲区
+     *
+     * @return 缓冲区指针，下次写入前有效
+     */
+    UnidbgPointer write(String value) {
+        ByteBuffer bytes = encode(value);
+        int length = bytes.remaining();
+        ensureCapacity(length + 1);
+        UnidbgPointer pointer = block.getPointer();
+        pointer.write(0, bytes.array(), 0, length);
+        pointer.setByte(length, (byte) 0);
+        return pointer;
+    }
+
+    /**
+     * 读取 native 返回的 C 字符串。按块读取且不跨页，避免越过已映射内存的末尾。
+     */
+    String readCString(UnidbgPointer pointer) {
+        int length = 0;
+        while (true) {
+            long address = pointer.peer + length;
+            int chunk = (int) Math.min(READ_CHUNK, PAGE_SIZE - (address & (PAGE_SIZE - 1)));
+            if (length + chunk > readBuffer.length) {
+                byte[] larger = new byte[readBuffer.length * 2];
+                System.arraycopy(readBuffer, 0, larger, 0, length);
+                readBuffer = larger;
+            }
+            pointer.read(length, readBuffer, length, chunk);
+            for (int i = length; i < length + chunk; i++) {
+                if (readBuffer[i] == 0) {
+                    return new String(readBuffer, 0, i, StandardCharsets.UTF_8);
+                }
+            }
+            length += chunk;
+        }
+    }
+
+    /**
+     * 缓冲区重新分配的次数
+     */
+    int getGrows() {
+        return grows;
+    }
+
+    private ByteBuffer encode(String value) {
+        CharBuffer chars = CharBuffer.wrap(value);
+        while (true) {
+            encoder.reset();
+            encodeBuffer.clear();
+            CoderResult result = encoder.encode(chars, encodeBuffer, true);
+            if (!result.isOverflow()) {
+                result = encoder.flush(encodeBuffer);
+            }
+            if (!result.isOverflow()) {
+                encodeBuffer.flip();
+                return encodeBuffer;
+            }
+            encodeBuffer = ByteBuffer.allocate(encodeBuffer.capacity() * 2);
+            chars.rewind();
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (block != null && required <= capacity) {
+            return;
+        }
+        int newCapacity = Math.max(INITIAL_CAPACITY, Integer.highestOneBit(required - 1) << 1);
+        if (block != null) {
+            block.free();
+            grows++;
+        }
+        block = memory.malloc(newCapacity, false);
+        capacity = newCapacity;
+    }
+}
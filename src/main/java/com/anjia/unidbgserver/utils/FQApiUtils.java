@@ -5,8 +5,10 @@ import com.anjia.unidbgserver.dto.FQSearchRequest;
 import com.anjia.unidbgserver.dto.FqVariable;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
+import org.springframework.web.util.DefaultUriBuilderFactory;
 
 import java.io.UnsupportedEncodingException;
+import java.net.URI;
 import java.net.URLEncoder;
 import java.util.*;
 
@@ -18,6 +20,12 @@ import java.util.*;
 @RequiredArgsConstructor
 public class FQApiUtils {
 
+    private static final DefaultUriBuilderFactory URI_FACTORY = new DefaultUriBuilderFactory();
+
+    static {
+        URI_FACTORY.setEncodingMode(DefaultUriBuilderFactory.EncodingMode.URI_COMPONENT);
+    }
+
     private final FQApiProperties fqApiProperties;
 
     /**
@@ -196,6 +204,14 @@ public class FQApiUtils {
         return urlBuilder.toString();
     }
 
+    /**
+     * 把 {@link #buildUrlWithParams} 拼好的 URL 转为请求 URI，编码规则与 RestTemplate 默认的 URI 模板处理一致
+     * （按 URI 组件编码非法字符，已编码的 %XX 保持不变）
+     */
+    public URI toUri(String fullUrl) {
+        return URI_FACTORY.expand(fullUrl);
+    }
+
     /**
      * 对参数值进行编码（已编码过的不再编码）
      */
@@ -314,4 +330,13 @@ public Map<String, String> buildSearchParams(FqVariable var, FQSearchRequest sea
     public String getBaseUrl() {
         return fqApiProperties.getBaseUrl();
     }
+
+    /**
+     * 获取搜索与目录接口的基础URL（sinfonlinec 主机）
+     *
+     * @return 搜索/目录API基础URL
+     */
+    public String getSearchBaseUrl() {
+        return getBaseUrl().replace("api5-normal-sinfonlineb", "api5-normal-sinfonlinec");
+    }
 }
@@ -1,82 +1,259 @@
 package com.anjia.unidbgserver.utils;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.util.DigestUtils;
-import org.springframework.util.StreamUtils;
+import org.springframework.util.ResourceUtils;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.HashMap;
+import java.io.OutputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
 
-
+/**
+ * classpath 资源提取缓存：资源按内容 SHA-256 命名存放在缓存目录中，跨重启、跨 worker 与跨进程复用。
+ * <p>
+ * 缓存目录下的 index 记录「资源路径 + 大小 + 内容校验值」到内容文件的映射，命中时无需提取资源即可复用。
+ * 校验值取 jar 条目的 CRC-32（jar 目录中现成，无需解压）；资源为普通文件时取其 SHA-256；
+ * 只比较修改时间不可靠（可复现构建会固定条目时间戳），因此不参与判断。
+ * 未命中时边复制边计算哈希，写入临时文件后原子改名，多个进程同时提取同一资源也不会读到半个文件。
+ * 缓存目录默认为 {@code ${java.io.tmpdir}/unidbg-extract-cache}，可通过 {@link #setCacheDir} 修改。
+ */
 @Slf4j
 public class TempFileUtils {
 
-    private static final Map<String, File> TEMP_FILES = new HashMap<>();
+    private static final String DEFAULT_CACHE_DIR = "unidbg-extract-cache";
+    private static final int MAP_CHUNK = 64 << 20;
+
+    private static final Map<String, File> TEMP_FILES = new ConcurrentHashMap<>();
+    private static final Map<String, String> CONTENT_HASHES = new ConcurrentHashMap<>();
+    private static volatile File cacheDir = new File(System.getProperty("java.io.tmpdir"), DEFAULT_CACHE_DIR);
+
+    /**
+     * 设置提取缓存目录；为空时使用默认目录。应在首次提取前调用。
+     */
+    public static void setCacheDir(String dir) {
+        File target = dir == null || dir.trim().isEmpty()
+            ? new File(System.getProperty("java.io.tmpdir"), DEFAULT_CACHE_DIR)
+            : new File(dir.trim());
+        if (!target.equals(cacheDir)) {
+            cacheDir = target;
+            TEMP_FILES.clear();
+            log.info("资源提取缓存目录: {}", target.getAbsolutePath());
+        }
+    }
+
+    public static File getCacheDir() {
+        return cacheDir;
+    }
 
     /**
-     * 获取临时文件。如果临时文件不存在，从classpath复制。
+     * 获取 classpath 资源在缓存目录中的文件，首次使用时提取。
      *
      * @param classpathFile classpath下的资源路径
-     * @return 临时文件对象
+     * @return 缓存文件；资源不存在或提取失败时返回 null
      */
     public static File getTempFile(String classpathFile) {
+        File cached = TEMP_FILES.get(classpathFile);
+        if (cached != null && cached.isFile()) {
+            return cached;
+        }
         try {
-            String md5 = DigestUtils.md5DigestAsHex(classpathFile.getBytes());
-            if (TEMP_FILES.containsKey(md5)) {
-                return TEMP_FILES.get(md5);
-            }
+            return TEMP_FILES.compute(classpathFile, (key, existing) -> {
+                if (existing != null && existing.isFile()) {
+                    return existing;
+                }
+                try {
+                    return extract(key);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+            });
+        } catch (IllegalStateException e) {
+            log.error("提取资源文件失败: " + classpathFile, e.getCause() != null ? e.getCause() : e);
+            return null;
+        }
+    }
 
-            ClassPathResource resource = new ClassPathResource(classpathFile);
-            if (!resource.exists()) {
-                log.error("资源文件不存在: {}", classpathFile);
-                return null;
+    /**
+     * 创建 worker 私有的临时目录，由调用方在释放时通过 {@link #deleteDirectory} 删除。
+     * 目录位于 java.io.tmpdir 而非跨重启保留的缓存目录：进程被强制结束时遗留的目录交给系统临时目录清理。
+     */
+    public static File createPrivateDir(String prefix) throws IOException {
+        return Files.createTempDirectory(prefix + "-").toFile();
+    }
+
+    public static void deleteDirectory(File dir) {
+        if (dir == null) {
+            return;
+        }
+        try {
+            FileUtils.deleteDirectory(dir);
+        } catch (IOException e) {
+            log.warn("删除临时目录失败: {}", dir.getAbsolutePath());
+        }
+    }
+
+    /**
+     * 文件内容的 SHA-256（十六进制）。缓存目录中的文件直接取文件名，其余文件用内存映射读取计算，
+     * 并按「路径 + 大小 + 修改时间」记忆结果。
+     */
+    public static String sha256(File file) throws IOException {
+        String name = file.getName();
+        if (file.getParentFile() != null && file.getParentFile().equals(contentDir())) {
+            int dash = name.indexOf('-');
+            if (dash == 64) {
+                return name.substring(0, dash);
+            }
+        }
+        String key = file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+        String cached = CONTENT_HASHES.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        MessageDigest digest = DigestUtils.getSha256Digest();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAP_CHUNK) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAP_CHUNK, size - position));
+                digest.update(buffer);
             }
+        }
+        String hash = Hex.encodeHexString(digest.digest());
+        CONTENT_HASHES.put(key, hash);
+        return hash;
+    }
 
-            // 获取文件扩展名
-            String extension = "";
-            int dotIndex = classpathFile.lastIndexOf(".");
-            if (dotIndex > 0) {
-                extension = classpathFile.substring(dotIndex);
+    /**
+     * 以内存映射方式读取整个文件
+     */
+    public static byte[] readAllBytes(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("文件过大: " + file.getAbsolutePath());
             }
+            byte[] bytes = new byte[(int) size];
+            channel.map(FileChannel.MapMode.READ_ONLY, 0, size).get(bytes);
+            return bytes;
+        }
+    }
+
+    /**
+     * 清理进程内的提取记录。缓存文件本身保留，供下次启动复用。
+     */
+    public static void cleanup() {
+        TEMP_FILES.clear();
+    }
+
+    private static File extract(String classpathFile) throws IOException {
+        ClassPathResource resource = new ClassPathResource(classpathFile);
+        if (!resource.exists()) {
+            throw new IOException("资源文件不存在: " + classpathFile);
+        }
 
-            // 创建临时文件
-            File tempFile = File.createTempFile("unidbg_", extension);
-            tempFile.deleteOnExit();
+        File contentDir = contentDir();
+        File indexDir = new File(cacheDir, "index");
+        Files.createDirectories(contentDir.toPath());
+        Files.createDirectories(indexDir.toPath());
 
-            // 复制资源到临时文件
-            try (InputStream is = resource.getInputStream();
-                 FileOutputStream fos = new FileOutputStream(tempFile)) {
-                StreamUtils.copy(is, fos);
+        // 命中索引：资源内容未变化（大小与校验值一致）时直接复用内容文件；取不到校验值时总是重新提取
+        long length = resource.contentLength();
+        String checksum = contentChecksum(resource);
+        String fingerprint = DigestUtils.md5Hex(classpathFile + "|" + length + "|" + checksum);
+        Path indexFile = new File(indexDir, fingerprint).toPath();
+        if (checksum != null && Files.isRegularFile(indexFile)) {
+            String contentName = new String(Files.readAllBytes(indexFile), StandardCharsets.UTF_8).trim();
+            File content = new File(contentDir, contentName);
+            if (content.isFile() && content.length() == length) {
+                log.debug("资源提取缓存命中: {} -> {}", classpathFile, content.getAbsolutePath());
+                return content;
             }
+        }
 
-            TEMP_FILES.put(md5, tempFile);
-            log.debug("临时文件创建成功: {} -> {}", classpathFile, tempFile.getAbsolutePath());
-            return tempFile;
-        } catch (IOException e) {
-            log.error("创建临时文件失败: " + classpathFile, e);
-            return null;
+        // 未命中：复制到临时文件并计算哈希，再原子改名为内容文件
+        Path tmp = Files.createTempFile(contentDir.toPath(), ".extract-", ".tmp");
+        try {
+            MessageDigest digest = DigestUtils.getSha256Digest();
+            try (InputStream in = resource.getInputStream();
+                 OutputStream out = Files.newOutputStream(tmp)) {
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    digest.update(buffer, 0, read);
+                    out.write(buffer, 0, read);
+                }
+            }
+            String contentName = Hex.encodeHexString(digest.digest()) + "-" + baseName(classpathFile);
+            File content = new File(contentDir, contentName);
+            if (content.isFile() && content.length() == Files.size(tmp)) {
+                Files.delete(tmp);
+            } else {
+                moveAtomically(tmp, content.toPath());
+            }
+            Path indexTmp = Files.createTempFile(indexDir.toPath(), ".index-", ".tmp");
+            Files.write(indexTmp, contentName.getBytes(StandardCharsets.UTF_8));
+            moveAtomically(indexTmp, indexFile);
+            log.info("资源已提取到缓存: {} -> {}", classpathFile, content.getAbsolutePath());
+            return content;
+        } finally {
+            Files.deleteIfExists(tmp);
         }
     }
 
     /**
-     * 清理所有临时文件
+     * 资源内容校验值：jar 内资源取条目 CRC-32，普通文件取 SHA-256；其他来源返回 null
      */
-    public static void cleanup() {
-        for (File file : TEMP_FILES.values()) {
-            try {
-                if (file.exists() && !file.delete()) {
-                    file.deleteOnExit();
+    private static String contentChecksum(ClassPathResource resource) {
+        try {
+            URL url = resource.getURL();
+            if (ResourceUtils.isFileURL(url)) {
+                return "sha256:" + sha256(resource.getFile());
+            }
+            URLConnection connection = url.openConnection();
+            if (connection instanceof JarURLConnection) {
+                JarEntry entry = ((JarURLConnection) connection).getJarEntry();
+                if (entry != null && entry.getCrc() != -1) {
+                    return "crc32:" + Long.toHexString(entry.getCrc());
                 }
-            } catch (Exception e) {
-                log.warn("删除临时文件失败: {}", file.getAbsolutePath(), e);
             }
+        } catch (IOException e) {
+            log.debug("读取资源校验值失败: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    private static File contentDir() {
+        return new File(cacheDir, "content");
+    }
+
+    private static String baseName(String classpathFile) {
+        int slash = classpathFile.lastIndexOf('/');
+        return slash >= 0 ? classpathFile.substring(slash + 1) : classpathFile;
+    }
+
+    private static void moveAtomically(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
         }
-        TEMP_FILES.clear();
     }
 }
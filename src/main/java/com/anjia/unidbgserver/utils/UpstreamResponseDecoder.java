@@ -0,0 +1,185 @@
+package com.anjia.unidbgserver.utils;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.client.ResponseExtractor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * 上游响应流式解码：从连接的输入流按 gzip 魔数判断是否解压（经 Inflater 边读边解），
+ * 解压后的字节直接交给 Jackson 解析为目标类型，不再整体读入 byte[]、解压到 ByteArrayOutputStream、
+ * 再构造 String。输入流来自异步客户端时，原始响应体已整体缓冲在内存中（见 UpstreamAsyncHttpClient），
+ * 流式处理只作用于解压与解析这一段。
+ * <p>
+ * 兜底行为与原实现一致：
+ * <ul>
+ *   <li>误标为 gzip 的明文响应按魔数识别为明文</li>
+ *   <li>非 JSON 内容（HTML 拦截页、错误页等）不解析，以文本形式返回，由调用方判断</li>
+ *   <li>空响应返回空文本</li>
+ * </ul>
+ * gzip 数据损坏时抛出以 {@link #CORRUPT_GZIP} 开头的 ZipException。
+ */
+public final class UpstreamResponseDecoder {
+
+    public static final String CORRUPT_GZIP = "Corrupt GZIP body";
+
+    private static final int GZIP_BUFFER_SIZE = 8192;
+
+    private UpstreamResponseDecoder() {
+    }
+
+    /**
+     * 解析为指定类型的响应提取器
+     */
+    public static <T> ResponseExtractor<Decoded<T>> json(ObjectMapper mapper, Class<T> type) {
+        return json(mapper, mapper.constructType(type));
+    }
+
+    /**
+     * 解析为指定类型（可带泛型参数）的响应提取器
+     */
+    public static <T> ResponseExtractor<Decoded<T>> json(ObjectMapper mapper, JavaType type) {
+        return response -> decode(response.getBody(), response.getHeaders(), mapper, type);
+    }
+
+    /**
+     * 解析为 JsonNode 的响应提取器
+     */
+    public static ResponseExtractor<Decoded<JsonNode>> tree(ObjectMapper mapper) {
+        return json(mapper, JsonNode.class);
+    }
+
+    /**
+     * 解码响应体并附带响应头
+     */
+    public static <T> Decoded<T> decode(InputStream body, HttpHeaders headers, ObjectMapper mapper, JavaType type) throws IOException {
+        return UpstreamResponseDecoder.<T>decode(body, mapper, type).withHeaders(headers);
+    }
+
+    /**
+     * 解码响应体
+     *
+     * @param body 响应输入流（不在此关闭，由调用方关闭响应）
+     */
+    public static <T> Decoded<T> decode(InputStream body, ObjectMapper mapper, JavaType type) throws IOException {
+        if (body == null) {
+            return Decoded.text("");
+        }
+        PushbackInputStream raw = new PushbackInputStream(body, 2);
+        int b0 = raw.read();
+        if (b0 < 0) {
+            return Decoded.text("");
+        }
+        int b1 = raw.read();
+        if (b1 >= 0) {
+            raw.unread(b1);
+        }
+        raw.unread(b0);
+        // 以魔数为准：响应头声明 gzip 但内容不是 gzip 时按明文处理
+        boolean gzip = b0 == 0x1f && b1 == 0x8b;
+        try {
+            PushbackInputStream content = new PushbackInputStream(gzip ? new GZIPInputStream(raw, GZIP_BUFFER_SIZE) : raw, 1);
+            int first = skipWhitespace(content);
+            if (first < 0) {
+                return Decoded.text("");
+            }
+            content.unread(first);
+            if (first != '{' && first != '[') {
+                return Decoded.text(readText(content));
+            }
+            // 解析器读到 JSON 结束即停止，剩余字节（gzip 尾部等）由响应关闭时排空
+            T value = mapper.readerFor(type).without(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+                .readValue(content);
+            return Decoded.json(value);
+        } catch (ZipException | EOFException e) {
+            if (!gzip) {
+                throw e;
+            }
+            throw new ZipException(CORRUPT_GZIP + ": " + e.getMessage());
+        }
+    }
+
+    private static int skipWhitespace(InputStream in) throws IOException {
+        int b;
+        do {
+            b = in.read();
+        } while (b == ' ' || b == '\t' || b == '\r' || b == '\n');
+        return b;
+    }
+
+    private static String readText(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int length;
+        while ((length = in.read(buffer)) != -1) {
+            out.write(buffer, 0, length);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 解码结果：JSON 响应给出解析后的对象，其他响应给出原始文本
+     */
+    public static final class Decoded<T> {
+        private final T value;
+        private final String text;
+        private final HttpHeaders headers;
+
+        private Decoded(T value, String text, HttpHeaders headers) {
+            this.value = value;
+            this.text = text;
+            this.headers = headers;
+        }
+
+        static <T> Decoded<T> json(T value) {
+            return new Decoded<>(value, null, HttpHeaders.EMPTY);
+        }
+
+        static <T> Decoded<T> text(String text) {
+            return new Decoded<>(null, text, HttpHeaders.EMPTY);
+        }
+
+        Decoded<T> withHeaders(HttpHeaders headers) {
+            return new Decoded<>(value, text, headers);
+        }
+
+        /**
+         * 响应是否为 JSON（已解析）
+         */
+        public boolean isJson() {
+            return text == null;
+        }
+
+        /**
+         * 解析后的对象；非 JSON 响应为 null
+         */
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * 非 JSON 响应的原始文本（空响应为空串）；JSON 响应为 null
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * 响应头
+         */
+        public HttpHeaders getHeaders() {
+            return headers;
+        }
+    }
+}
@@ -1,14 +1,27 @@
 package com.anjia.unidbgserver.web;
 
+import com.anjia.unidbgserver.dto.FQSignatureBatchItem;
 import com.anjia.unidbgserver.service.FQEncryptServiceWorker;
+import com.anjia.unidbgserver.service.UpstreamAsyncHttpClient;
+import com.anjia.unidbgserver.service.UpstreamCircuitBreaker;
+import com.anjia.unidbgserver.service.UpstreamRequestPipeline;
+import com.anjia.unidbgserver.service.UpstreamRetryPolicy;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.annotation.Resource;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 @Slf4j
 @RestController
@@ -18,6 +31,26 @@ public class FQEncryptController {
     @Resource(name = "fqEncryptWorker")
     private FQEncryptServiceWorker fqSignatureServiceWorker;
 
+    @Resource
+    private ObjectMapper objectMapper;
+
+    @Resource
+    private UpstreamRequestPipeline upstreamRequestPipeline;
+
+    @Resource
+    private UpstreamAsyncHttpClient upstreamAsyncHttpClient;
+
+    @Resource
+    private UpstreamRetryPolicy upstreamRetryPolicy;
+
+    @Resource
+    private UpstreamCircuitBreaker upstreamCircuitBreaker;
+
+    /**
+     * 单次批量签名的最大条数
+     */
+    private static final int MAX_BATCH_SIZE = 2000;
+
     /**
      * 生成FQ应用的签名headers
      * @param request 包含 url 和 headers 的请求体
@@ -142,9 +175,90 @@ public class FQEncryptController {
         return result;
     }
 
+    /**
+     * 批量生成FQ签名headers
+     * <p>
+     * 请求体为 {@code [{"url": "...", "headers": "..."}, {"url": "...", "headerMap": {...}}]}，
+     * 响应为按输入顺序排列的 JSON 数组，每条签名完成即写出：
+     * {@code {"index":0,"url":"...","success":true,"headers":{...}}}，失败项为 {@code "success":false,"error":"..."}。
+     *
+     * @param items 批量请求项
+     * @return 流式输出的签名结果
+     */
+    @RequestMapping(value = "batch", method = {RequestMethod.POST})
+    public StreamingResponseBody generateSignatureBatch(@RequestBody List<FQSignatureBatchItem> items) {
+        if (items == null || items.isEmpty()) {
+            throw new IllegalArgumentException("批量签名请求不能为空");
+        }
+        if (items.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("批量签名条数不能超过" + MAX_BATCH_SIZE);
+        }
+        for (FQSignatureBatchItem item : items) {
+            if (item == null || item.getUrl() == null || item.getUrl().trim().isEmpty()) {
+                throw new IllegalArgumentException("URL参数不能为空");
+            }
+        }
+
+        log.debug("接收到FQ批量签名请求 - 条数: {}", items.size());
+
+        // 先全部入队，再按顺序等待并写出，前面的结果不必等待整批完成
+        List<CompletableFuture<Map<String, String>>> futures = fqSignatureServiceWorker.generateSignatureHeadersBatch(items);
+
+        return outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                for (int i = 0; i < futures.size(); i++) {
+                    generator.writeStartObject();
+                    generator.writeNumberField("index", i);
+                    generator.writeStringField("url", items.get(i).getUrl());
+                    try {
+                        Map<String, String> result = futures.get(i).get();
+                        generator.writeBooleanField("success", true);
+                        generator.writeObjectField("headers", result);
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause() != null ? e.getCause() : e;
+                        generator.writeBooleanField("success", false);
+                        generator.writeStringField("error", cause.getClass().getSimpleName() + ": " + cause.getMessage());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("批量签名被中断", e);
+                    }
+                    generator.writeEndObject();
+                    generator.flush();
+                }
+                generator.writeEndArray();
+            }
+        };
+    }
+
+    /**
+     * 签名池统计接口（模板启动耗时、克隆/冷启动耗时、上游请求流水线、上游连接池等）
+     * @return 统计信息
+     */
+    @RequestMapping(value = "stats", method = {RequestMethod.GET})
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = fqSignatureServiceWorker.getPoolStats();
+        stats.put("upstream", upstreamRequestPipeline.getStats());
+        stats.put("http", upstreamAsyncHttpClient.getStats());
+        stats.put("retry", upstreamRetryPolicy.getStats());
+        return stats;
+    }
+
+    /**
+     * 就绪检查接口：至少一个签名实例就绪时返回 200，否则返回 503
+     * @return 已就绪实例数与目标实例数
+     */
+    @RequestMapping(value = "ready", method = {RequestMethod.GET})
+    public ResponseEntity<Map<String, Object>> ready() {
+        Map<String, Object> readiness = fqSignatureServiceWorker.getReadiness();
+        HttpStatus status = Boolean.TRUE.equals(readiness.get("ready")) ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(status).body(readiness);
+    }
+
     /**
      * 健康检查接口
-     * @return 服务状态
+     * 熔断只影响上游调用，不影响签名服务本身，status 保持 UP
+     * @return 服务状态（含各上游主机的熔断状态）
      */
     @RequestMapping(value = "health", method = {RequestMethod.GET})
     public Map<String, Object> health() {
@@ -152,6 +266,7 @@ public class FQEncryptController {
         healthStatus.put("status", "UP");
         healthStatus.put("service", "FQ Signature Service");
         healthStatus.put("timestamp", System.currentTimeMillis());
+        healthStatus.put("circuitBreakers", upstreamCircuitBreaker.getStates());
         return healthStatus;
     }
 }
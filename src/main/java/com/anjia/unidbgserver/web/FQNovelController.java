@@ -8,6 +8,7 @@ import com.anjia.unidbgserver.dto.FQBatchChapterRequest;
 import com.anjia.unidbgserver.dto.FQBatchChapterResponse;
 import com.anjia.unidbgserver.service.FQChapterPrefetchService;
 import com.anjia.unidbgserver.service.FQNovelService;
+import com.anjia.unidbgserver.service.UpstreamCircuitBreaker;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
@@ -34,6 +35,9 @@ public class FQNovelController {
     @Autowired
     private FQChapterPrefetchService fqChapterPrefetchService;
 
+    @Autowired
+    private UpstreamCircuitBreaker upstreamCircuitBreaker;
+
     /**
      * 获取书籍信息
      * 
@@ -159,7 +163,7 @@ public class FQNovelController {
     /**
      * 健康检查接口
      * 
-     * @return 服务状态
+     * @return 服务状态（含各上游主机的熔断状态）
      */
     @GetMapping("/health")
     public Map<String, Object> health() {
@@ -167,6 +171,7 @@ public class FQNovelController {
         healthStatus.put("status", "UP");
         healthStatus.put("service", "FQNovel Service");
         healthStatus.put("timestamp", System.currentTimeMillis());
+        healthStatus.put("circuitBreakers", upstreamCircuitBreaker.getStates());
         return healthStatus;
     }
 
@@ -0,0 +1,170 @@
+package com.anjia.unidbgserver.service;
+
+import com.anjia.unidbgserver.unidbg.EmulationBudgetExceededException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * FQPinnedSigningExecutor 测试：队列满时拒绝、超时请求移出载体队列、实例被隔离后剩余请求放回队头换实例执行，
+ * 以及载体阻塞时其他载体窃取其队列中的任务
+ */
+public class FQPinnedSigningExecutorTest {
+
+    private static final Map<String, String> SIGNED = Collections.singletonMap("X-Gorgon", "ok");
+
+    private FQSignerPool pool;
+    private FQPinnedSigningExecutor executor;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (executor != null) {
+            executor.close();
+        }
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private FQPinnedSigningExecutor newExecutor(int carriers, int capacity, long timeoutMs) {
+        pool = new FQSignerPool(() -> mock(FQEncryptService.class), carriers, carriers, 1000L, 1, 0L);
+        executor = new FQPinnedSigningExecutor(pool, carriers, capacity, timeoutMs);
+        return executor;
+    }
+
+    /**
+     * 占住当前载体，直到 release 放行
+     */
+    private Function<FQEncryptService, Map<String, String>> blocking() {
+        return service -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return SIGNED;
+        };
+    }
+
+    private static Throwable failureOf(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    @Test
+    public void testRejectsWhenQueueFull() throws Exception {
+        newExecutor(1, 1, 0L);
+        CompletableFuture<Map<String, String>> running = executor.submit("running", blocking());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Map<String, String>> queued = executor.submit("queued", service -> SIGNED);
+        CompletableFuture<Map<String, String>> overflow = executor.submit("overflow", service -> SIGNED);
+        // 队列已满时立即失败，不等待载体
+        assertTrue(overflow.isDone());
+        assertTrue(failureOf(overflow) instanceof RejectedExecutionException);
+
+        release.countDown();
+        assertEquals(SIGNED, running.get(5, TimeUnit.SECONDS));
+        assertEquals(SIGNED, queued.get(5, TimeUnit.SECONDS));
+        assertEquals(1L, executor.getStats().get("rejected"));
+    }
+
+    @Test
+    public void testTimedOutRequestLeavesQueue() throws Exception {
+        newExecutor(1, 2, 200L);
+        executor.submit("running", blocking());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        AtomicBoolean executed = new AtomicBoolean();
+        CompletableFuture<Map<String, String>> queued = executor.submit("queued", service -> {
+            executed.set(true);
+            return SIGNED;
+        });
+        assertTrue(failureOf(queued) instanceof TimeoutException);
+        // 超时的请求已移出队列，载体空出后也不再执行
+        assertEquals(0, executor.getStats().get("queueDepth"));
+
+        release.countDown();
+        assertEquals(SIGNED, executor.submit("after", service -> SIGNED).get(5, TimeUnit.SECONDS));
+        assertFalse(executed.get());
+    }
+
+    @Test
+    public void testQuarantineMovesRemainderToNewSigner() throws Exception {
+        newExecutor(1, 4, 0L);
+        List<FQEncryptService> services = Collections.synchronizedList(new ArrayList<>());
+        List<String> urls = new ArrayList<>();
+        List<Function<FQEncryptService, Map<String, String>>> works = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            boolean exceeds = i == 0;
+            urls.add("url-" + i);
+            works.add(service -> {
+                services.add(service);
+                if (exceeds) {
+                    throw new EmulationBudgetExceededException("instructions", 1000L, 10L);
+                }
+                return SIGNED;
+            });
+        }
+
+        List<CompletableFuture<Map<String, String>>> futures = executor.submitBatch(urls, works);
+        assertTrue(failureOf(futures.get(0)) instanceof EmulationBudgetExceededException);
+        for (int i = 1; i < 4; i++) {
+            assertEquals(SIGNED, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+
+        // 剩余三条放回队头，在重建的实例上执行，被隔离的实例不再使用
+        assertEquals(4, services.size());
+        FQEncryptService quarantined = services.get(0);
+        for (int i = 1; i < 4; i++) {
+            assertNotSame(quarantined, services.get(i));
+            assertSame(services.get(1), services.get(i));
+        }
+        assertEquals(1L, pool.getStats().get("recycledByBudget"));
+    }
+
+    @Test
+    public void testIdleCarrierStealsFromBlockedCarrier() throws Exception {
+        newExecutor(2, 128, 0L);
+        assertTrue(pool.awaitFirstReady(5, TimeUnit.SECONDS));
+        CompletableFuture<Map<String, String>> running = executor.submit("running", blocking());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // 按 power-of-two-choices 分配，部分请求会排到被占住的载体上，只能由另一个载体窃取执行
+        List<CompletableFuture<Map<String, String>>> futures = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            futures.add(executor.submit("url-" + i, service -> SIGNED));
+        }
+        for (CompletableFuture<Map<String, String>> future : futures) {
+            assertEquals(SIGNED, future.get(5, TimeUnit.SECONDS));
+        }
+        assertFalse(running.isDone());
+        assertTrue((Long) executor.getStats().get("stolen") > 0);
+
+        release.countDown();
+        assertEquals(SIGNED, running.get(5, TimeUnit.SECONDS));
+    }
+}
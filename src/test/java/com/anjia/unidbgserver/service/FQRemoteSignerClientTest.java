@@ -0,0 +1,133 @@
+package com.anjia.unidbgserver.service;
+
+import com.anjia.unidbgserver.config.UnidbgProperties;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * FQRemoteSignerClient 测试：用本机多个 HTTP 桩服务模拟签名节点，验证负载均衡、故障转移，以及 4xx 不转移
+ */
+public class FQRemoteSignerClientTest {
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    private FQRemoteSignerClient client;
+
+    @Before
+    public void setUp() {
+        servers.clear();
+    }
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.close();
+        }
+        for (HttpServer server : servers) {
+            server.stop(0);
+        }
+    }
+
+    /**
+     * 测试请求分散到多个健康节点
+     */
+    @Test
+    public void testRequestsSpreadAcrossNodes() throws Exception {
+        AtomicInteger first = new AtomicInteger();
+        AtomicInteger second = new AtomicInteger();
+        client = new FQRemoteSignerClient(remote(startSigner(200, first), startSigner(200, second)));
+
+        for (int i = 0; i < 40; i++) {
+            Map<String, String> result = client.sign("https://example.com/?i=" + i, "").get();
+            assertEquals("sig", result.get("X-Gorgon"));
+        }
+        assertEquals(40, first.get() + second.get());
+        assertTrue("两个节点都应收到请求", first.get() > 0 && second.get() > 0);
+    }
+
+    /**
+     * 测试节点失败时转移到其他节点，并在连续失败后被摘除
+     */
+    @Test
+    public void testFailoverToHealthyNode() throws Exception {
+        AtomicInteger broken = new AtomicInteger();
+        AtomicInteger healthy = new AtomicInteger();
+        client = new FQRemoteSignerClient(remote(startSigner(500, broken), startSigner(200, healthy)));
+
+        for (int i = 0; i < 20; i++) {
+            Map<String, String> result = client.sign("https://example.com/?i=" + i, "").get();
+            assertEquals("sig", result.get("X-Gorgon"));
+        }
+        assertEquals(20, healthy.get());
+        assertTrue("故障节点被摘除后不应再收到请求", broken.get() <= 3);
+    }
+
+    /**
+     * 测试 4xx 直接返回调用方：不转移到其他节点，也不计入节点失败
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testClientErrorNotFailedOver() throws Exception {
+        AtomicInteger rejecting = new AtomicInteger();
+        client = new FQRemoteSignerClient(remote(startSigner(400, rejecting)));
+        // 单节点时第二次尝试没有可选节点；4xx 计入失败的话 3 次后节点会被摘除
+        for (int i = 0; i < 5; i++) {
+            try {
+                client.sign("https://example.com/?i=" + i, "").get();
+                fail("4xx 应返回调用方");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof HttpClientErrorException);
+            }
+        }
+        assertEquals(5, rejecting.get());
+        // 桩服务的健康检查始终失败，启动时最多计 1 次失败，4xx 不累加
+        assertEquals(1, client.getHealthyCount());
+        assertTrue((Long) ((List<Map<String, Object>>) client.getStats().get("nodes")).get(0).get("failures") <= 1L);
+    }
+
+    private UnidbgProperties.Remote remote(String... endpoints) {
+        UnidbgProperties.Remote remote = new UnidbgProperties.Remote();
+        remote.setEnabled(true);
+        for (String endpoint : endpoints) {
+            remote.getEndpoints().add(endpoint);
+        }
+        remote.setHealthCheckIntervalMs(60000);
+        remote.setMaxAttempts(2);
+        remote.setFailureThreshold(3);
+        return remote;
+    }
+
+    /**
+     * 启动签名桩服务：签名接口按给定状态码响应，健康检查始终失败以免干扰摘除逻辑
+     */
+    private String startSigner(int status, AtomicInteger counter) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/fq-signature/generateSignature", exchange -> {
+            counter.incrementAndGet();
+            byte[] body = (status == 200 ? "{\"X-Gorgon\":\"sig\"}" : "{}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        servers.add(server);
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+}
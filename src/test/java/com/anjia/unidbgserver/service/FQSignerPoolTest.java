@@ -0,0 +1,70 @@
+package com.anjia.unidbgserver.service;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * FQSignerPool 测试：创建中的替换实例不计入就绪实例数，就绪后换下旧实例
+ */
+public class FQSignerPoolTest {
+
+    private FQSignerPool pool;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void testReplacementNotCountedAsReady() throws Exception {
+        AtomicInteger builds = new AtomicInteger();
+        CountDownLatch replacementStarted = new CountDownLatch(1);
+        pool = new FQSignerPool(() -> {
+            if (builds.incrementAndGet() > 1) {
+                // 替换实例的初始化被卡住，直到 release 放行
+                replacementStarted.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return mock(FQEncryptService.class);
+        }, 1, 2, 1000L, 1, 0L);
+        pool.setRecyclePolicy(1, 0, 0);
+        assertTrue(pool.awaitFirstReady(5, TimeUnit.SECONDS));
+
+        FQSignerPool.PooledSigner worn = pool.borrow(1, TimeUnit.SECONDS);
+        worn.recordCall(true);
+        pool.release(worn);
+        assertTrue(replacementStarted.await(5, TimeUnit.SECONDS));
+
+        // 旧实例仍在服务，替换实例占用名额但未就绪
+        assertEquals(2, pool.getStats().get("size"));
+        assertEquals(1, pool.getReadySize());
+        assertEquals(1, pool.getReplacingSize());
+
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        // 替换实例入池后旧实例（空闲中）随即被丢弃
+        while ((pool.getReplacingSize() > 0 || !Integer.valueOf(1).equals(pool.getStats().get("size")))
+            && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, pool.getReplacingSize());
+        assertEquals(1, pool.getReadySize());
+        FQSignerPool.PooledSigner fresh = pool.borrow(1, TimeUnit.SECONDS);
+        assertNotSame(worn, fresh);
+    }
+}
@@ -0,0 +1,216 @@
+package com.anjia.unidbgserver.service;
+
+import com.anjia.unidbgserver.unidbg.EmulationBudgetExceededException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+/**
+ * FQSigningDispatcher 测试：队列满时拒绝、超时请求移出队列、实例被隔离后剩余请求换实例继续执行，
+ * 以及队列持续有任务时达到回收阈值或连续失败的实例被换下
+ */
+public class FQSigningDispatcherTest {
+
+    private static final Map<String, String> SIGNED = Collections.singletonMap("X-Gorgon", "ok");
+
+    private FQSignerPool pool;
+    private FQSigningDispatcher dispatcher;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    private FQSigningDispatcher newDispatcher(int capacity, long timeoutMs) {
+        pool = new FQSignerPool(() -> mock(FQEncryptService.class), 1, 1, 1000L, 1, 0L);
+        dispatcher = new FQSigningDispatcher(pool, 1, capacity, timeoutMs);
+        return dispatcher;
+    }
+
+    /**
+     * 占住唯一的车道，直到 release 放行
+     */
+    private Function<FQEncryptService, Map<String, String>> blocking() {
+        return service -> {
+            started.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return SIGNED;
+        };
+    }
+
+    private static Throwable failureOf(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    @Test
+    public void testRejectsWhenQueueFull() throws Exception {
+        newDispatcher(1, 0L);
+        CompletableFuture<Map<String, String>> running = dispatcher.submit("running", blocking());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        CompletableFuture<Map<String, String>> queued = dispatcher.submit("queued", service -> SIGNED);
+        CompletableFuture<Map<String, String>> overflow = dispatcher.submit("overflow", service -> SIGNED);
+        // 队列已满时立即失败，不等待车道
+        assertTrue(overflow.isDone());
+        assertTrue(failureOf(overflow) instanceof RejectedExecutionException);
+
+        release.countDown();
+        assertEquals(SIGNED, running.get(5, TimeUnit.SECONDS));
+        assertEquals(SIGNED, queued.get(5, TimeUnit.SECONDS));
+        assertEquals(1L, dispatcher.getStats().get("rejected"));
+    }
+
+    @Test
+    public void testTimedOutRequestLeavesQueue() throws Exception {
+        newDispatcher(2, 200L);
+        dispatcher.submit("running", blocking());
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        AtomicBoolean executed = new AtomicBoolean();
+        CompletableFuture<Map<String, String>> queued = dispatcher.submit("queued", service -> {
+            executed.set(true);
+            return SIGNED;
+        });
+        assertTrue(failureOf(queued) instanceof TimeoutException);
+        // 超时的请求已移出队列，车道空出后也不再执行
+        assertEquals(0, dispatcher.getStats().get("queueDepth"));
+
+        release.countDown();
+        assertEquals(SIGNED, dispatcher.submit("after", service -> SIGNED).get(5, TimeUnit.SECONDS));
+        assertFalse(executed.get());
+    }
+
+    @Test
+    public void testQuarantineMovesRemainderToNewSigner() throws Exception {
+        newDispatcher(4, 0L);
+        List<FQEncryptService> services = Collections.synchronizedList(new ArrayList<>());
+        List<String> urls = new ArrayList<>();
+        List<Function<FQEncryptService, Map<String, String>>> works = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            boolean exceeds = i == 0;
+            urls.add("url-" + i);
+            works.add(service -> {
+                services.add(service);
+                if (exceeds) {
+                    throw new EmulationBudgetExceededException("instructions", 1000L, 10L);
+                }
+                return SIGNED;
+            });
+        }
+
+        List<CompletableFuture<Map<String, String>>> futures = dispatcher.submitBatch(urls, works);
+        assertTrue(failureOf(futures.get(0)) instanceof EmulationBudgetExceededException);
+        for (int i = 1; i < 4; i++) {
+            assertEquals(SIGNED, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+
+        // 剩余三条在重建的实例上执行，被隔离的实例不再使用
+        assertEquals(4, services.size());
+        FQEncryptService quarantined = services.get(0);
+        for (int i = 1; i < 4; i++) {
+            assertNotSame(quarantined, services.get(i));
+            assertSame(services.get(1), services.get(i));
+        }
+        assertEquals(1L, pool.getStats().get("recycledByBudget"));
+    }
+
+    @Test
+    public void testWornSignerSwappedWhileQueueBusy() throws Exception {
+        newDispatcher(8, 0L);
+        pool.setRecyclePolicy(3, 0, 0);
+        List<FQEncryptService> services = Collections.synchronizedList(new ArrayList<>());
+        Function<FQEncryptService, Map<String, String>> blocking = blocking();
+        CompletableFuture<Map<String, String>> running = dispatcher.submit("running", service -> {
+            services.add(service);
+            return blocking.apply(service);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // 车道被占住期间排满队列，放行后车道连续处理，不会因队列清空而归还实例
+        List<CompletableFuture<Map<String, String>>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(dispatcher.submit("url-" + i, service -> {
+                services.add(service);
+                return SIGNED;
+            }));
+        }
+        release.countDown();
+        assertEquals(SIGNED, running.get(5, TimeUnit.SECONDS));
+        for (CompletableFuture<Map<String, String>> future : futures) {
+            assertEquals(SIGNED, future.get(5, TimeUnit.SECONDS));
+        }
+
+        // 每个实例最多签名 3 次即被换下
+        assertEquals(9, services.size());
+        for (FQEncryptService service : services) {
+            assertTrue(Collections.frequency(services, service) <= 3);
+        }
+        // 第 3、6 次后换下；最后一个实例在车道归还时才计入
+        assertTrue((Long) pool.getStats().get("recycledByCalls") >= 2L);
+    }
+
+    @Test
+    public void testFailingSignerSwappedWhileQueueBusy() throws Exception {
+        newDispatcher(8, 0L);
+        pool.setRecyclePolicy(0, 0, 2);
+        AtomicReference<FQEncryptService> broken = new AtomicReference<>();
+        Function<FQEncryptService, Map<String, String>> blocking = blocking();
+        dispatcher.submit("running", service -> {
+            broken.set(service);
+            return blocking.apply(service);
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        List<CompletableFuture<Map<String, String>>> futures = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            futures.add(dispatcher.submit("url-" + i, service -> {
+                if (service == broken.get()) {
+                    throw new IllegalStateException("模拟器状态异常");
+                }
+                return SIGNED;
+            }));
+        }
+        release.countDown();
+
+        // 连续失败 2 次后换实例，后续请求不再落到坏实例上
+        assertTrue(failureOf(futures.get(0)) instanceof IllegalStateException);
+        assertTrue(failureOf(futures.get(1)) instanceof IllegalStateException);
+        for (int i = 2; i < 6; i++) {
+            assertEquals(SIGNED, futures.get(i).get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1L, pool.getStats().get("recycledByFailures"));
+    }
+}
@@ -0,0 +1,128 @@
+package com.anjia.unidbgserver.service;
+
+import com.anjia.unidbgserver.config.FQCircuitBreakerProperties;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * UpstreamCircuitBreaker 测试：按失败率熔断、熔断期间快速失败、半开探测后恢复，以及按主机隔离
+ */
+public class UpstreamCircuitBreakerTest {
+
+    private static final String CONTENT_URL = "https://api5-normal-sinfonlineb.fqnovel.com/reading/reader/batch_full/v?item_ids=1";
+    private static final String SEARCH_URL = "https://api5-normal-sinfonlinec.fqnovel.com/reading/bookapi/search/tab/v?query=a b";
+
+    private UpstreamCircuitBreaker breaker;
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        FQCircuitBreakerProperties properties = new FQCircuitBreakerProperties();
+        properties.setWindowSize(4);
+        properties.setMinimumCalls(4);
+        properties.setFailureRateThreshold(0.5);
+        properties.setOpenMs(200);
+        properties.setHalfOpenProbes(2);
+        breaker = new UpstreamCircuitBreaker(properties);
+    }
+
+    private CompletableFuture<String> call(String url, RuntimeException failure) {
+        return breaker.execute(url, () -> {
+            calls.incrementAndGet();
+            CompletableFuture<String> future = new CompletableFuture<>();
+            if (failure != null) {
+                future.completeExceptionally(failure);
+            } else {
+                future.complete("ok");
+            }
+            return future;
+        });
+    }
+
+    private static UpstreamFailureException illegalAccess() {
+        return new UpstreamFailureException(UpstreamFailure.ILLEGAL_ACCESS, "ILLEGAL_ACCESS");
+    }
+
+    private static Throwable failureOf(CompletableFuture<?> future) {
+        try {
+            future.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause();
+        }
+    }
+
+    @Test
+    public void testOpensOnFailureRateAndFailsFast() {
+        call(CONTENT_URL, null);
+        call(CONTENT_URL, null);
+        call(CONTENT_URL, illegalAccess());
+        call(CONTENT_URL, illegalAccess());
+        assertEquals(4, calls.get());
+        assertFalse(breaker.allowsRequests(CONTENT_URL));
+
+        Throwable rejected = failureOf(call(CONTENT_URL, null));
+        assertTrue(rejected instanceof UpstreamCircuitOpenException);
+        // 熔断期间不再调用上游
+        assertEquals(4, calls.get());
+
+        // 其他主机不受影响
+        assertTrue(breaker.allowsRequests(SEARCH_URL));
+        assertEquals("ok", call(SEARCH_URL, null).join());
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> state = (Map<String, Object>) breaker.getStates().get("api5-normal-sinfonlineb.fqnovel.com");
+        assertEquals("OPEN", state.get("state"));
+        assertEquals(1L, state.get("rejected"));
+    }
+
+    @Test
+    public void testHalfOpenProbesCloseBreaker() throws InterruptedException {
+        for (int i = 0; i < 4; i++) {
+            call(CONTENT_URL, illegalAccess());
+        }
+        assertFalse(breaker.allowsRequests(CONTENT_URL));
+
+        Thread.sleep(250);
+        assertTrue(breaker.allowsRequests(CONTENT_URL));
+        assertEquals("ok", call(CONTENT_URL, null).join());
+        assertEquals("ok", call(CONTENT_URL, null).join());
+
+        @SuppressWarnings("unchecked")
+        Map<String, Object> state = (Map<String, Object>) breaker.getStates().get("api5-normal-sinfonlineb.fqnovel.com");
+        assertEquals("CLOSED", state.get("state"));
+    }
+
+    @Test
+    public void testFailedProbeReopens() throws InterruptedException {
+        for (int i = 0; i < 4; i++) {
+            call(CONTENT_URL, illegalAccess());
+        }
+        Thread.sleep(250);
+        failureOf(call(CONTENT_URL, illegalAccess()));
+        assertFalse(breaker.allowsRequests(CONTENT_URL));
+        assertTrue(failureOf(call(CONTENT_URL, null)) instanceof UpstreamCircuitOpenException);
+    }
+
+    @Test
+    public void testNonUpstreamFailuresDoNotOpen() {
+        for (int i = 0; i < 8; i++) {
+            call(CONTENT_URL, new IllegalStateException("签名生成失败"));
+        }
+        assertTrue(breaker.allowsRequests(CONTENT_URL));
+        assertEquals(8, calls.get());
+    }
+
+    @Test
+    public void testHostOf() {
+        assertEquals("api5-normal-sinfonlinec.fqnovel.com", UpstreamCircuitBreaker.hostOf(SEARCH_URL));
+        assertEquals("127.0.0.1", UpstreamCircuitBreaker.hostOf("http://127.0.0.1:8080/x"));
+    }
+}
@@ -0,0 +1,135 @@
+package com.anjia.unidbgserver.service;
+
+import com.anjia.unidbgserver.config.FQRetryProperties;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.*;
+
+/**
+ * UpstreamRetryPolicy 测试：失败分类、可重试失败的重试、不可重试失败直接返回、重试预算，
+ * 以及重试前回调在专用线程上执行且失败不掩盖上游失败
+ */
+public class UpstreamRetryPolicyTest {
+
+    private UpstreamRetryPolicy policy;
+    private final UpstreamRequestPipeline pipeline = new UpstreamRequestPipeline();
+
+    @After
+    public void tearDown() {
+        if (policy != null) {
+            policy.close();
+        }
+        pipeline.close();
+    }
+
+    private UpstreamRetryPolicy newPolicy(double budgetRatio, int budgetCapacity) {
+        FQRetryProperties properties = new FQRetryProperties();
+        properties.setMaxAttempts(3);
+        properties.setBaseDelayMs(10);
+        properties.setMaxDelayMs(20);
+        properties.setJitterMs(0);
+        properties.setBudgetRatio(budgetRatio);
+        properties.setBudgetCapacity(budgetCapacity);
+        policy = new UpstreamRetryPolicy(properties, pipeline);
+        return policy;
+    }
+
+    private static CompletableFuture<String> failWith(UpstreamFailure failure) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        future.completeExceptionally(new UpstreamFailureException(failure, failure.name()));
+        return future;
+    }
+
+    @Test
+    public void testClassify() {
+        assertEquals(UpstreamFailure.GZIP, UpstreamFailure.classify(new ZipException("Not in GZIP format")));
+        assertEquals(UpstreamFailure.TIMEOUT, UpstreamFailure.classify(
+            new ResourceAccessException("Total timeout", new SocketTimeoutException("Total timeout"))));
+        assertEquals(UpstreamFailure.ILLEGAL_ACCESS, UpstreamFailure.classify(
+            new CompletionException(new UpstreamFailureException(UpstreamFailure.ILLEGAL_ACCESS, "ILLEGAL_ACCESS"))));
+        assertEquals(UpstreamFailure.OTHER, UpstreamFailure.classify(new IllegalStateException("签名生成失败")));
+    }
+
+    @Test
+    public void testRetryableFailureIsRetried() {
+        newPolicy(0.2, 10);
+        AtomicInteger calls = new AtomicInteger();
+        String result = policy.execute("test", () -> calls.incrementAndGet() < 3
+            ? failWith(UpstreamFailure.EMPTY) : CompletableFuture.completedFuture("ok")).join();
+
+        assertEquals("ok", result);
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void testOtherFailureIsNotRetried() {
+        newPolicy(0.2, 10);
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            policy.execute("test", () -> {
+                calls.incrementAndGet();
+                return failWith(UpstreamFailure.OTHER);
+            }).join();
+            fail("expected failure");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof UpstreamFailureException);
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testBudgetLimitsRetries() {
+        // 只有 1 个初始令牌，且首次请求不再补充
+        newPolicy(0, 1);
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            try {
+                policy.execute("test", () -> {
+                    calls.incrementAndGet();
+                    return failWith(UpstreamFailure.TIMEOUT);
+                }).join();
+                fail("expected failure");
+            } catch (CompletionException expected) {
+                // 重试耗尽或预算不足
+            }
+        }
+        // 第一次请求用掉唯一的令牌重试 1 次，之后的请求不再重试
+        assertEquals(3 + 1, calls.get());
+    }
+
+    @Test
+    public void testBeforeRetryFailureDoesNotMaskUpstreamFailure() {
+        newPolicy(1, 10);
+        AtomicInteger calls = new AtomicInteger();
+        List<String> callbackThreads = new CopyOnWriteArrayList<>();
+        try {
+            policy.execute("test", 3, 10, 20, () -> {
+                calls.incrementAndGet();
+                return failWith(UpstreamFailure.ILLEGAL_ACCESS);
+            }, failure -> {
+                callbackThreads.add(Thread.currentThread().getName());
+                throw new IllegalStateException("更换设备失败");
+            }).join();
+            fail("expected failure");
+        } catch (CompletionException e) {
+            // 回调异常只记录日志，最终以上游失败结束
+            assertTrue(e.getCause() instanceof UpstreamFailureException);
+            assertEquals(UpstreamFailure.ILLEGAL_ACCESS, UpstreamFailure.classify(e.getCause()));
+        }
+        assertEquals(3, calls.get());
+        assertEquals(2, callbackThreads.size());
+        for (String thread : callbackThreads) {
+            assertTrue(thread, thread.startsWith("fq-retry-prepare-"));
+        }
+    }
+}
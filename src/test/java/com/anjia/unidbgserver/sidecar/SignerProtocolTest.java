@@ -0,0 +1,116 @@
+package com.anjia.unidbgserver.sidecar;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * SignerProtocol 测试：各类帧的编码与解析、单连接流水线上多个帧按请求ID依次读出、跳过未知类型帧的负载，以及非法帧长度
+ */
+public class SignerProtocolTest {
+
+    private static DataInputStream streamOf(byte[]... frames) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        for (byte[] frame : frames) {
+            buffer.write(frame);
+        }
+        return new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+    }
+
+    @Test
+    public void testSignFrameRoundTrip() throws IOException {
+        String url = "https://api5-normal-sinfonlinec.fqnovel.com/reading/bookapi/search/tab/v?query=斗破";
+        DataInputStream in = streamOf(SignerProtocol.encodeSign(7, url, "accept\r\napplication/json\r\n"));
+
+        SignerProtocol.Frame frame = SignerProtocol.readFrame(in);
+        assertNotNull(frame);
+        assertEquals(7, frame.requestId);
+        assertEquals(SignerProtocol.SIGN, frame.type);
+        assertEquals(url, SignerProtocol.readString(frame.payload));
+        assertEquals("accept\r\napplication/json\r\n", SignerProtocol.readString(frame.payload));
+        // 流结束时返回 null 而不是抛出异常
+        assertNull(SignerProtocol.readFrame(in));
+    }
+
+    @Test
+    public void testOkAndErrorFrameRoundTrip() throws IOException {
+        Map<String, String> result = new LinkedHashMap<>();
+        result.put("X-Gorgon", "8404");
+        result.put("X-Khronos", "1700000000");
+        result.put("X-Empty", "");
+        DataInputStream in = streamOf(SignerProtocol.encodeOk(1, result), SignerProtocol.encodeError(2, null));
+
+        SignerProtocol.Frame ok = SignerProtocol.readFrame(in);
+        assertEquals(SignerProtocol.OK, ok.type);
+        Map<String, String> decoded = SignerProtocol.readResult(ok.payload);
+        assertEquals(result, decoded);
+        assertArrayEquals(result.keySet().toArray(), decoded.keySet().toArray());
+
+        SignerProtocol.Frame error = SignerProtocol.readFrame(in);
+        assertEquals(2, error.requestId);
+        assertEquals(SignerProtocol.ERROR, error.type);
+        assertEquals("unknown", SignerProtocol.readString(error.payload));
+    }
+
+    @Test
+    public void testPipelinedFramesKeepRequestIds() throws IOException {
+        // 响应按完成顺序返回，与请求顺序无关
+        int[] requestIds = {3, 1, 2, Integer.MAX_VALUE};
+        byte[][] frames = new byte[requestIds.length][];
+        for (int i = 0; i < requestIds.length; i++) {
+            frames[i] = i % 2 == 0
+                ? SignerProtocol.encodeOk(requestIds[i], Collections.singletonMap("id", String.valueOf(requestIds[i])))
+                : SignerProtocol.encodeError(requestIds[i], "签名失败-" + requestIds[i]);
+        }
+        DataInputStream in = streamOf(frames);
+
+        for (int requestId : requestIds) {
+            SignerProtocol.Frame frame = SignerProtocol.readFrame(in);
+            assertNotNull(frame);
+            assertEquals(requestId, frame.requestId);
+            if (frame.type == SignerProtocol.OK) {
+                assertEquals(String.valueOf(requestId), SignerProtocol.readResult(frame.payload).get("id"));
+            } else {
+                assertEquals("签名失败-" + requestId, SignerProtocol.readString(frame.payload));
+            }
+        }
+        assertNull(SignerProtocol.readFrame(in));
+    }
+
+    @Test
+    public void testSkipUnknownFrameKeepsStreamAligned() throws IOException {
+        byte[] unknown = SignerProtocol.encodeOk(5, Collections.singletonMap("X-Gorgon", "8404"));
+        // 帧头之后的类型字节改为未定义的类型
+        unknown[8] = 42;
+        DataInputStream in = streamOf(unknown, SignerProtocol.encodeSign(6, "https://example.com/a", ""));
+
+        SignerProtocol.Frame frame = SignerProtocol.readFrame(in);
+        assertEquals(42, frame.type);
+        assertEquals(unknown.length - 9, frame.length);
+        frame.skipPayload();
+
+        SignerProtocol.Frame next = SignerProtocol.readFrame(in);
+        assertEquals(6, next.requestId);
+        assertEquals(SignerProtocol.SIGN, next.type);
+        assertEquals("https://example.com/a", SignerProtocol.readString(next.payload));
+    }
+
+    @Test(expected = IOException.class)
+    public void testRejectsOversizedFrame() throws IOException {
+        byte[] frame = SignerProtocol.encodeError(1, "x");
+        int length = SignerProtocol.MAX_FRAME_BYTES + 1;
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+        SignerProtocol.readFrame(streamOf(frame));
+    }
+}
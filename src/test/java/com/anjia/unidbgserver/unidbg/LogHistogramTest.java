@@ -0,0 +1,44 @@
+package com.anjia.unidbgserver.unidbg;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * LogHistogram 测试：分位数取桶上界，长尾样本体现在高分位
+ */
+public class LogHistogramTest {
+
+    /**
+     * 测试分位数与最大值
+     */
+    @Test
+    public void testPercentiles() {
+        LogHistogram histogram = new LogHistogram();
+        for (int i = 0; i < 990; i++) {
+            histogram.record(100);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(5000);
+        }
+
+        Map<String, Object> snapshot = histogram.snapshot();
+        assertEquals(1000L, snapshot.get("count"));
+        assertEquals(128L, snapshot.get("p50"));
+        assertEquals(128L, snapshot.get("p99"));
+        assertEquals(8192L, snapshot.get("p999"));
+        assertEquals(5000L, snapshot.get("max"));
+    }
+
+    /**
+     * 测试空直方图
+     */
+    @Test
+    public void testEmpty() {
+        Map<String, Object> snapshot = new LogHistogram().snapshot();
+        assertEquals(0L, snapshot.get("count"));
+        assertEquals(0L, snapshot.get("p99"));
+    }
+}
@@ -0,0 +1,85 @@
+package com.anjia.unidbgserver.unidbg;
+
+import com.github.unidbg.file.linux.AndroidFileIO;
+import com.sun.jna.Memory;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * MemoryRootfs 测试：可写文件按文件描述符位置读写、lseek 后覆盖写入，以及不带 O_TRUNC 重新打开时原地覆盖
+ */
+public class MemoryRootfsTest {
+
+    private static final int O_RDONLY = 0;
+    private static final int O_WRONLY = 0x1;
+    private static final int O_RDWR = 0x2;
+    private static final int O_CREAT = 0x40;
+    private static final int O_APPEND = 0x400;
+    private static final int SEEK_SET = 0;
+    private static final int SEEK_END = 2;
+
+    private static final String PATH = "/data/data/com.dragon.read/files/.msdata";
+
+    private static MemoryRootfs newRootfs() {
+        MemoryRootfs rootfs = new MemoryRootfs();
+        rootfs.addDirectory("/data/data/com.dragon.read/files");
+        return rootfs;
+    }
+
+    private static AndroidFileIO open(MemoryRootfs rootfs, int oflags) {
+        return rootfs.resolve(PATH, oflags).io;
+    }
+
+    private static void write(AndroidFileIO io, String text) {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        assertEquals(data.length, io.write(data));
+    }
+
+    private static String readAll(AndroidFileIO io) {
+        Memory buffer = new Memory(64);
+        int read = io.read(null, buffer, 64);
+        return new String(buffer.getByteArray(0, read), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testWriteLseekRead() {
+        MemoryRootfs rootfs = newRootfs();
+        AndroidFileIO io = open(rootfs, O_RDWR | O_CREAT);
+        write(io, "hello world");
+
+        // 回到第 6 字节覆盖写入，不改变文件长度
+        assertEquals(6, io.lseek(6, SEEK_SET));
+        write(io, "WORLD");
+        assertEquals(11, io.lseek(0, SEEK_END));
+        // 越过末尾写入时中间补零
+        assertEquals(12, io.lseek(1, SEEK_END));
+        write(io, "!");
+
+        assertEquals(0, io.lseek(0, SEEK_SET));
+        assertEquals("hello WORLD\0!", readAll(io));
+        // 已读到末尾
+        assertEquals("", readAll(io));
+        assertTrue(io.lseek(-1, SEEK_SET) < 0);
+    }
+
+    @Test
+    public void testOverwriteWithoutTruncate() {
+        MemoryRootfs rootfs = newRootfs();
+        AndroidFileIO first = open(rootfs, O_WRONLY | O_CREAT);
+        write(first, "abcdef");
+        first.close();
+
+        // 先打开的读描述符能看到之后的写入
+        AndroidFileIO reader = open(rootfs, O_RDONLY);
+        AndroidFileIO writer = open(rootfs, O_WRONLY);
+        write(writer, "XY");
+        assertEquals("XYcdef", readAll(reader));
+
+        AndroidFileIO appender = open(rootfs, O_WRONLY | O_APPEND);
+        write(appender, "gh");
+        assertEquals("XYcdefgh", readAll(open(rootfs, O_RDONLY)));
+    }
+}
@@ -0,0 +1,104 @@
+package com.anjia.unidbgserver.utils;
+
+import com.anjia.unidbgserver.dto.FqUpstreamResponse;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static org.junit.Assert.*;
+
+/**
+ * UpstreamResponseDecoder 测试：gzip 与明文 JSON、误标 gzip、非 JSON 与空响应、损坏的 gzip
+ */
+public class UpstreamResponseDecoderTest {
+
+    private static final String BODY = "{\"code\":0,\"message\":\"success\",\"data\":{\"7001\":\"第一章\"}}";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JavaType envelopeType = mapper.getTypeFactory()
+        .constructParametricType(FqUpstreamResponse.class, Map.class);
+
+    /**
+     * 测试 gzip 响应边解压边解析为目标类型
+     */
+    @Test
+    public void testGzipJson() throws IOException {
+        UpstreamResponseDecoder.Decoded<FqUpstreamResponse<Map<String, String>>> decoded =
+            UpstreamResponseDecoder.decode(new ByteArrayInputStream(gzip(BODY)), mapper, envelopeType);
+
+        assertTrue(decoded.isJson());
+        assertEquals(0L, decoded.getValue().getCode());
+        assertEquals("第一章", decoded.getValue().getData().get("7001"));
+    }
+
+    /**
+     * 测试误标为 gzip 的明文 JSON（魔数不符）按明文解析
+     */
+    @Test
+    public void testPlainJson() throws IOException {
+        UpstreamResponseDecoder.Decoded<JsonNode> decoded = UpstreamResponseDecoder.decode(
+            new ByteArrayInputStream(("  \n" + BODY).getBytes(StandardCharsets.UTF_8)), mapper, mapper.constructType(JsonNode.class));
+
+        assertTrue(decoded.isJson());
+        assertEquals("success", decoded.getValue().path("message").asText());
+    }
+
+    /**
+     * 测试 HTML 拦截页不解析，以原文返回
+     */
+    @Test
+    public void testHtmlReturnedAsText() throws IOException {
+        String html = "<html><body>ILLEGAL_ACCESS</body></html>";
+        UpstreamResponseDecoder.Decoded<JsonNode> decoded = UpstreamResponseDecoder.decode(
+            new ByteArrayInputStream(gzip(html)), mapper, mapper.constructType(JsonNode.class));
+
+        assertFalse(decoded.isJson());
+        assertNull(decoded.getValue());
+        assertEquals(html, decoded.getText());
+    }
+
+    /**
+     * 测试空响应返回空文本
+     */
+    @Test
+    public void testEmptyBody() throws IOException {
+        UpstreamResponseDecoder.Decoded<JsonNode> decoded = UpstreamResponseDecoder.decode(
+            new ByteArrayInputStream(new byte[0]), mapper, mapper.constructType(JsonNode.class));
+
+        assertFalse(decoded.isJson());
+        assertEquals("", decoded.getText());
+    }
+
+    /**
+     * 测试截断的 gzip 以 CORRUPT_GZIP 报错
+     */
+    @Test
+    public void testTruncatedGzip() throws IOException {
+        byte[] compressed = gzip(BODY);
+        byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+        try {
+            UpstreamResponseDecoder.decode(new ByteArrayInputStream(truncated), mapper, envelopeType);
+            fail("截断的 gzip 应报错");
+        } catch (ZipException e) {
+            assertTrue(e.getMessage().startsWith(UpstreamResponseDecoder.CORRUPT_GZIP));
+        }
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return out.toByteArray();
+    }
+}